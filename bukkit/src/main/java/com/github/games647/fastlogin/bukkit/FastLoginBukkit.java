@@ -28,6 +28,7 @@ package com.github.games647.fastlogin.bukkit;
 import com.comphenix.protocol.ProtocolLibrary;
 import com.github.Anon8281.universalScheduler.UniversalScheduler;
 import com.github.Anon8281.universalScheduler.scheduling.schedulers.TaskScheduler;
+import com.github.games647.fastlogin.bukkit.command.AdminCommand;
 import com.github.games647.fastlogin.bukkit.command.CrackedCommand;
 import com.github.games647.fastlogin.bukkit.command.PremiumCommand;
 import com.github.games647.fastlogin.bukkit.listener.ConnectionListener;
@@ -148,6 +149,7 @@ public class FastLoginBukkit extends JavaPlugin implements PlatformPlugin<Comman
         //register commands using a unique name
         Optional.ofNullable(getCommand("premium")).ifPresent(c -> c.setExecutor(new PremiumCommand(this)));
         Optional.ofNullable(getCommand("cracked")).ifPresent(c -> c.setExecutor(new CrackedCommand(this)));
+        Optional.ofNullable(getCommand("fastloginadmin")).ifPresent(c -> c.setExecutor(new AdminCommand(this)));
 
         if (pluginManager.isPluginEnabled("PlaceholderAPI")) {
             premiumPlaceholder = new PremiumPlaceholder(this);
@@ -26,8 +26,6 @@
 package com.github.games647.fastlogin.bukkit.command;
 
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
-import com.github.games647.fastlogin.bukkit.event.BukkitFastLoginPremiumToggleEvent;
-import com.github.games647.fastlogin.core.storage.StoredProfile;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
@@ -61,21 +59,22 @@ public class CrackedCommand extends ToggleCommand {
             return;
         }
 
-        // todo: load async if
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(sender.getName());
-        if (profile.isPremium()) {
-            plugin.getCore().sendLocaleMessage("remove-premium", sender);
-
-            profile.setPremium(false);
-            profile.setId(null);
-            plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
-                plugin.getServer().getPluginManager().callEvent(
-                        new BukkitFastLoginPremiumToggleEvent(profile, PremiumToggleReason.COMMAND_OTHER));
-            });
-        } else {
-            plugin.getCore().sendLocaleMessage("not-premium", sender);
-        }
+        loadProfile(sender, sender.getName(), profile -> {
+            if (profile == null) {
+                sender.sendMessage("Error occurred");
+                return;
+            }
+
+            if (profile.isPremium()) {
+                plugin.getCore().sendLocaleMessage("remove-premium", sender);
+
+                profile.setPremium(false);
+                profile.setId(null);
+                saveProfile(profile, PremiumToggleReason.COMMAND_OTHER);
+            } else {
+                plugin.getCore().sendLocaleMessage("not-premium", sender);
+            }
+        });
     }
 
     private void onCrackedOther(CommandSender sender, Command command, String[] args) {
@@ -87,26 +86,22 @@ public class CrackedCommand extends ToggleCommand {
             return;
         }
 
-        //todo: load async
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(args[0]);
-        if (profile == null) {
-            sender.sendMessage("Error occurred");
-            return;
-        }
-
-        //existing player is already cracked
-        if (profile.isSaved() && !profile.isPremium()) {
-            plugin.getCore().sendLocaleMessage("not-premium-other", sender);
-        } else {
-            plugin.getCore().sendLocaleMessage("remove-premium", sender);
-
-            profile.setPremium(false);
-            plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
-                plugin.getServer().getPluginManager().callEvent(
-                        new BukkitFastLoginPremiumToggleEvent(profile, PremiumToggleReason.COMMAND_OTHER));
-            });
-        }
+        loadProfile(sender, args[0], profile -> {
+            if (profile == null) {
+                sender.sendMessage("Error occurred");
+                return;
+            }
+
+            //existing player is already cracked
+            if (profile.isSaved() && !profile.isPremium()) {
+                plugin.getCore().sendLocaleMessage("not-premium-other", sender);
+            } else {
+                plugin.getCore().sendLocaleMessage("remove-premium", sender);
+
+                profile.setPremium(false);
+                saveProfile(profile, PremiumToggleReason.COMMAND_OTHER);
+            }
+        });
     }
 
     private boolean forwardCrackedCommand(CommandSender sender, String target) {
@@ -26,9 +26,7 @@
 package com.github.games647.fastlogin.bukkit.command;
 
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
-import com.github.games647.fastlogin.bukkit.event.BukkitFastLoginPremiumToggleEvent;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPremiumToggleEvent.PremiumToggleReason;
-import com.github.games647.fastlogin.core.storage.StoredProfile;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -76,21 +74,21 @@ public class PremiumCommand extends ToggleCommand {
         }
 
         plugin.getCore().getPendingConfirms().remove(id);
-        //todo: load async
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(sender.getName());
-        if (profile.isPremium()) {
-            plugin.getCore().sendLocaleMessage("already-exists", sender);
-        } else {
-            //todo: resolve uuid
-            profile.setPremium(true);
-            plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
-                plugin.getServer().getPluginManager().callEvent(
-                        new BukkitFastLoginPremiumToggleEvent(profile, PremiumToggleReason.COMMAND_SELF));
-            });
-
-            plugin.getCore().sendLocaleMessage("add-premium", sender);
-        }
+        loadProfile(sender, sender.getName(), profile -> {
+            if (profile == null) {
+                sender.sendMessage("Error occurred");
+                return;
+            }
+
+            if (profile.isPremium()) {
+                plugin.getCore().sendLocaleMessage("already-exists", sender);
+            } else {
+                //todo: resolve uuid
+                profile.setPremium(true);
+                saveProfile(profile, PremiumToggleReason.COMMAND_SELF);
+                plugin.getCore().sendLocaleMessage("add-premium", sender);
+            }
+        });
     }
 
     private void onPremiumOther(CommandSender sender, Command command, String[] args) {
@@ -102,26 +100,21 @@ public class PremiumCommand extends ToggleCommand {
             return;
         }
 
-        //todo: load async
-        StoredProfile profile = plugin.getCore().getStorage().loadProfile(args[0]);
-        if (profile == null) {
-            plugin.getCore().sendLocaleMessage("player-unknown", sender);
-            return;
-        }
-
-        if (profile.isPremium()) {
-            plugin.getCore().sendLocaleMessage("already-exists-other", sender);
-        } else {
-            //todo: resolve uuid
-            profile.setPremium(true);
-            plugin.getScheduler().runAsync(() -> {
-                plugin.getCore().getStorage().save(profile);
-                plugin.getServer().getPluginManager().callEvent(
-                        new BukkitFastLoginPremiumToggleEvent(profile, PremiumToggleReason.COMMAND_OTHER));
-            });
-
-            plugin.getCore().sendLocaleMessage("add-premium-other", sender);
-        }
+        loadProfile(sender, args[0], profile -> {
+            if (profile == null) {
+                plugin.getCore().sendLocaleMessage("player-unknown", sender);
+                return;
+            }
+
+            if (profile.isPremium()) {
+                plugin.getCore().sendLocaleMessage("already-exists-other", sender);
+            } else {
+                //todo: resolve uuid
+                profile.setPremium(true);
+                saveProfile(profile, PremiumToggleReason.COMMAND_OTHER);
+                plugin.getCore().sendLocaleMessage("add-premium-other", sender);
+            }
+        });
     }
 
     private boolean forwardPremiumCommand(CommandSender sender, String target) {
@@ -26,8 +26,11 @@
 package com.github.games647.fastlogin.bukkit.command;
 
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
+import com.github.games647.fastlogin.bukkit.event.BukkitFastLoginPremiumToggleEvent;
 import com.github.games647.fastlogin.core.message.ChangePremiumMessage;
 import com.github.games647.fastlogin.core.message.ChannelMessage;
+import com.github.games647.fastlogin.core.shared.event.FastLoginPremiumToggleEvent.PremiumToggleReason;
+import com.github.games647.fastlogin.core.storage.StoredProfile;
 import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -36,6 +39,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.plugin.messaging.PluginMessageRecipient;
 
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public abstract class ToggleCommand implements CommandExecutor {
 
@@ -74,6 +78,38 @@ public abstract class ToggleCommand implements CommandExecutor {
         return true;
     }
 
+    /**
+     * Loads the profile without blocking the server thread. The action runs on the thread that completed the lookup.
+     *
+     * @param sender command invoker receiving an error message if the lookup failed
+     * @param name player name
+     * @param action called with the profile or null if the database lookup failed
+     */
+    protected void loadProfile(CommandSender sender, String name, Consumer<StoredProfile> action) {
+        plugin.getCore().getStorage().loadProfileAsync(name).thenAccept(action).exceptionally(error -> {
+            plugin.getLog().error("Failed to load profile of {}", name, error);
+            sender.sendMessage("Error occurred");
+            return null;
+        });
+    }
+
+    /**
+     * Saves the profile and fires the toggle event after the profile is written.
+     *
+     * @param profile changed profile
+     * @param reason cause of the change
+     */
+    protected void saveProfile(StoredProfile profile, PremiumToggleReason reason) {
+        plugin.getCore().getStorage().saveAsync(profile)
+                // the event is asynchronous, but queued write-behind saves complete on the calling thread
+                .thenRun(() -> plugin.getScheduler().runAsync(() -> plugin.getServer().getPluginManager().callEvent(
+                        new BukkitFastLoginPremiumToggleEvent(profile, reason))))
+                .exceptionally(error -> {
+                    plugin.getLog().error("Failed to save profile of {}", profile.getName(), error);
+                    return null;
+                });
+    }
+
     protected void sendBungeeActivateMessage(CommandSender invoker, String target, boolean activate) {
         if (invoker instanceof PluginMessageRecipient) {
             ChannelMessage message = new ChangePremiumMessage(target, activate, true);
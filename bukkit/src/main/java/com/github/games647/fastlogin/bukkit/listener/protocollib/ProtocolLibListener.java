@@ -135,10 +135,13 @@ public class ProtocolLibListener extends PacketAdapter {
                     String message = plugin.getCore().getMessage("kick-antibot");
                     sender.kickPlayer(message);
                     break;
+                case Queue:
+                    onLoginStart(packetEvent, sender, username, true);
+                    break;
                 case Continue:
                 default:
                     //player.getName() won't work at this state
-                    onLoginStart(packetEvent, sender, username);
+                    onLoginStart(packetEvent, sender, username, false);
                     break;
             }
         } else {
@@ -207,7 +210,7 @@ public class ProtocolLibListener extends PacketAdapter {
         }
     }
 
-    private void onLoginStart(PacketEvent packetEvent, Player player, String username) {
+    private void onLoginStart(PacketEvent packetEvent, Player player, String username, boolean queued) {
         //this includes ip:port. Should be unique for an incoming login request with a timeout of 2 minutes
         String sessionKey = player.getAddress().toString();
 
@@ -249,7 +252,18 @@ public class ProtocolLibListener extends PacketAdapter {
         Runnable nameCheckTask = new NameCheckTask(
                 plugin, random, player, packetEvent, username, clientKey.orElse(null), keyPair.getPublic()
         );
-        plugin.getScheduler().runAsync(nameCheckTask);
+
+        if (!queued) {
+            plugin.getScheduler().runAsync(nameCheckTask);
+            return;
+        }
+
+        // without the check the packet is processed like with the ignore action
+        Runnable continueLogin = () -> ProtocolLibrary.getProtocolManager().getAsynchronousManager()
+                .signalPacketTransmission(packetEvent);
+        if (!antiBotService.getAdmissionQueue().offer(nameCheckTask, continueLogin)) {
+            continueLogin.run();
+        }
     }
 
     private boolean verifyPublicKey(ClientPublicKey clientKey, UUID sessionPremiumUUID) {
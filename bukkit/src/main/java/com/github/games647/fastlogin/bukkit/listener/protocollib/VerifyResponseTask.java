@@ -49,6 +49,7 @@ import com.github.games647.fastlogin.bukkit.BukkitLoginSession;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
 import com.github.games647.fastlogin.bukkit.InetUtils;
 import com.github.games647.fastlogin.bukkit.listener.protocollib.packet.ClientPublicKey;
+import com.github.games647.fastlogin.core.resolver.AsyncSessionResolver;
 import lombok.val;
 import org.bukkit.entity.Player;
 
@@ -65,6 +66,8 @@ import java.security.PrivateKey;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.comphenix.protocol.PacketType.Login.Client.START;
 import static com.comphenix.protocol.PacketType.Login.Server.DISCONNECT;
@@ -113,19 +116,34 @@ public class VerifyResponseTask implements Runnable {
 
     @Override
     public void run() {
+        CompletableFuture<Void> verification;
         try {
-            verifyResponse(session);
-        } finally {
-            //this is a fake packet; it shouldn't be sent to the server
-            synchronized (packetEvent.getAsyncMarker().getProcessingLock()) {
-                packetEvent.setCancelled(true);
+            verification = verifyResponse(session);
+        } catch (RuntimeException ex) {
+            releasePacket();
+            throw ex;
+        }
+
+        // the session request could still be running - release the packet only after it finished
+        verification.whenComplete((result, error) -> {
+            if (error != null) {
+                plugin.getLog().error("Failed to verify the session of {}", player, error);
             }
 
-            ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
+            releasePacket();
+        });
+    }
+
+    private void releasePacket() {
+        //this is a fake packet; it shouldn't be sent to the server
+        synchronized (packetEvent.getAsyncMarker().getProcessingLock()) {
+            packetEvent.setCancelled(true);
         }
+
+        ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
     }
 
-    private void verifyResponse(BukkitLoginSession session) {
+    private CompletableFuture<Void> verifyResponse(BukkitLoginSession session) {
         PrivateKey privateKey = serverKey.getPrivate();
 
         SecretKey loginKey;
@@ -133,26 +151,24 @@ public class VerifyResponseTask implements Runnable {
             loginKey = EncryptionUtil.decryptSharedKey(privateKey, sharedSecret);
         } catch (GeneralSecurityException securityEx) {
             disconnect("error-kick", "Cannot decrypt received contents", securityEx);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         try {
             if (!enableEncryption(loginKey)) {
-                return;
+                return CompletableFuture.completedFuture(null);
             }
         } catch (Exception ex) {
             disconnect("error-kick", "Cannot decrypt received contents", ex);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         String serverId = EncryptionUtil.getServerIdHashString("", loginKey, serverKey.getPublic());
 
         String requestedUsername = session.getRequestUsername();
         InetSocketAddress socketAddress = player.getAddress();
-        try {
-            MojangResolver resolver = plugin.getCore().getResolver();
-            InetAddress address = socketAddress.getAddress();
-            Optional<Verification> response = resolver.hasJoined(requestedUsername, serverId, address);
+        InetAddress address = socketAddress.getAddress();
+        return hasJoined(requestedUsername, serverId, address).thenAccept(response -> {
             if (response.isPresent()) {
                 encryptConnection(session, requestedUsername, response.get());
             } else {
@@ -180,9 +196,36 @@ public class VerifyResponseTask implements Runnable {
                     plugin.getLog().warn(ADDRESS_VERIFY_WARNING);
                 }
             }
+        }).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof IOException) {
+                disconnect("error-kick", "Failed to connect to session server", cause);
+            } else {
+                // for example a failure while enabling the encryption - the session server isn't to blame
+                disconnect("error-kick", "Failed to verify the session of {}", requestedUsername, cause);
+            }
+
+            return null;
+        });
+    }
+
+    private CompletableFuture<Optional<Verification>> hasJoined(String username, String serverId,
+                                                                InetAddress address) {
+        AsyncSessionResolver sessionResolver = plugin.getCore().getSessionResolver();
+        if (sessionResolver != null) {
+            // frees this thread while the session server answers
+            return sessionResolver.hasJoinedAsync(username, serverId, address);
+        }
+
+        CompletableFuture<Optional<Verification>> response = new CompletableFuture<>();
+        try {
+            MojangResolver resolver = plugin.getCore().getResolver();
+            response.complete(resolver.hasJoined(username, serverId, address));
         } catch (IOException ioEx) {
-            disconnect("error-kick", "Failed to connect to session server", ioEx);
+            response.completeExceptionally(ioEx);
         }
+
+        return response;
     }
 
     private void encryptConnection(BukkitLoginSession session, String requestedUsername, Verification verification) {
@@ -70,6 +70,9 @@ public class ProtocolSupportListener extends JoinManagement<Player, CommandSende
 
         Action action = antiBotService.onIncomingConnection(address, username);
         switch (action) {
+            case Queue:
+                // the login start cannot be delayed here - just ignore
+                return;
             case Ignore:
                 // just ignore
                 return;
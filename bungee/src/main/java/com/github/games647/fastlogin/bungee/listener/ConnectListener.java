@@ -123,6 +123,15 @@ public class ConnectListener implements Listener {
                 preLoginEvent.setCancelReason(TextComponent.fromLegacyText(message));
                 preLoginEvent.setCancelled(true);
                 break;
+            case Queue:
+                preLoginEvent.registerIntent(plugin);
+                Runnable queuedCheck = new AsyncPremiumCheck(plugin, preLoginEvent, connection, username);
+                Runnable continueLogin = () -> preLoginEvent.completeIntent(plugin);
+                if (!antiBotService.getAdmissionQueue().offer(queuedCheck, continueLogin)) {
+                    // queue is full - handle it like ignore
+                    continueLogin.run();
+                }
+                break;
             case Continue:
             default:
                 preLoginEvent.registerIntent(plugin);
@@ -105,11 +105,10 @@ public class PluginMessageListener implements Listener {
                 }
 
                 core.getPendingConfirms().remove(forPlayer.getUniqueId());
-                Runnable task = new AsyncToggleMessage(core, forPlayer, playerName, true, isSourceInvoker);
-                plugin.getScheduler().runAsync(task);
+                // already on the async pool and the task itself doesn't block
+                new AsyncToggleMessage(core, forPlayer, playerName, true, isSourceInvoker).run();
             } else {
-                Runnable task = new AsyncToggleMessage(core, forPlayer, playerName, false, isSourceInvoker);
-                plugin.getScheduler().runAsync(task);
+                new AsyncToggleMessage(core, forPlayer, playerName, false, isSourceInvoker).run();
             }
         }
     }
@@ -132,8 +131,14 @@ public class PluginMessageListener implements Listener {
 
             if (!loginSession.isAlreadySaved()) {
                 playerProfile.setPremium(true);
-                plugin.getCore().getStorage().save(playerProfile);
+                // mark it before the write finishes, so a second message doesn't save it concurrently
                 loginSession.setAlreadySaved(true);
+                plugin.getCore().getStorage().saveAsync(playerProfile).exceptionally(error -> {
+                    plugin.getLog().error("Failed to save profile of {}", playerProfile.getName(), error);
+                    // allow the next success message to try it again
+                    loginSession.setAlreadySaved(false);
+                    return null;
+                });
             }
         }
     }
@@ -35,6 +35,8 @@ import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.chat.TextComponent;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 
+import java.util.concurrent.CompletableFuture;
+
 public class AsyncToggleMessage implements Runnable {
 
     private final FastLoginCore<ProxiedPlayer, CommandSender, FastLoginBungee> core;
@@ -54,45 +56,52 @@ public class AsyncToggleMessage implements Runnable {
 
     @Override
     public void run() {
-        if (toPremium) {
-            activatePremium();
-        } else {
-            turnOffPremium();
-        }
+        // the database work runs on the storage executor, so this never blocks the calling thread
+        core.getStorage().loadProfileAsync(targetPlayer).thenCompose(playerProfile -> {
+            if (playerProfile == null) {
+                core.getPlugin().getLog().warn("Cannot toggle premium status of {} without a profile", targetPlayer);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return toPremium ? activatePremium(playerProfile) : turnOffPremium(playerProfile);
+        }).exceptionally(error -> {
+            core.getPlugin().getLog().error("Failed to toggle premium status of {}", targetPlayer, error);
+            return null;
+        });
     }
 
-    private void turnOffPremium() {
-        StoredProfile playerProfile = core.getStorage().loadProfile(targetPlayer);
+    private CompletableFuture<Void> turnOffPremium(StoredProfile playerProfile) {
         //existing player is already cracked
         if (playerProfile.isSaved() && !playerProfile.isPremium()) {
             sendMessage("not-premium");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         playerProfile.setPremium(false);
         playerProfile.setId(null);
-        core.getStorage().save(playerProfile);
-        PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
-            ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
-        core.getPlugin().getProxy().getPluginManager().callEvent(
-                new BungeeFastLoginPremiumToggleEvent(playerProfile, reason));
-        sendMessage("remove-premium");
+        return core.getStorage().saveAsync(playerProfile).thenRun(() -> {
+            PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
+                ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
+            core.getPlugin().getProxy().getPluginManager().callEvent(
+                    new BungeeFastLoginPremiumToggleEvent(playerProfile, reason));
+            sendMessage("remove-premium");
+        });
     }
 
-    private void activatePremium() {
-        StoredProfile playerProfile = core.getStorage().loadProfile(targetPlayer);
+    private CompletableFuture<Void> activatePremium(StoredProfile playerProfile) {
         if (playerProfile.isPremium()) {
             sendMessage("already-exists");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         playerProfile.setPremium(true);
-        core.getStorage().save(playerProfile);
-        PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
-            ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
-        core.getPlugin().getProxy().getPluginManager().callEvent(
-                new BungeeFastLoginPremiumToggleEvent(playerProfile, reason));
-        sendMessage("add-premium");
+        return core.getStorage().saveAsync(playerProfile).thenRun(() -> {
+            PremiumToggleReason reason = (!isPlayerSender || !sender.getName().equalsIgnoreCase(playerProfile.getName()))
+                ? PremiumToggleReason.COMMAND_OTHER : PremiumToggleReason.COMMAND_SELF;
+            core.getPlugin().getProxy().getPluginManager().callEvent(
+                    new BungeeFastLoginPremiumToggleEvent(playerProfile, reason));
+            sendMessage("add-premium");
+        });
     }
 
     private void sendMessage(String localeId) {
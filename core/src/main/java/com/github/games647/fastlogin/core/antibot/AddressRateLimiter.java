@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+
+import java.net.InetAddress;
+
+/**
+ * Limits the connections of a single address or of a whole subnet, so a single attacking host cannot use up the global
+ * connection limit.
+ */
+public class AddressRateLimiter {
+
+    private final Scope scope;
+    private final int limit;
+    private final ExpiringCounterMap counters;
+
+    /**
+     * @param ticker time source
+     * @param scope whether connections are counted per address or per subnet
+     * @param limit maximum number of connections within the expire time
+     * @param expireTime milliseconds after a connection is no longer counted
+     * @param maxTracked maximum number of addresses or subnets that are tracked at the same time
+     */
+    public AddressRateLimiter(Ticker ticker, Scope scope, int limit, long expireTime, int maxTracked) {
+        this.scope = scope;
+        this.limit = limit;
+        this.counters = new ExpiringCounterMap(ticker, maxTracked, expireTime);
+    }
+
+    /**
+     * @param address address of the connecting client
+     * @return true if the connection is allowed
+     */
+    public boolean tryAcquire(InetAddress address) {
+        return counters.tryAcquire(scope.toKey(address.getAddress()), limit);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public int getTracked() {
+        return counters.getTracked();
+    }
+
+    public enum Scope {
+
+        /**
+         * Single IPv4 or IPv6 address
+         */
+        ADDRESS("address") {
+            @Override
+            long toKey(byte[] address) {
+                if (address.length == 4) {
+                    return toLong(address, 0, 4);
+                }
+
+                // folds the 128 bits - colliding addresses only share their limit
+                return toLong(address, 0, 8) ^ toLong(address, 8, 8) * 0x9E3779B97F4A7C15L;
+            }
+        },
+
+        /**
+         * IPv4 /24 or IPv6 /64 network. A /64 is the usual allocation of a single IPv6 customer.
+         */
+        SUBNET("subnet") {
+            @Override
+            long toKey(byte[] address) {
+                if (address.length == 4) {
+                    return toLong(address, 0, 3);
+                }
+
+                return toLong(address, 0, 8);
+            }
+        };
+
+        private final String name;
+
+        Scope(String name) {
+            this.name = name;
+        }
+
+        abstract long toKey(byte[] address);
+
+        public String getName() {
+            return name;
+        }
+
+        private static long toLong(byte[] bytes, int offset, int length) {
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                value = (value << 8) | (bytes[i] & 0xFF);
+            }
+
+            return value;
+        }
+    }
+}
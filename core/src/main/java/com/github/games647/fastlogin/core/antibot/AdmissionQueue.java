@@ -0,0 +1,312 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded first-in-first-out queue of premium checks for connections above the anti-bot limit. Instead of dropping
+ * them, the checks are started in arrival order once fewer than the maximum number of queued checks are running.
+ * <p>
+ * An entry that waits longer than the maximum wait time is removed and its expire handler runs. The platform then
+ * continues the login without FastLogin, like with the ignore action.
+ */
+public class AdmissionQueue {
+
+    private static final long EXPIRE_CHECK_INTERVAL = 250;
+
+    private final Logger logger;
+    private final Ticker ticker;
+    private final Executor executor;
+
+    private final int capacity;
+    private final int maxConcurrent;
+    private final long maxWait;
+
+    private final ScheduledExecutorService expireExecutor;
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by lock
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private int running;
+    private boolean closed;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWait = new AtomicLong();
+    private final AtomicLong maxObservedWait = new AtomicLong();
+
+    /**
+     * @param logger logger
+     * @param ticker time source
+     * @param executor executor of the checks
+     * @param capacity maximum number of waiting entries
+     * @param maxConcurrent maximum number of running checks started by this queue
+     * @param maxWait maximum time an entry waits for its start
+     * @param unit unit of the wait time
+     * @param threadFactory factory of the thread removing expired entries
+     */
+    public AdmissionQueue(Logger logger, Ticker ticker, Executor executor, int capacity, int maxConcurrent,
+                          long maxWait, TimeUnit unit, ThreadFactory threadFactory) {
+        this.logger = logger;
+        this.ticker = ticker;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = unit.toNanos(maxWait);
+
+        this.expireExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        expireExecutor.scheduleWithFixedDelay(this::expireWaiting, EXPIRE_CHECK_INTERVAL, EXPIRE_CHECK_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a premium check. Exactly one of the check and the expire handler runs if the entry was accepted.
+     *
+     * @param check premium check - its slot is held until it returns
+     * @param expireHandler runs if the entry waited too long or the queue was closed
+     * @return false if the queue is full
+     */
+    public boolean offer(Runnable check, Runnable expireHandler) {
+        Entry entry = new Entry(check, expireHandler, ticker.read());
+        lock.lock();
+        try {
+            if (closed) {
+                rejected.incrementAndGet();
+                return false;
+            }
+
+            if (entries.isEmpty() && running < maxConcurrent) {
+                running++;
+            } else if (entries.size() >= capacity) {
+                rejected.incrementAndGet();
+                return false;
+            } else {
+                entries.addLast(entry);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        start(entry);
+        return true;
+    }
+
+    private void start(Entry entry) {
+        long waited = ticker.read() - entry.queuedAt;
+        admitted.incrementAndGet();
+        totalWait.addAndGet(waited);
+        maxObservedWait.accumulateAndGet(waited, Math::max);
+
+        try {
+            executor.execute(() -> {
+                try {
+                    entry.check.run();
+                } finally {
+                    onCheckFinished();
+                }
+            });
+        } catch (RejectedExecutionException rejectedEx) {
+            logger.warn("Cannot start queued premium check", rejectedEx);
+            entry.expireHandler.run();
+            onCheckFinished();
+        }
+    }
+
+    private void onCheckFinished() {
+        List<Entry> expiredEntries = new ArrayList<>();
+        Entry next;
+        lock.lock();
+        try {
+            running--;
+            removeExpired(ticker.read(), expiredEntries);
+            next = entries.pollFirst();
+            if (next != null) {
+                running++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        runExpireHandlers(expiredEntries);
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    private void expireWaiting() {
+        List<Entry> expiredEntries = new ArrayList<>();
+        lock.lock();
+        try {
+            removeExpired(ticker.read(), expiredEntries);
+        } finally {
+            lock.unlock();
+        }
+
+        runExpireHandlers(expiredEntries);
+    }
+
+    private void removeExpired(long now, List<Entry> expiredEntries) {
+        // all entries have the same wait time, so the oldest ones expire first
+        Entry oldest;
+        while ((oldest = entries.peekFirst()) != null && now - oldest.queuedAt > maxWait) {
+            expiredEntries.add(entries.pollFirst());
+        }
+    }
+
+    private void runExpireHandlers(List<Entry> expiredEntries) {
+        if (expiredEntries.isEmpty()) {
+            return;
+        }
+
+        expired.addAndGet(expiredEntries.size());
+        logger.warn("{} connections waited too long in the login queue - continuing without FastLogin",
+                expiredEntries.size());
+        for (Entry entry : expiredEntries) {
+            try {
+                entry.expireHandler.run();
+            } catch (RuntimeException runtimeEx) {
+                logger.error("Error while handling an expired login", runtimeEx);
+            }
+        }
+    }
+
+    /**
+     * @return number of waiting entries
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of running checks started by this queue
+     */
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return wait time of the oldest waiting entry
+     */
+    public long getOldestWait(TimeUnit unit) {
+        lock.lock();
+        try {
+            Entry oldest = entries.peekFirst();
+            return oldest == null ? 0 : unit.convert(ticker.read() - oldest.queuedAt, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAverageWait(TimeUnit unit) {
+        long started = admitted.get();
+        return started == 0 ? 0 : unit.convert(totalWait.get() / started, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxWait(TimeUnit unit) {
+        return unit.convert(maxObservedWait.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Stops accepting entries and lets all waiting connections continue without FastLogin.
+     */
+    public void close() {
+        List<Entry> remaining;
+        lock.lock();
+        try {
+            closed = true;
+            remaining = new ArrayList<>(entries);
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        expireExecutor.shutdownNow();
+        for (Entry entry : remaining) {
+            entry.expireHandler.run();
+        }
+    }
+
+    private static class Entry {
+
+        private final Runnable check;
+        private final Runnable expireHandler;
+        private final long queuedAt;
+
+        Entry(Runnable check, Runnable expireHandler, long queuedAt) {
+            this.check = check;
+            this.expireHandler = expireHandler;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -25,9 +25,15 @@
  */
 package com.github.games647.fastlogin.core.antibot;
 
+import com.github.games647.fastlogin.core.antibot.AddressRateLimiter.Scope;
 import org.slf4j.Logger;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AntiBotService {
 
@@ -36,6 +42,18 @@ public class AntiBotService {
     private final RateLimiter rateLimiter;
     private final Action limitReachedAction;
 
+    // checked before the global limit, so a blocked host doesn't use it up
+    private final List<AddressLimit> addressLimits = new ArrayList<>();
+    private final AtomicLong globalRejections = new AtomicLong();
+
+    private AttackModeDetector attackMode;
+
+    private AdmissionQueue admissionQueue;
+
+    private CidrFilter cidrFilter;
+    private Action blockedRangeAction = Action.Block;
+    private final AtomicLong blockedRangeRejections = new AtomicLong();
+
     public AntiBotService(Logger logger, RateLimiter rateLimiter, Action limitReachedAction) {
         this.logger = logger;
 
@@ -43,20 +61,184 @@ public class AntiBotService {
         this.limitReachedAction = limitReachedAction;
     }
 
+    /**
+     * Adds a limit per address or subnet. Limits are checked in the order they were added. Has to be called before
+     * the service handles connections.
+     *
+     * @param limiter limiter of the addresses or subnets
+     * @param action action if the limit is reached
+     */
+    public void addAddressLimit(AddressRateLimiter limiter, Action action) {
+        addressLimits.add(new AddressLimit(limiter, action));
+    }
+
+    /**
+     * Has to be called before the service handles connections.
+     *
+     * @param attackMode detector of connection floods
+     */
+    public void setAttackMode(AttackModeDetector attackMode) {
+        this.attackMode = attackMode;
+    }
+
+    /**
+     * Has to be called before the service handles connections.
+     *
+     * @param admissionQueue queue of connections with the queue action
+     */
+    public void setAdmissionQueue(AdmissionQueue admissionQueue) {
+        this.admissionQueue = admissionQueue;
+    }
+
+    /**
+     * @return queue of connections above the limit or null if not configured
+     */
+    public AdmissionQueue getAdmissionQueue() {
+        return admissionQueue;
+    }
+
+    /**
+     * Allowed ranges skip all other checks and blocked ranges are rejected before anything else. Has to be called
+     * before the service handles connections.
+     *
+     * @param cidrFilter allow and block list of address ranges
+     * @param action action for blocked ranges
+     */
+    public void setCidrFilter(CidrFilter cidrFilter, Action action) {
+        this.cidrFilter = cidrFilter;
+        this.blockedRangeAction = action;
+    }
+
+    /**
+     * @return allow and block list of address ranges or null if disabled
+     */
+    public CidrFilter getCidrFilter() {
+        return cidrFilter;
+    }
+
+    /**
+     * @return detector of connection floods or null if disabled
+     */
+    public AttackModeDetector getAttackMode() {
+        return attackMode;
+    }
+
+    /**
+     * @return true if logins of unknown names should skip the database and the Mojang API
+     */
+    public boolean isAttackMode() {
+        return attackMode != null && attackMode.isActive();
+    }
+
     public Action onIncomingConnection(InetSocketAddress clientAddress, String username) {
+        InetAddress address = clientAddress.getAddress();
+        if (cidrFilter != null && address != null) {
+            if (cidrFilter.isAllowed(address)) {
+                return Action.Continue;
+            }
+
+            if (cidrFilter.isBlocked(address)) {
+                blockedRangeRejections.incrementAndGet();
+                // expected for listed ranges - don't flood the log during an attack
+                logger.debug("Anti-Bot blocked range - {} {}",
+                        blockedRangeAction == Action.Block ? "Blocking" : "Ignoring", clientAddress);
+                return resolve(blockedRangeAction);
+            }
+        }
+
+        if (attackMode != null) {
+            // also rejected connections, because they show the size of the attack
+            attackMode.onConnection();
+        }
+
+        if (address != null) {
+            for (AddressLimit limit : addressLimits) {
+                if (!limit.limiter.tryAcquire(address)) {
+                    limit.rejections.incrementAndGet();
+                    logger.warn("Anti-Bot {} limit - {} {}", limit.limiter.getScope().getName(),
+                            limit.action == Action.Block ? "Blocking" : "Ignoring", clientAddress);
+                    return resolve(limit.action);
+                }
+            }
+        }
+
+        Action action = resolve(limitReachedAction);
+        if (action == Action.Queue && admissionQueue.getDepth() > 0) {
+            // keep the arrival order while connections are waiting
+            return Action.Queue;
+        }
+
         if (!rateLimiter.tryAcquire()) {
-            logger.warn("Anti-Bot join limit - Ignoring {}", clientAddress);
-            return limitReachedAction;
+            globalRejections.incrementAndGet();
+            logger.warn("Anti-Bot join limit - {} {}", action == Action.Queue ? "Queueing" : "Ignoring",
+                    clientAddress);
+            return action;
         }
 
         return Action.Continue;
     }
 
+    private Action resolve(Action action) {
+        if (action == Action.Queue && admissionQueue == null) {
+            return Action.Ignore;
+        }
+
+        return action;
+    }
+
+    public long getGlobalRejections() {
+        return globalRejections.get();
+    }
+
+    public long getBlockedRangeRejections() {
+        return blockedRangeRejections.get();
+    }
+
+    /**
+     * @param scope scope of the limit
+     * @return rejected connections of this limit or 0 if it's not configured
+     */
+    public long getRejections(Scope scope) {
+        for (AddressLimit limit : addressLimits) {
+            if (limit.limiter.getScope() == scope) {
+                return limit.rejections.get();
+            }
+        }
+
+        return 0;
+    }
+
+    public List<AddressRateLimiter> getAddressLimiters() {
+        List<AddressRateLimiter> limiters = new ArrayList<>(addressLimits.size());
+        for (AddressLimit limit : addressLimits) {
+            limiters.add(limit.limiter);
+        }
+
+        return Collections.unmodifiableList(limiters);
+    }
+
+    private static class AddressLimit {
+
+        private final AddressRateLimiter limiter;
+        private final Action action;
+        private final AtomicLong rejections = new AtomicLong();
+
+        AddressLimit(AddressRateLimiter limiter, Action action) {
+            this.limiter = limiter;
+            this.action = action;
+        }
+    }
+
     public enum Action {
         Ignore,
 
         Block,
 
+        /**
+         * Start the premium check later through the {@link AdmissionQueue}
+         */
+        Queue,
+
         Continue
     }
 }
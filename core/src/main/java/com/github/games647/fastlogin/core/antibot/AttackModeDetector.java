@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects connection floods. The attack mode turns on once the connections within the window reach the enter
+ * threshold. It only turns off after the connections stayed at or below the lower exit threshold for the whole cool
+ * down, so it doesn't flip with every wave of an attack. The exit is checked on every connection and on every query
+ * of the state, so it also turns off if no further connections arrive.
+ * <p>
+ * While it's active, logins of unknown names skip the database and the Mojang API.
+ */
+public class AttackModeDetector {
+
+    private final Logger logger;
+    private final Ticker ticker;
+
+    private final SlidingWindowRateLimiter connections;
+    private final long window;
+    private final long windowNanos;
+    private final int enterConnections;
+    private final int exitConnections;
+    private final long cooldown;
+    private final boolean kickUnknownNames;
+
+    private final AtomicBoolean active = new AtomicBoolean();
+    // ticker time of the last check that counted more than the exit threshold
+    private volatile long lastBusy;
+
+    private final AtomicLong activations = new AtomicLong();
+    private final AtomicLong skippedLogins = new AtomicLong();
+
+    /**
+     * @param window seconds in which the connections are counted
+     * @param enterConnections connections within the window that turn the attack mode on
+     * @param exitConnections connections within the window below which the cool down starts
+     * @param cooldown seconds below the exit threshold before the attack mode turns off
+     * @param kickUnknownNames kick unknown names instead of starting a cracked session
+     */
+    public AttackModeDetector(Logger logger, Ticker ticker, long window, int enterConnections, int exitConnections,
+                              long cooldown, boolean kickUnknownNames) {
+        if (exitConnections > enterConnections) {
+            throw new IllegalArgumentException("Exit threshold has to be lower than the enter threshold");
+        }
+
+        this.logger = logger;
+        this.ticker = ticker;
+
+        this.window = window;
+        this.windowNanos = TimeUnit.SECONDS.toNanos(window);
+        this.connections = new SlidingWindowRateLimiter(ticker, SlidingWindowRateLimiter.MAX_LIMIT,
+                TimeUnit.SECONDS.toMillis(window));
+        this.enterConnections = enterConnections;
+        this.exitConnections = exitConnections;
+        this.cooldown = TimeUnit.SECONDS.toNanos(cooldown);
+        this.kickUnknownNames = kickUnknownNames;
+    }
+
+    /**
+     * Counts an incoming connection and updates the attack mode.
+     */
+    public void onConnection() {
+        connections.tryAcquire();
+        update();
+    }
+
+    /**
+     * @return true if the attack mode is on
+     */
+    public boolean isActive() {
+        if (active.get()) {
+            // turn it off even if the attack stopped completely and no connection triggers the check
+            update();
+        }
+
+        return active.get();
+    }
+
+    private void update() {
+        long now = ticker.read();
+        int count = connections.getRequests();
+        if (!active.get()) {
+            if (count >= enterConnections) {
+                lastBusy = now;
+                if (active.compareAndSet(false, true)) {
+                    activations.incrementAndGet();
+                    logger.warn("Anti-Bot attack mode enabled - {} connections in the last {} seconds", count,
+                            window);
+                }
+            }
+
+            return;
+        }
+
+        if (count > exitConnections) {
+            lastBusy = now;
+            return;
+        }
+
+        // the count only grows with connections, which all run this check. So it was at or below the exit threshold
+        // one window after the last busy check at the latest.
+        if (now - lastBusy >= windowNanos + cooldown && active.compareAndSet(true, false)) {
+            logger.info("Anti-Bot attack mode disabled - {} connections in the last {} seconds", count, window);
+        }
+    }
+
+    public boolean isKickUnknownNames() {
+        return kickUnknownNames;
+    }
+
+    public void recordSkippedLogin() {
+        skippedLogins.incrementAndGet();
+    }
+
+    /**
+     * @return number of times the attack mode was turned on
+     */
+    public long getActivations() {
+        return activations.get();
+    }
+
+    /**
+     * @return logins that skipped the database or the Mojang API because of the attack mode
+     */
+    public long getSkippedLogins() {
+        return skippedLogins.get();
+    }
+
+    /**
+     * @return connections within the window
+     */
+    public int getConnections() {
+        return connections.getRequests();
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.net.InetAddresses;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allow and block list of address ranges loaded from two text files. Each line contains an IPv4 or IPv6 address with
+ * an optional prefix length like {@code 192.0.2.0/24}. Everything after a {@code #} is a comment.
+ * <p>
+ * The files are watched for changes. A changed file is parsed into a new trie, which replaces the old one in a single
+ * write, so lookups never wait for a reload.
+ */
+public class CidrFilter {
+
+    // editors often write a file in multiple steps
+    private static final long RELOAD_DELAY = 500;
+    private static final int MAX_REPORTED_LINES = 5;
+
+    private static final int ALLOW_LIST = 1;
+    private static final int BLOCK_LIST = 2;
+
+    private static final String FILE_HEADER = "# One IPv4 or IPv6 address or range per line, for example:\n"
+            + "# 192.0.2.0/24\n"
+            + "# 2001:db8::/32\n"
+            + "# 198.51.100.7\n"
+            + "# The file is reloaded automatically after changes.\n";
+
+    private final Logger logger;
+    private final Path allowFile;
+    private final Path blockFile;
+
+    private final AtomicInteger reloads = new AtomicInteger();
+
+    private volatile CidrTrie allowed = CidrTrie.empty();
+    private volatile CidrTrie blocked = CidrTrie.empty();
+
+    private WatchService watchService;
+
+    public CidrFilter(Logger logger, Path allowFile, Path blockFile) {
+        this.logger = logger;
+        this.allowFile = allowFile.toAbsolutePath();
+        this.blockFile = blockFile.toAbsolutePath();
+    }
+
+    /**
+     * Creates missing files with a short explanation and loads both lists.
+     */
+    public void load() {
+        createIfMissing(allowFile);
+        createIfMissing(blockFile);
+
+        allowed = loadOrKeep(allowFile, allowed);
+        blocked = loadOrKeep(blockFile, blocked);
+    }
+
+    /**
+     * Reloads the lists in a background thread if one of the files changes.
+     *
+     * @param threadFactory factory of the watcher thread
+     */
+    public void startWatching(ThreadFactory threadFactory) {
+        try {
+            watchService = allowFile.getFileSystem().newWatchService();
+            Set<Path> folders = new HashSet<>(Arrays.asList(allowFile.getParent(), blockFile.getParent()));
+            for (Path folder : folders) {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch (IOException ioEx) {
+            logger.error("Cannot watch the address lists for changes", ioEx);
+            return;
+        }
+
+        Thread watcher = threadFactory.newThread(this::watch);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                int changed = collectChanges(watchService.take());
+                if (changed == 0) {
+                    continue;
+                }
+
+                // collect further changes until the lists stay unchanged. Other files in the same folder, like the
+                // database, change all the time and must not postpone the reload.
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELOAD_DELAY);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    WatchKey key = watchService.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        break;
+                    }
+
+                    int listChanges = collectChanges(key);
+                    if (listChanges != 0) {
+                        changed |= listChanges;
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELOAD_DELAY);
+                    }
+                }
+
+                if ((changed & ALLOW_LIST) != 0) {
+                    allowed = loadOrKeep(allowFile, allowed);
+                    reloads.incrementAndGet();
+                }
+
+                if ((changed & BLOCK_LIST) != 0) {
+                    blocked = loadOrKeep(blockFile, blocked);
+                    reloads.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException closedEx) {
+            // plugin disabled
+        }
+    }
+
+    /**
+     * @param key signalled key
+     * @return bit set of the changed lists
+     */
+    private int collectChanges(WatchKey key) {
+        Path folder = (Path) key.watchable();
+        int changed = 0;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed |= ALLOW_LIST | BLOCK_LIST;
+                continue;
+            }
+
+            Path file = folder.resolve((Path) event.context());
+            if (file.equals(allowFile)) {
+                changed |= ALLOW_LIST;
+            } else if (file.equals(blockFile)) {
+                changed |= BLOCK_LIST;
+            }
+        }
+
+        key.reset();
+        return changed;
+    }
+
+    public boolean isAllowed(InetAddress address) {
+        return allowed.contains(address);
+    }
+
+    public boolean isBlocked(InetAddress address) {
+        return blocked.contains(address);
+    }
+
+    public CidrTrie getAllowed() {
+        return allowed;
+    }
+
+    public CidrTrie getBlocked() {
+        return blocked;
+    }
+
+    public int getReloads() {
+        return reloads.get();
+    }
+
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ioEx) {
+                logger.warn("Cannot stop watching the address lists", ioEx);
+            }
+        }
+    }
+
+    private void createIfMissing(Path file) {
+        if (Files.exists(file)) {
+            return;
+        }
+
+        try {
+            Files.write(file, FILE_HEADER.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ioEx) {
+            logger.warn("Cannot create address list {}", file, ioEx);
+        }
+    }
+
+    private CidrTrie loadOrKeep(Path file, CidrTrie current) {
+        try {
+            CidrTrie trie = parse(file);
+            logger.info("Loaded {} address ranges from {}", trie.getPrefixes(), file.getFileName());
+            return trie;
+        } catch (NoSuchFileException noFileEx) {
+            // a deleted file empties the list
+            return CidrTrie.empty();
+        } catch (IOException ioEx) {
+            logger.error("Cannot read address list {} - keeping the previous one", file, ioEx);
+            return current;
+        }
+    }
+
+    private CidrTrie parse(Path file) throws IOException {
+        CidrTrie.Builder builder = new CidrTrie.Builder();
+        int invalidLines = 0;
+        StringBuilder reportedLines = new StringBuilder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int commentStart = line.indexOf('#');
+                if (commentStart >= 0) {
+                    line = line.substring(0, commentStart);
+                }
+
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                if (!parseRange(builder, line)) {
+                    invalidLines++;
+                    if (invalidLines <= MAX_REPORTED_LINES) {
+                        reportedLines.append(reportedLines.length() == 0 ? "" : ", ").append(lineNumber);
+                    }
+                }
+            }
+        }
+
+        if (invalidLines > 0) {
+            logger.warn("Skipped {} invalid lines in {} (lines {}{})", invalidLines, file.getFileName(),
+                    reportedLines, invalidLines > MAX_REPORTED_LINES ? ", ..." : "");
+        }
+
+        return builder.build();
+    }
+
+    private static boolean parseRange(CidrTrie.Builder builder, String range) {
+        int separator = range.indexOf('/');
+        String host = separator < 0 ? range : range.substring(0, separator);
+        try {
+            // only accepts literals, so it never asks a name server
+            InetAddress address = InetAddresses.forString(host);
+            int maxLength = address.getAddress().length * Byte.SIZE;
+            int prefixLength = separator < 0 ? maxLength : Integer.parseInt(range.substring(separator + 1));
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                return false;
+            }
+
+            builder.add(address, prefixLength);
+            return true;
+        } catch (IllegalArgumentException invalidEx) {
+            // includes NumberFormatException
+            return false;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Immutable set of IPv4 and IPv6 ranges in CIDR notation. Each address family is a path compressed binary radix trie
+ * (PATRICIA), so a lookup visits at most one node per distinct branch of the stored prefixes.
+ * <p>
+ * The trie is built with temporary objects and then flattened into a primitive array. After that, it doesn't allocate
+ * and uses 16 bytes per IPv4 node and 32 bytes per IPv6 node, with at most two nodes per prefix.
+ */
+public class CidrTrie {
+
+    private static final CidrTrie EMPTY = new Builder().build();
+
+    private final FlatTrie ipv4;
+    private final FlatTrie ipv6;
+    private final int prefixes;
+
+    private CidrTrie(FlatTrie ipv4, FlatTrie ipv6, int prefixes) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.prefixes = prefixes;
+    }
+
+    public static CidrTrie empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param address address to check
+     * @return true if any of the stored ranges contains the address
+     */
+    public boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            return ipv4.contains(toLong(bytes, 0, 4) << 32, 0);
+        }
+
+        return ipv6.contains(toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+    }
+
+    /**
+     * @return number of added prefixes including duplicates and covered ones
+     */
+    public int getPrefixes() {
+        return prefixes;
+    }
+
+    public int getNodes() {
+        return ipv4.size() + ipv6.size();
+    }
+
+    private static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+
+        return value;
+    }
+
+    // 128 bit keys are stored as two longs - IPv4 only uses the upper 32 bits of the first one
+
+    private static int bitAt(long hi, long lo, int index) {
+        if (index < Long.SIZE) {
+            return (int) (hi >>> (Long.SIZE - 1 - index)) & 1;
+        }
+
+        return (int) (lo >>> (2 * Long.SIZE - 1 - index)) & 1;
+    }
+
+    private static boolean matches(long hi, long lo, long prefixHi, long prefixLo, int length) {
+        if (length == 0) {
+            return true;
+        }
+
+        if (length <= Long.SIZE) {
+            return (hi ^ prefixHi) >>> (Long.SIZE - length) == 0;
+        }
+
+        return hi == prefixHi && (lo ^ prefixLo) >>> (2 * Long.SIZE - length) == 0;
+    }
+
+    private static long maskHi(long hi, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        return length >= Long.SIZE ? hi : hi & (-1L << (Long.SIZE - length));
+    }
+
+    private static long maskLo(long lo, int length) {
+        if (length <= Long.SIZE) {
+            return 0;
+        }
+
+        return lo & (-1L << (2 * Long.SIZE - length));
+    }
+
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int max) {
+        long diff = aHi ^ bHi;
+        int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : Long.SIZE + Long.numberOfLeadingZeros(aLo ^ bLo);
+        return Math.min(common, max);
+    }
+
+    public static class Builder {
+
+        private final BuildNode ipv4Root = new BuildNode(0, 0, 0);
+        private final BuildNode ipv6Root = new BuildNode(0, 0, 0);
+        private int prefixes;
+
+        /**
+         * @param address network address - host bits are ignored
+         * @param prefixLength number of network bits
+         * @return this builder
+         */
+        public Builder add(InetAddress address, int prefixLength) {
+            byte[] bytes = address.getAddress();
+            int maxLength = bytes.length * Byte.SIZE;
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                throw new IllegalArgumentException("Invalid prefix length " + prefixLength + " for " + address);
+            }
+
+            if (bytes.length == 4) {
+                insert(ipv4Root, toLong(bytes, 0, 4) << 32, 0, prefixLength);
+            } else {
+                insert(ipv6Root, toLong(bytes, 0, 8), toLong(bytes, 8, 8), prefixLength);
+            }
+
+            prefixes++;
+            return this;
+        }
+
+        public CidrTrie build() {
+            return new CidrTrie(FlatTrie.flatten(ipv4Root), FlatTrie.flatten(ipv6Root), prefixes);
+        }
+
+        private static void insert(BuildNode root, long hi, long lo, int length) {
+            hi = maskHi(hi, length);
+            lo = maskLo(lo, length);
+
+            BuildNode node = root;
+            while (true) {
+                if (node.terminal) {
+                    // already covered by a shorter prefix
+                    return;
+                }
+
+                if (node.length == length) {
+                    // covers all longer prefixes below it
+                    node.terminal = true;
+                    node.children[0] = null;
+                    node.children[1] = null;
+                    return;
+                }
+
+                int bit = bitAt(hi, lo, node.length);
+                BuildNode child = node.children[bit];
+                if (child == null) {
+                    BuildNode leaf = new BuildNode(hi, lo, length);
+                    leaf.terminal = true;
+                    node.children[bit] = leaf;
+                    return;
+                }
+
+                int common = commonPrefix(hi, lo, child.hi, child.lo, Math.min(child.length, length));
+                if (common == child.length) {
+                    node = child;
+                    continue;
+                }
+
+                // the new prefix branches off inside the compressed path of the child
+                BuildNode split = new BuildNode(maskHi(hi, common), maskLo(lo, common), common);
+                split.children[bitAt(child.hi, child.lo, common)] = child;
+                node.children[bit] = split;
+                if (common == length) {
+                    split.terminal = true;
+                    split.children[0] = null;
+                    split.children[1] = null;
+                } else {
+                    BuildNode leaf = new BuildNode(hi, lo, length);
+                    leaf.terminal = true;
+                    split.children[bitAt(hi, lo, common)] = leaf;
+                }
+
+                return;
+            }
+        }
+    }
+
+    private static class BuildNode {
+
+        private final long hi;
+        private final long lo;
+        private final int length;
+        private final BuildNode[] children = new BuildNode[2];
+        private boolean terminal;
+
+        BuildNode(long hi, long lo, int length) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Nodes are stored next to each other in a single array, so a step down the trie usually reads one cache line.
+     * If all prefixes are at most 32 bits long like for IPv4, the node metadata is stored in the unused lower bits of
+     * the prefix.
+     */
+    private static class FlatTrie {
+
+        private static final int NARROW_BITS = 32;
+        private static final long NARROW_META_MASK = 0xFFFF_FFFFL;
+
+        // narrow: prefix | meta, children - wide: prefix high, prefix low, meta, children
+        private final long[] data;
+        private final int stride;
+        private final boolean wide;
+
+        private FlatTrie(int nodes, boolean wide) {
+            this.wide = wide;
+            this.stride = wide ? 4 : 2;
+            this.data = new long[nodes * stride];
+        }
+
+        static FlatTrie flatten(BuildNode root) {
+            int nodes = 0;
+            boolean wide = false;
+            Deque<BuildNode> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                BuildNode node = pending.pop();
+                nodes++;
+                wide |= node.length > NARROW_BITS;
+                for (BuildNode child : node.children) {
+                    if (child != null) {
+                        pending.push(child);
+                    }
+                }
+            }
+
+            FlatTrie trie = new FlatTrie(nodes, wide);
+            int next = 1;
+            Deque<BuildNode> nodesToAdd = new ArrayDeque<>();
+            Deque<Integer> indexes = new ArrayDeque<>();
+            nodesToAdd.push(root);
+            indexes.push(0);
+            while (!nodesToAdd.isEmpty()) {
+                BuildNode node = nodesToAdd.pop();
+                int index = indexes.pop();
+                int[] childIndexes = {-1, -1};
+                for (int bit = 0; bit < 2; bit++) {
+                    BuildNode child = node.children[bit];
+                    if (child != null) {
+                        childIndexes[bit] = next++;
+                        nodesToAdd.push(child);
+                        indexes.push(childIndexes[bit]);
+                    }
+                }
+
+                trie.set(index, node, childIndexes[0], childIndexes[1]);
+            }
+
+            return trie;
+        }
+
+        private void set(int index, BuildNode node, int zeroChild, int oneChild) {
+            long meta = (long) node.length << 1 | (node.terminal ? 1 : 0);
+            long children = (long) zeroChild << 32 | (oneChild & 0xFFFF_FFFFL);
+
+            int base = index * stride;
+            if (wide) {
+                data[base] = node.hi;
+                data[base + 1] = node.lo;
+                data[base + 2] = meta;
+                data[base + 3] = children;
+            } else {
+                // the lower half of a narrow prefix is always zero
+                data[base] = node.hi | meta;
+                data[base + 1] = children;
+            }
+        }
+
+        boolean contains(long hi, long lo) {
+            int node = 0;
+            while (node >= 0) {
+                int base = node * stride;
+                long prefixHi = data[base];
+                long prefixLo = 0;
+                long meta;
+                long children;
+                if (wide) {
+                    prefixLo = data[base + 1];
+                    meta = data[base + 2];
+                    children = data[base + 3];
+                } else {
+                    meta = prefixHi & NARROW_META_MASK;
+                    children = data[base + 1];
+                }
+
+                // the metadata bits of narrow nodes are never compared
+                int length = (int) (meta >>> 1);
+                if (!matches(hi, lo, prefixHi, prefixLo, length)) {
+                    return false;
+                }
+
+                if ((meta & 1) != 0) {
+                    return true;
+                }
+
+                if (length == 2 * Long.SIZE) {
+                    return false;
+                }
+
+                node = bitAt(hi, lo, length) == 0 ? (int) (children >>> 32) : (int) children;
+            }
+
+            return false;
+        }
+
+        int size() {
+            return data.length / stride;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.security.SecureRandom;
+
+/**
+ * Fixed size map from primitive long keys to sliding window counters. The memory is allocated once, so an attack with
+ * many addresses cannot grow it. Keys are assigned to a set of a few slots like a CPU cache. If all slots of a set are
+ * in use, the entry with the oldest window is replaced - within the same window the one with the fewest requests.
+ * The set of a key is chosen with a randomly keyed hash, so an attacker cannot pick keys that collide with its own
+ * entry to reset the counter.
+ * <p>
+ * Each counter approximates a sliding window from the count of the current and the previous window. The previous count
+ * is weighted by the part of the previous window that is still inside the sliding window.
+ */
+public class ExpiringCounterMap {
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 64;
+
+    private final Ticker ticker;
+    private final long startNanos;
+    private final HashFunction hash;
+
+    // window length in milliseconds
+    private final long window;
+    private final int setMask;
+
+    // guarded by the lock of the stripe
+    private final long[] keys;
+    // index of the current window plus one - 0 marks an empty slot
+    private final long[] windows;
+    private final int[] current;
+    private final int[] previous;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    /**
+     * @param ticker time source
+     * @param capacity maximum number of tracked keys - rounded up to a power of two
+     * @param window milliseconds of the sliding window
+     */
+    public ExpiringCounterMap(Ticker ticker, int capacity, long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window has to be positive");
+        }
+
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+        this.window = window;
+
+        SecureRandom random = new SecureRandom();
+        this.hash = Hashing.sipHash24(random.nextLong(), random.nextLong());
+
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+        this.setMask = sets - 1;
+
+        int slots = sets * WAYS;
+        this.keys = new long[slots];
+        this.windows = new long[slots];
+        this.current = new int[slots];
+        this.previous = new int[slots];
+
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Counts a request for the key if it's below the limit.
+     *
+     * @param key key of the request
+     * @param limit maximum number of requests within the window
+     * @return true if the request is allowed
+     */
+    public boolean tryAcquire(long key, int limit) {
+        long now = Math.max(0, ticker.read() - startNanos) / 1_000_000;
+        long windowIndex = now / window + 1;
+        double progress = (double) (now % window) / window;
+
+        int set = spread(key) & setMask;
+        synchronized (locks[set & (STRIPES - 1)]) {
+            int slot = findSlot(set * WAYS, key, windowIndex);
+            roll(slot, windowIndex);
+
+            double estimate = previous[slot] * (1 - progress) + current[slot];
+            if (estimate >= limit) {
+                return false;
+            }
+
+            current[slot]++;
+            return true;
+        }
+    }
+
+    /**
+     * @return number of keys with requests in the current or previous window - not an atomic snapshot
+     */
+    public int getTracked() {
+        long now = Math.max(0, ticker.read() - startNanos) / 1_000_000;
+        long windowIndex = now / window + 1;
+
+        int tracked = 0;
+        for (long slotWindow : windows) {
+            if (slotWindow != 0 && slotWindow >= windowIndex - 1) {
+                tracked++;
+            }
+        }
+
+        return tracked;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    private int findSlot(int base, long key, long windowIndex) {
+        int victim = base;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (windows[slot] != 0 && keys[slot] == key) {
+                return slot;
+            }
+
+            // empty slots have the oldest window
+            if (windows[slot] < windows[victim] || (windows[slot] == windows[victim] && count(slot) < count(victim))) {
+                victim = slot;
+            }
+        }
+
+        keys[victim] = key;
+        windows[victim] = windowIndex;
+        current[victim] = 0;
+        previous[victim] = 0;
+        return victim;
+    }
+
+    private void roll(int slot, long windowIndex) {
+        long slotWindow = windows[slot];
+        if (slotWindow >= windowIndex) {
+            return;
+        }
+
+        previous[slot] = slotWindow == windowIndex - 1 ? current[slot] : 0;
+        current[slot] = 0;
+        windows[slot] = windowIndex;
+    }
+
+    private int count(int slot) {
+        return current[slot] + previous[slot];
+    }
+
+    private int spread(long key) {
+        return hash.hashLong(key).asInt();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free variant of the {@link TickingRateLimiter}. Requests are counted in a ring of time buckets that together
+ * cover the expire time. A request expires once its bucket leaves the window, so requests are released in steps of a
+ * bucket length instead of minute records.
+ * <p>
+ * Each bucket stores its time index and its request count in a single atomic long. The total is a separate atomic
+ * counter, so an acquire only needs a few compare-and-set operations and never allocates. Expired buckets are swept by
+ * the first thread that sees a new bucket. The ticker is read relative to the start, so it never throws on clock jumps.
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    // bits for the count of a bucket - the remaining upper bits store the index of the bucket
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    public static final int MAX_LIMIT = (int) COUNT_MASK;
+
+    private static final long MAX_BUCKET_LENGTH = 1_000;
+    private static final int MIN_BUCKETS = 10;
+    private static final int MAX_BUCKETS = 4_096;
+
+    private final Ticker ticker;
+    private final long startNanos;
+
+    private final int requestLimit;
+    private final long bucketLength;
+    private final int bucketCount;
+
+    private final AtomicLongArray buckets;
+    private final AtomicInteger totalRequests = new AtomicInteger();
+
+    // buckets up to this index are already swept
+    private final AtomicLong sweptIndex = new AtomicLong(-1);
+
+    /**
+     * @param ticker time source
+     * @param maxLimit maximum number of requests within the expire time
+     * @param expireTime milliseconds after a request is no longer counted
+     */
+    public SlidingWindowRateLimiter(Ticker ticker, int maxLimit, long expireTime) {
+        if (maxLimit < 0 || maxLimit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit has to be between 0 and " + MAX_LIMIT);
+        }
+
+        if (expireTime <= 0) {
+            throw new IllegalArgumentException("Expire time has to be positive");
+        }
+
+        this.ticker = ticker;
+        this.startNanos = ticker.read();
+        this.requestLimit = maxLimit;
+
+        // second buckets for the usual minutes, but at least a few buckets for short windows
+        long length = Math.max(1, Math.min(MAX_BUCKET_LENGTH, expireTime / MIN_BUCKETS));
+        if (expireTime / length > MAX_BUCKETS) {
+            length = (expireTime + MAX_BUCKETS - 1) / MAX_BUCKETS;
+        }
+
+        this.bucketLength = length;
+        this.bucketCount = (int) ((expireTime + length - 1) / length);
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * Ask if access is allowed. If so register the request.
+     *
+     * @return true if allowed - false otherwise without any side effects
+     */
+    @Override
+    public boolean tryAcquire() {
+        long index = currentIndex();
+        sweep(index);
+
+        // reserve in the total first, so concurrent requests cannot exceed the limit
+        int total;
+        do {
+            total = totalRequests.get();
+            if (total >= requestLimit) {
+                return false;
+            }
+        } while (!totalRequests.compareAndSet(total, total + 1));
+
+        record(index);
+        return true;
+    }
+
+    private long currentIndex() {
+        // relative to the start, because the ticker value itself can be negative
+        long elapsedMillis = Math.max(0, ticker.read() - startNanos) / 1_000_000;
+        return elapsedMillis / bucketLength;
+    }
+
+    private void record(long index) {
+        int slot = (int) (index % bucketCount);
+        while (true) {
+            long bucket = buckets.get(slot);
+            long bucketIndex = bucket >>> COUNT_BITS;
+            if (bucketIndex >= index) {
+                // current bucket or a newer one if this thread was delayed for a whole window
+                if (buckets.compareAndSet(slot, bucket, bucket + 1)) {
+                    return;
+                }
+            } else if (buckets.compareAndSet(slot, bucket, pack(index, 1))) {
+                // the slot still contained a bucket from the last round that wasn't swept yet
+                release(bucket);
+                return;
+            }
+        }
+    }
+
+    private void sweep(long index) {
+        long expiredIndex = index - bucketCount;
+        long swept = sweptIndex.get();
+        if (swept >= expiredIndex || !sweptIndex.compareAndSet(swept, expiredIndex)) {
+            // nothing new expired or another thread sweeps it
+            return;
+        }
+
+        for (int slot = 0; slot < bucketCount; slot++) {
+            long bucket;
+            do {
+                bucket = buckets.get(slot);
+                if ((bucket >>> COUNT_BITS) > expiredIndex || (bucket & COUNT_MASK) == 0) {
+                    break;
+                }
+            } while (!buckets.compareAndSet(slot, bucket, bucket & ~COUNT_MASK));
+
+            if ((bucket >>> COUNT_BITS) <= expiredIndex) {
+                release(bucket);
+            }
+        }
+    }
+
+    private void release(long bucket) {
+        int count = (int) (bucket & COUNT_MASK);
+        if (count > 0) {
+            totalRequests.addAndGet(-count);
+        }
+    }
+
+    private static long pack(long index, int count) {
+        return (index << COUNT_BITS) | count;
+    }
+
+    /**
+     * @return number of requests within the expire time
+     */
+    public int getRequests() {
+        // release expired buckets, even if there were no new requests
+        sweep(currentIndex());
+        return totalRequests.get();
+    }
+}
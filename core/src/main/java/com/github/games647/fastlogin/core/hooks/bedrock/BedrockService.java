@@ -27,6 +27,7 @@ package com.github.games647.fastlogin.core.hooks.bedrock;
 
 import com.github.games647.craftapi.model.Profile;
 import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
 import com.github.games647.fastlogin.core.shared.FastLoginCore;
 import com.github.games647.fastlogin.core.shared.LoginSource;
 import com.github.games647.fastlogin.core.storage.StoredProfile;
@@ -68,7 +69,7 @@ public abstract class BedrockService<B> {
         // check for conflicting Premium Java name
         Optional<Profile> premiumUUID = Optional.empty();
         try {
-            premiumUUID = core.getResolver().findProfile(username);
+            premiumUUID = core.findProfile(username, Priority.CRITICAL);
         } catch (IOException ioEx) {
             core.getPlugin().getLog().error(
                 "Could not check whether Bedrock Player {}'s name conflicts a premium Java player's name.",
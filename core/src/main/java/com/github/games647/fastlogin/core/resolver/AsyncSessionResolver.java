@@ -0,0 +1,471 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session server client with an asynchronous API. Verifications run on a small dedicated pool, so the caller can
+ * release its thread while the session server answers.
+ * <p>
+ * The connections are kept alive between requests and are optionally warmed up periodically, so that the DNS lookup
+ * and the TLS handshake are usually already done when a player joins.
+ * <p>
+ * With multiple routes (proxies or local addresses) every verification uses the route with the lowest recent latency.
+ * If hedging is enabled and the session server didn't answer within the usual latency of that route, a second request
+ * is sent over the next route and the first answer wins.
+ */
+public class AsyncSessionResolver extends ForwardingMojangResolver {
+
+    public static final String DEFAULT_URL = "https://sessionserver.mojang.com";
+
+    private static final String HAS_JOINED_PATH = "/session/minecraft/hasJoined?username=%s&serverId=%s";
+    private static final String IP_PARAM = "&ip=%s";
+
+    private final String baseUrl;
+    private final boolean sendIp;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile List<SessionRoute> routes = Collections.singletonList(SessionRoute.direct());
+
+    private volatile boolean hedging;
+    private volatile double hedgePercentile;
+    private volatile long minHedgeDelay;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong lastLatency = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * @param delegate resolver for all other requests
+     * @param baseUrl session server URL without a trailing slash
+     * @param sendIp include the address of the player, so the session server verifies it. Should be false behind
+     *               transparent proxies.
+     * @param threads maximum number of concurrent verifications
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout read timeout in milliseconds
+     * @param threadFactory factory for the request threads
+     */
+    public AsyncSessionResolver(MojangResolver delegate, String baseUrl, boolean sendIp, int threads,
+                                int connectTimeout, int readTimeout, ThreadFactory threadFactory) {
+        super(delegate);
+
+        this.baseUrl = baseUrl;
+        this.sendIp = sendIp;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Connects to the session server every interval, so that a join doesn't have to wait for the DNS lookup and the
+     * full TLS handshake.
+     *
+     * @param interval seconds between two connections
+     */
+    public void scheduleWarmUp(long interval) {
+        executor.scheduleWithFixedDelay(this::warmUp, 0, interval, TimeUnit.SECONDS);
+    }
+
+    private void warmUp() {
+        for (SessionRoute route : routes) {
+            try {
+                HttpURLConnection conn = openConnection(route, new URL(baseUrl + '/'));
+                conn.setRequestMethod("HEAD");
+                conn.getResponseCode();
+                drain(conn);
+            } catch (IOException ioEx) {
+                // the next verification will report the error
+            }
+        }
+    }
+
+    /**
+     * @param routes outgoing routes to the session server - at least one
+     */
+    public void setRoutes(List<SessionRoute> routes) {
+        if (routes.isEmpty()) {
+            throw new IllegalArgumentException("At least one route is required");
+        }
+
+        this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+    }
+
+    /**
+     * Sends a second request over another route if the first one is slower than usual.
+     *
+     * @param percentile latency percentile of the first route after which the second request is sent
+     * @param minDelay minimum delay in milliseconds before the second request, so fast routes don't always hedge
+     */
+    public void enableHedging(double percentile, long minDelay) {
+        this.hedgePercentile = percentile;
+        this.minHedgeDelay = TimeUnit.MILLISECONDS.toNanos(minDelay);
+        this.hedging = true;
+    }
+
+    /**
+     * Verifies the session of a player without blocking the calling thread.
+     *
+     * @param username requested name of the player
+     * @param serverHash server id hash of the encryption
+     * @param hostIp address of the player
+     * @return future completed with the verified profile, empty if the session is invalid or exceptionally if the
+     * session server couldn't be reached
+     */
+    public CompletableFuture<Optional<Verification>> hasJoinedAsync(String username, String serverHash,
+                                                                     InetAddress hostIp) {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker == null) {
+            return submit(username, serverHash, hostIp);
+        }
+
+        if (!breaker.tryAcquire()) {
+            CompletableFuture<Optional<Verification>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new IOException("Session server is unavailable - circuit breaker is open"));
+            return rejected;
+        }
+
+        long start = System.nanoTime();
+        return submit(username, serverHash, hostIp)
+                .whenComplete((verification, error) -> breaker.onResult(error == null, System.nanoTime() - start));
+    }
+
+    private CompletableFuture<Optional<Verification>> submit(String username, String serverHash, InetAddress hostIp) {
+        List<SessionRoute> ranked = new ArrayList<>(routes);
+        ranked.sort(Comparator.comparingDouble(SessionRoute::getAverageLatency));
+
+        HedgedRequest request = new HedgedRequest(username, serverHash, hostIp, ranked);
+        request.start();
+        return request.result;
+    }
+
+    @Override
+    public Optional<Verification> hasJoined(String username, String serverHash, InetAddress hostIp)
+            throws IOException {
+        // synchronous requests are already protected by the resolver chain
+        try {
+            return await(submit(username, serverHash, hostIp));
+        } catch (RateLimitException rateLimitEx) {
+            throw new IOException(rateLimitEx);
+        }
+    }
+
+    /**
+     * @param circuitBreaker circuit breaker protecting the asynchronous verifications or null to disable it
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    private Optional<Verification> requestJoin(SessionRoute route, String username, String serverHash,
+                                               InetAddress hostIp) throws IOException {
+        String url = baseUrl + String.format(HAS_JOINED_PATH, username, serverHash);
+        // same as the default resolver: session servers only verify IPv4 addresses
+        if (sendIp && hostIp instanceof Inet4Address) {
+            url += String.format(IP_PARAM, hostIp.getHostAddress());
+        }
+
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        boolean success = false;
+        try {
+            HttpURLConnection conn = openConnection(route, new URL(url));
+            int responseCode = conn.getResponseCode();
+
+            // Mojang session servers send HTTP 204 (NO CONTENT) when the authentication seems invalid
+            if (responseCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                drain(conn);
+                success = true;
+                return Optional.empty();
+            }
+
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                drain(conn);
+                throw new IOException("Unexpected response code " + responseCode + " from the session server");
+            }
+
+            try (InputStream in = conn.getInputStream()) {
+                Optional<Verification> verification = Optional.ofNullable(readJson(in, Verification.class));
+                success = true;
+                return verification;
+            }
+        } catch (SocketTimeoutException timeoutEx) {
+            timedOutRequests.incrementAndGet();
+            failedRequests.incrementAndGet();
+            throw timeoutEx;
+        } catch (IOException ioEx) {
+            failedRequests.incrementAndGet();
+            throw ioEx;
+        } finally {
+            long latency = System.nanoTime() - start;
+            recordLatency(latency);
+
+            // failing routes are ranked like routes that always run into the timeout
+            long penalty = TimeUnit.MILLISECONDS.toNanos(connectTimeout + readTimeout);
+            route.recordLatency(success ? latency : Math.max(latency, penalty));
+        }
+    }
+
+    private HttpURLConnection openConnection(SessionRoute route, URL url) throws IOException {
+        HttpURLConnection conn = route.openConnection(url);
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("Connection", "keep-alive");
+        return conn;
+    }
+
+    private static void drain(HttpURLConnection conn) {
+        // the connection is only reused if the complete response was read
+        InputStream in = conn.getErrorStream();
+        try {
+            if (in == null) {
+                in = conn.getInputStream();
+            }
+
+            byte[] buffer = new byte[512];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+
+            in.close();
+        } catch (IOException ioEx) {
+            conn.disconnect();
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        lastLatency.set(nanos);
+        totalLatency.addAndGet(nanos);
+        maxLatency.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    public long getTimedOutRequests() {
+        return timedOutRequests.get();
+    }
+
+    public long getAverageLatency(TimeUnit unit) {
+        long count = requests.get();
+        return count == 0 ? 0 : unit.convert(totalLatency.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxLatency(TimeUnit unit) {
+        return unit.convert(maxLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getLastLatency(TimeUnit unit) {
+        return unit.convert(lastLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return number of second requests sent over another route
+     */
+    public long getHedgedRequests() {
+        return hedgedRequests.get();
+    }
+
+    /**
+     * @return number of second requests that answered before the first one
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    public List<SessionRoute> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return number of tasks waiting for a free thread including the scheduled warm up
+     */
+    public int getQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Single verification that can be sent over multiple routes. Routes are tried in order and the first answer
+     * completes the result.
+     */
+    private class HedgedRequest {
+
+        private final String username;
+        private final String serverHash;
+        private final InetAddress hostIp;
+        private final List<SessionRoute> routes;
+
+        private final CompletableFuture<Optional<Verification>> result = new CompletableFuture<>();
+
+        // guarded by this
+        private int nextRoute;
+        private int running;
+        private ScheduledFuture<?> hedgeTask;
+
+        HedgedRequest(String username, String serverHash, InetAddress hostIp, List<SessionRoute> routes) {
+            this.username = username;
+            this.serverHash = serverHash;
+            this.hostIp = hostIp;
+            this.routes = routes;
+        }
+
+        void start() {
+            sendNext();
+            if (!hedging || routes.size() < 2) {
+                return;
+            }
+
+            long delay = Math.max(minHedgeDelay, routes.get(0).getLatencyPercentile(hedgePercentile));
+            try {
+                ScheduledFuture<?> task = executor.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+                synchronized (this) {
+                    hedgeTask = task;
+                }
+
+                result.whenComplete((verification, error) -> task.cancel(false));
+            } catch (RejectedExecutionException rejectedEx) {
+                // the first request still runs
+            }
+        }
+
+        private void hedge() {
+            if (!result.isDone()) {
+                sendNext();
+            }
+        }
+
+        private boolean sendNext() {
+            SessionRoute route;
+            boolean first;
+            synchronized (this) {
+                if (nextRoute >= routes.size()) {
+                    return false;
+                }
+
+                first = nextRoute == 0;
+                route = routes.get(nextRoute++);
+                running++;
+            }
+
+            if (!first) {
+                hedgedRequests.incrementAndGet();
+            }
+
+            try {
+                executor.execute(() -> send(route, first));
+            } catch (RejectedExecutionException rejectedEx) {
+                onFailure(rejectedEx, false);
+            }
+
+            return true;
+        }
+
+        private void send(SessionRoute route, boolean first) {
+            if (result.isDone()) {
+                // another route already answered while this one waited for a thread
+                return;
+            }
+
+            try {
+                Optional<Verification> verification = requestJoin(route, username, serverHash, hostIp);
+                if (result.complete(verification) && !first) {
+                    hedgeWins.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException ex) {
+                onFailure(ex, true);
+            }
+        }
+
+        private void onFailure(Exception ex, boolean retry) {
+            ScheduledFuture<?> pendingHedge;
+            synchronized (this) {
+                running--;
+                pendingHedge = hedgeTask;
+            }
+
+            // with hedging the next route is asked right away instead of waiting for the delay
+            if (retry && hedging && !result.isDone() && sendNext()) {
+                if (pendingHedge != null) {
+                    pendingHedge.cancel(false);
+                }
+
+                return;
+            }
+
+            synchronized (this) {
+                if (running == 0) {
+                    result.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+}
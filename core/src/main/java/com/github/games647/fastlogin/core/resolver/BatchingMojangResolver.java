@@ -0,0 +1,298 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects name lookups for a short time window and resolves them together with a single request to the bulk
+ * profiles endpoint. During join waves this divides the number of requests by up to {@link #MAX_BATCH_SIZE}.
+ * <p>
+ * Each bulk request counts as a single request in the {@link RequestBudget} with the most important priority of its
+ * names. The requests rotate over the configured {@link SessionRoute routes}, because the budget assumes the limit
+ * of every route. Session requests are still forwarded to the wrapped resolver.
+ */
+public class BatchingMojangResolver extends ForwardingMojangResolver {
+
+    public static final String DEFAULT_URL = "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname";
+
+    // limit of the Mojang endpoint
+    public static final int MAX_BATCH_SIZE = 10;
+
+    private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(5);
+    private static final int RATE_LIMIT_CODE = 429;
+
+    private final URL url;
+    private final long window;
+    private final RequestBudget budget;
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private final Map<String, CompletableFuture<Optional<Profile>>> pending = new LinkedHashMap<>();
+    // guarded by lock
+    private final Map<String, Priority> priorities = new HashMap<>();
+    private boolean flushScheduled;
+
+    private volatile List<SessionRoute> routes = Collections.singletonList(SessionRoute.direct());
+    private final AtomicInteger nextRoute = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batchedNames = new AtomicLong();
+    private final AtomicLong rateLimitedNames = new AtomicLong();
+
+    /**
+     * @param delegate resolver for all other requests
+     * @param url bulk profiles endpoint accepting a JSON array of names
+     * @param window time in milliseconds to collect further names before the request is sent
+     * @param budget quota of the Mojang API
+     * @param threadFactory factory for the thread sending the requests
+     */
+    public BatchingMojangResolver(MojangResolver delegate, URL url, long window, RequestBudget budget,
+                                  ThreadFactory threadFactory) {
+        super(delegate);
+
+        this.url = url;
+        this.window = window;
+        this.budget = budget;
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        String key = name.toLowerCase(Locale.ROOT);
+
+        CompletableFuture<Optional<Profile>> lookup;
+        synchronized (lock) {
+            lookup = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+            priorities.merge(key, RequestBudget.getLookupPriority(), BatchingMojangResolver::mostImportant);
+            try {
+                if (pending.size() >= MAX_BATCH_SIZE) {
+                    // don't wait for more names if the batch is already full
+                    flushScheduled = true;
+                    executor.execute(this::flush);
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    executor.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException rejectedEx) {
+                pending.remove(key, lookup);
+                priorities.remove(key);
+                throw new IOException("Resolver is already closed", rejectedEx);
+            }
+        }
+
+        return await(lookup);
+    }
+
+    private void flush() {
+        while (true) {
+            Map<String, CompletableFuture<Optional<Profile>>> batch = new HashMap<>();
+            Priority priority = Priority.SPECULATIVE;
+            synchronized (lock) {
+                Iterator<Map.Entry<String, CompletableFuture<Optional<Profile>>>> iterator =
+                        pending.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                    Map.Entry<String, CompletableFuture<Optional<Profile>>> entry = iterator.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+
+                    Priority namePriority = priorities.remove(entry.getKey());
+                    if (namePriority != null) {
+                        priority = mostImportant(priority, namePriority);
+                    }
+                }
+
+                if (batch.isEmpty()) {
+                    flushScheduled = false;
+                    return;
+                }
+            }
+
+            resolveBatch(batch, priority);
+        }
+    }
+
+    private void resolveBatch(Map<String, CompletableFuture<Optional<Profile>>> batch, Priority priority) {
+        try {
+            budget.acquire(priority);
+        } catch (RateLimitException rateLimitEx) {
+            rateLimitedNames.addAndGet(batch.size());
+            batch.values().forEach(lookup -> lookup.completeExceptionally(rateLimitEx));
+            return;
+        }
+
+        requests.incrementAndGet();
+        batchedNames.addAndGet(batch.size());
+        try {
+            Map<String, Profile> profiles = requestProfiles(batch.keySet());
+            batch.forEach((key, lookup) -> lookup.complete(Optional.ofNullable(profiles.get(key))));
+        } catch (IOException | RateLimitException | RuntimeException ex) {
+            batch.values().forEach(lookup -> lookup.completeExceptionally(ex));
+        }
+    }
+
+    private static Priority mostImportant(Priority first, Priority second) {
+        // declared from the most to the least important
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    private Map<String, Profile> requestProfiles(Collection<String> names) throws IOException, RateLimitException {
+        JsonArray body = new JsonArray();
+        names.forEach(body::add);
+
+        HttpURLConnection conn = selectRoute().openConnection(url);
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            // read the body, so the connection can be reused
+            discardErrorStream(conn);
+            if (responseCode == RATE_LIMIT_CODE) {
+                throw new RateLimitException();
+            }
+
+            throw new IOException("Unexpected response code " + responseCode + " from " + url);
+        }
+
+        Map<String, Profile> profiles = new HashMap<>();
+        try (InputStream in = conn.getInputStream();
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject object = element.getAsJsonObject();
+                String name = object.get("name").getAsString();
+                Profile profile = new Profile(UUIDAdapter.parseId(object.get("id").getAsString()), name);
+                profiles.put(name.toLowerCase(Locale.ROOT), profile);
+            }
+        }
+
+        return profiles;
+    }
+
+    private SessionRoute selectRoute() {
+        List<SessionRoute> current = routes;
+        return current.get(Math.floorMod(nextRoute.getAndIncrement(), current.size()));
+    }
+
+    private static void discardErrorStream(HttpURLConnection conn) {
+        try (InputStream in = conn.getErrorStream()) {
+            if (in == null) {
+                return;
+            }
+
+            byte[] buffer = new byte[1_024];
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+        } catch (IOException ioEx) {
+            // the connection is closed instead of reused
+        }
+    }
+
+    /**
+     * @param routes outgoing routes of the bulk requests - at least one. Each request uses the next route.
+     */
+    public void setRoutes(List<SessionRoute> routes) {
+        if (routes.isEmpty()) {
+            throw new IllegalArgumentException("At least one route is required");
+        }
+
+        this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+    }
+
+    /**
+     * @return number of sent bulk requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of names resolved by bulk requests
+     */
+    public long getBatchedNames() {
+        return batchedNames.get();
+    }
+
+    /**
+     * @return number of names rejected or deferred, because the budget was exhausted
+     */
+    public long getRateLimitedNames() {
+        return rateLimitedNames.get();
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        synchronized (lock) {
+            IOException closed = new IOException("Resolver is closed");
+            pending.values().forEach(lookup -> lookup.completeExceptionally(closed));
+            pending.clear();
+            priorities.clear();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Accounts every name lookup that is sent to Mojang in the {@link RequestBudget}. Lookups are rejected with a
+ * {@link RateLimitException} once all routes reached their limit, before Mojang would reject them. Lookups of a less
+ * important {@link RequestBudget#getLookupPriority() priority} are deferred earlier.
+ */
+public class BudgetedMojangResolver extends ForwardingMojangResolver {
+
+    private final RequestBudget budget;
+
+    public BudgetedMojangResolver(MojangResolver delegate, RequestBudget budget) {
+        super(delegate);
+        this.budget = budget;
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        budget.acquire(RequestBudget.getLookupPriority());
+        return delegate.findProfile(name);
+    }
+
+    public RequestBudget getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes name to profile lookups. Premium names and names without a premium account are cached separately, because
+ * an unknown name could be bought at any time while a premium name rarely changes its owner.
+ * <p>
+ * Failed lookups like rate limits or connection errors are never cached. With a {@link LookupCacheFile} the results
+ * survive restarts and keep their original expire time.
+ * <p>
+ * Optionally, frequently used entries are looked up again shortly before they expire. This only happens while the
+ * {@link RequestBudget} has quota to spare, so returning players are usually answered from the cache even at peak
+ * times.
+ */
+public class CachingMojangResolver extends ForwardingMojangResolver {
+
+    private final Clock clock;
+    private final Cache<String, CachedLookup> premium;
+    private final Cache<String, CachedLookup> unknown;
+    private final long premiumExpire;
+    private final long unknownExpire;
+
+    private volatile LookupCacheFile cacheFile;
+    private ScheduledExecutorService refreshExecutor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param delegate resolver performing the actual requests
+     * @param maxSize maximum number of entries of each cache
+     * @param premiumExpire time after a premium name is looked up again
+     * @param unknownExpire time after a name without a premium account is looked up again
+     * @param unit time unit of both expire times
+     */
+    public CachingMojangResolver(MojangResolver delegate, int maxSize,
+                                 long premiumExpire, long unknownExpire, TimeUnit unit) {
+        this(delegate, Clock.systemUTC(), maxSize, premiumExpire, unknownExpire, unit);
+    }
+
+    /**
+     * @param clock time source of the expire times
+     * @see #CachingMojangResolver(MojangResolver, int, long, long, TimeUnit)
+     */
+    public CachingMojangResolver(MojangResolver delegate, Clock clock, int maxSize,
+                                 long premiumExpire, long unknownExpire, TimeUnit unit) {
+        super(delegate);
+
+        this.clock = clock;
+        this.premiumExpire = unit.toMillis(premiumExpire);
+        this.unknownExpire = unit.toMillis(unknownExpire);
+        this.premium = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(premiumExpire, unit)
+                .build();
+        this.unknown = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(unknownExpire, unit)
+                .build();
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        String key = name.toLowerCase(Locale.ROOT);
+        long now = clock.millis();
+        CachedLookup cached = getValid(premium, key, now);
+        if (cached == null) {
+            cached = getValid(unknown, key, now);
+        }
+
+        if (cached != null) {
+            hits.incrementAndGet();
+            cached.recordAccess();
+            return Optional.ofNullable(cached.getProfile());
+        }
+
+        misses.incrementAndGet();
+        Optional<Profile> profile = delegate.findProfile(name);
+        store(key, profile, 1);
+        return profile;
+    }
+
+    private void store(String key, Optional<Profile> profile, int accesses) {
+        CachedLookup lookup;
+        if (profile.isPresent()) {
+            lookup = new CachedLookup(profile.get(), clock.millis() + premiumExpire);
+            unknown.invalidate(key);
+            premium.put(key, lookup);
+        } else {
+            lookup = new CachedLookup(null, clock.millis() + unknownExpire);
+            premium.invalidate(key);
+            unknown.put(key, lookup);
+        }
+
+        lookup.accesses.set(accesses);
+        LookupCacheFile file = cacheFile;
+        if (file != null) {
+            file.append(key, lookup);
+        }
+    }
+
+    /**
+     * Periodically looks up entries again that are used often and expire soon.
+     *
+     * @param budget request budget - refreshes only use quota that is left for speculative lookups
+     * @param minAccesses minimum number of cache hits of an entry before it's refreshed
+     * @param window fraction of the expire time at the end of an entry's lifetime in which it's refreshed
+     * @param maxRefreshes maximum number of refreshes per run
+     * @param interval seconds between two runs
+     * @param threadFactory factory for the refresh thread
+     */
+    public void enableRefreshAhead(RequestBudget budget, int minAccesses, double window, int maxRefreshes,
+                                   long interval, ThreadFactory threadFactory) {
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        refreshExecutor.scheduleWithFixedDelay(() -> refreshAhead(budget, minAccesses, window, maxRefreshes),
+                interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void refreshAhead(RequestBudget budget, int minAccesses, double window, int maxRefreshes) {
+        long now = clock.millis();
+        List<Entry<String, CachedLookup>> candidates = new ArrayList<>();
+        collectCandidates(premium, (long) (premiumExpire * window), minAccesses, now, candidates);
+        collectCandidates(unknown, (long) (unknownExpire * window), minAccesses, now, candidates);
+
+        // the most used entries first, in case the budget runs out
+        candidates.sort(Comparator.comparingInt((Entry<String, CachedLookup> entry) -> entry.getValue().getAccesses())
+                .reversed());
+        int refreshed = 0;
+        for (Entry<String, CachedLookup> candidate : candidates) {
+            if (refreshed >= maxRefreshes || !budget.hasQuotaFor(Priority.SPECULATIVE)) {
+                break;
+            }
+
+            try {
+                Optional<Profile> profile = RequestBudget.withPriority(Priority.SPECULATIVE,
+                        () -> delegate.findProfile(candidate.getKey()));
+
+                // halve the count, so entries that are no longer used stop being refreshed
+                store(candidate.getKey(), profile, candidate.getValue().getAccesses() / 2);
+                refreshes.incrementAndGet();
+                refreshed++;
+            } catch (IOException | RateLimitException ex) {
+                // the entry is still valid - try again in the next run
+                break;
+            }
+        }
+    }
+
+    private static void collectCandidates(Cache<String, CachedLookup> cache, long window, int minAccesses, long now,
+                                          List<Entry<String, CachedLookup>> candidates) {
+        for (Entry<String, CachedLookup> entry : cache.asMap().entrySet()) {
+            CachedLookup lookup = entry.getValue();
+            if (!lookup.isExpired(now) && lookup.getExpiresAt() - now <= window
+                    && lookup.getAccesses() >= minAccesses) {
+                candidates.add(entry);
+            }
+        }
+    }
+
+    private static CachedLookup getValid(Cache<String, CachedLookup> cache, String key, long now) {
+        CachedLookup lookup = cache.getIfPresent(key);
+        if (lookup != null && lookup.isExpired(now)) {
+            // restored entries expire earlier than the cache itself would remove them
+            cache.asMap().remove(key, lookup);
+            return null;
+        }
+
+        return lookup;
+    }
+
+    /**
+     * Persists all following lookups to the file and restores the entries of the file in the background.
+     *
+     * @param cacheFile file of the previous lookups
+     */
+    public void setCacheFile(LookupCacheFile cacheFile) {
+        this.cacheFile = cacheFile;
+        cacheFile.loadAsync(this::restore);
+    }
+
+    public LookupCacheFile getCacheFile() {
+        return cacheFile;
+    }
+
+    private void restore(String key, CachedLookup lookup) {
+        if (lookup.isExpired(clock.millis())) {
+            return;
+        }
+
+        // lookups since the start are newer
+        if (lookup.getProfile() == null) {
+            if (!premium.asMap().containsKey(key)) {
+                unknown.asMap().putIfAbsent(key, lookup);
+            }
+        } else if (!unknown.asMap().containsKey(key)) {
+            premium.asMap().putIfAbsent(key, lookup);
+        }
+    }
+
+    /**
+     * Removes the cached result for this name. The next lookup will contact Mojang again.
+     *
+     * @param name player name
+     * @return true if a result was cached
+     */
+    public boolean invalidate(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        LookupCacheFile file = cacheFile;
+        if (file != null) {
+            file.remove(key);
+        }
+
+        boolean removed = premium.asMap().remove(key) != null;
+        return unknown.asMap().remove(key) != null || removed;
+    }
+
+    public void invalidateAll() {
+        LookupCacheFile file = cacheFile;
+        if (file != null) {
+            file.clear();
+        }
+
+        premium.invalidateAll();
+        unknown.invalidateAll();
+    }
+
+    public long getPremiumSize() {
+        return premium.size();
+    }
+
+    public long getUnknownSize() {
+        return unknown.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries that were looked up again before they expired
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return ratio of lookups answered from the cache or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public void close() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+
+        LookupCacheFile file = cacheFile;
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Result of a lookup with its absolute expire time, so it can be persisted and restored.
+     */
+    public static class CachedLookup {
+
+        private final Profile profile;
+        private final long expiresAt;
+
+        // cache hits since the last lookup - not persisted
+        private final AtomicInteger accesses = new AtomicInteger();
+
+        /**
+         * @param profile premium profile or null if the name has no premium account
+         * @param expiresAt epoch milliseconds after the name should be looked up again
+         */
+        public CachedLookup(Profile profile, long expiresAt) {
+            this.profile = profile;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return premium profile or null if the name has no premium account
+         */
+        public Profile getProfile() {
+            return profile;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        public int getAccesses() {
+            return accesses.get();
+        }
+
+        private void recordAccess() {
+            accesses.incrementAndGet();
+        }
+    }
+}
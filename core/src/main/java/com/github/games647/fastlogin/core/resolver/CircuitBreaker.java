@@ -0,0 +1,239 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops requests to an unreachable service. The circuit opens if too many of the recent requests failed or were too
+ * slow. While it's open, requests are rejected immediately instead of waiting for the timeout. After the open
+ * duration a single probe request is let through - its result decides if the circuit closes or opens again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+
+        /**
+         * Requests are made normally
+         */
+        CLOSED,
+
+        /**
+         * Requests are rejected
+         */
+        OPEN,
+
+        /**
+         * A single probe request is allowed
+         */
+        HALF_OPEN
+    }
+
+    private final Logger log;
+    private final Ticker ticker;
+    private final String name;
+
+    private final int minimumRequests;
+    private final double failureRateThreshold;
+    private final long slowRequestNanos;
+    private final long openNanos;
+
+    // ring buffer of the recent results - true for failed requests
+    private final boolean[] results;
+    private int nextResult;
+    private int recordedResults;
+    private int failedResults;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeRunning;
+
+    private long rejectedRequests;
+    private long trips;
+
+    /**
+     * @param log logger for state changes
+     * @param name name of the protected service
+     * @param window number of recent requests the failure rate is calculated from
+     * @param minimumRequests requests in the window before the circuit can open
+     * @param failureRateThreshold failure rate from 0 to 1 which opens the circuit
+     * @param slowRequestDuration duration after a successful request still counts as failure
+     * @param openDuration duration until the next probe request
+     * @param unit time unit of both durations
+     */
+    public CircuitBreaker(Logger log, String name, int window, int minimumRequests, double failureRateThreshold,
+                          long slowRequestDuration, long openDuration, TimeUnit unit) {
+        this(log, Ticker.systemTicker(), name, window, minimumRequests, failureRateThreshold, slowRequestDuration,
+                openDuration, unit);
+    }
+
+    /**
+     * @param ticker time source of the open duration
+     * @see #CircuitBreaker(Logger, String, int, int, double, long, long, TimeUnit)
+     */
+    public CircuitBreaker(Logger log, Ticker ticker, String name, int window, int minimumRequests,
+                          double failureRateThreshold, long slowRequestDuration, long openDuration, TimeUnit unit) {
+        this.log = log;
+        this.ticker = ticker;
+        this.name = name;
+        this.results = new boolean[window];
+        this.minimumRequests = Math.min(minimumRequests, window);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowRequestNanos = unit.toNanos(slowRequestDuration);
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Checks if a request is allowed. Every allowed request has to report its result with
+     * {@link #onResult(boolean, long)}.
+     *
+     * @return false if the request should be rejected
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (ticker.read() - openedAt < openNanos) {
+                    rejectedRequests++;
+                    return false;
+                }
+
+                state = State.HALF_OPEN;
+                probeRunning = true;
+                log.info("Circuit breaker for {} is half-open - sending a probe request", name);
+                return true;
+            default:
+                if (probeRunning) {
+                    rejectedRequests++;
+                    return false;
+                }
+
+                probeRunning = true;
+                return true;
+        }
+    }
+
+    /**
+     * Releases an allowed request that never reached the service, for example because it was rejected by the local
+     * quota. Nothing is recorded and a half-open circuit lets the next request probe the service.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probeRunning = false;
+        }
+    }
+
+    /**
+     * @param success false if the request failed
+     * @param durationNanos duration of the request in nanoseconds
+     */
+    public synchronized void onResult(boolean success, long durationNanos) {
+        boolean failed = !success || durationNanos >= slowRequestNanos;
+        if (state == State.HALF_OPEN) {
+            probeRunning = false;
+            if (failed) {
+                log.warn("Circuit breaker for {} opened again, because the probe request failed or was too slow. "
+                        + "Requests are rejected for the next {}s", name, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+                open();
+            } else {
+                close();
+            }
+
+            return;
+        }
+
+        if (state == State.OPEN) {
+            // started before the circuit opened
+            return;
+        }
+
+        if (recordedResults == results.length) {
+            if (results[nextResult]) {
+                failedResults--;
+            }
+        } else {
+            recordedResults++;
+        }
+
+        results[nextResult] = failed;
+        if (failed) {
+            failedResults++;
+        }
+
+        nextResult = (nextResult + 1) % results.length;
+        if (recordedResults >= minimumRequests && getFailureRate() >= failureRateThreshold) {
+            log.warn("Circuit breaker for {} opened after {} of the last {} requests failed or were too slow. "
+                            + "Requests are rejected for the next {}s",
+                    name, failedResults, recordedResults, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = ticker.read();
+        trips++;
+    }
+
+    private void close() {
+        log.info("Circuit breaker for {} closed - the service responds again", name);
+
+        state = State.CLOSED;
+        nextResult = 0;
+        recordedResults = 0;
+        failedResults = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return share of failed or slow requests from 0 to 1 in the current window
+     */
+    public synchronized double getFailureRate() {
+        return recordedResults == 0 ? 0 : (double) failedResults / recordedResults;
+    }
+
+    public synchronized long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    /**
+     * @return how often the circuit opened
+     */
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Protects the name lookups and the session verifications with a {@link CircuitBreaker} each.
+ * <p>
+ * Failed or rejected name lookups are answered with the last known premium profile of this name if there is one.
+ * Premium names rarely change their owner, so this is safe. Names without a premium account are never served stale,
+ * because such a name could be bought in the meantime. Session verifications are never served stale.
+ */
+public class CircuitBreakerMojangResolver extends ForwardingMojangResolver {
+
+    private final CircuitBreaker lookupBreaker;
+    private final CircuitBreaker sessionBreaker;
+
+    // last known premium profiles - independent of the lookup cache, so they survive its expiration
+    private final Cache<String, Profile> staleProfiles;
+    private final AtomicLong staleResponses = new AtomicLong();
+
+    /**
+     * @param delegate resolver making the actual requests
+     * @param lookupBreaker circuit breaker of the name lookups
+     * @param sessionBreaker circuit breaker of the session verifications
+     * @param maxStaleProfiles maximum number of remembered premium profiles
+     * @param staleExpire time in days after a remembered profile is discarded
+     */
+    public CircuitBreakerMojangResolver(MojangResolver delegate, CircuitBreaker lookupBreaker,
+                                        CircuitBreaker sessionBreaker, int maxStaleProfiles, long staleExpire) {
+        super(delegate);
+
+        this.lookupBreaker = lookupBreaker;
+        this.sessionBreaker = sessionBreaker;
+        this.staleProfiles = CacheBuilder.newBuilder()
+                .maximumSize(maxStaleProfiles)
+                .expireAfterWrite(staleExpire, TimeUnit.DAYS)
+                .build();
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        String key = name.toLowerCase(Locale.ROOT);
+        if (!lookupBreaker.tryAcquire()) {
+            return serveStale(key, new IOException("Mojang API is unavailable - circuit breaker is open"));
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean sent = true;
+        try {
+            Optional<Profile> profile = delegate.findProfile(name);
+            success = true;
+            if (profile.isPresent()) {
+                staleProfiles.put(key, profile.get());
+            } else {
+                staleProfiles.invalidate(key);
+            }
+
+            return profile;
+        } catch (QuotaExceededException quotaEx) {
+            // rejected or deferred locally - says nothing about the API
+            sent = false;
+            throw quotaEx;
+        } catch (RateLimitException rateLimitEx) {
+            // the API responds, it's only our quota
+            success = true;
+            throw rateLimitEx;
+        } catch (IOException ioEx) {
+            return serveStale(key, ioEx);
+        } finally {
+            if (sent) {
+                lookupBreaker.onResult(success, System.nanoTime() - start);
+            } else {
+                lookupBreaker.release();
+            }
+        }
+    }
+
+    private Optional<Profile> serveStale(String key, IOException error) throws IOException {
+        Profile stale = staleProfiles.getIfPresent(key);
+        if (stale == null) {
+            throw error;
+        }
+
+        staleResponses.incrementAndGet();
+        return Optional.of(stale);
+    }
+
+    @Override
+    public Optional<Verification> hasJoined(String username, String serverHash, InetAddress hostIp)
+            throws IOException {
+        if (!sessionBreaker.tryAcquire()) {
+            throw new IOException("Session server is unavailable - circuit breaker is open");
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<Verification> verification = delegate.hasJoined(username, serverHash, hostIp);
+            success = true;
+            return verification;
+        } finally {
+            sessionBreaker.onResult(success, System.nanoTime() - start);
+        }
+    }
+
+    public CircuitBreaker getLookupBreaker() {
+        return lookupBreaker;
+    }
+
+    public CircuitBreaker getSessionBreaker() {
+        return sessionBreaker;
+    }
+
+    /**
+     * @return number of lookups answered with a remembered profile, because the API was unavailable
+     */
+    public long getStaleResponses() {
+        return staleResponses.get();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent lookups of the same name share a single request. Reconnecting clients or bots often join with the
+ * same name several times within a second - only the first lookup contacts Mojang while the others wait for its
+ * result including errors.
+ */
+public class CoalescingMojangResolver extends ForwardingMojangResolver {
+
+    private final ConcurrentMap<String, CompletableFuture<Optional<Profile>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    public CoalescingMojangResolver(MojangResolver delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        String key = name.toLowerCase(Locale.ROOT);
+
+        CompletableFuture<Optional<Profile>> request = new CompletableFuture<>();
+        CompletableFuture<Optional<Profile>> running = inFlight.putIfAbsent(key, request);
+        if (running != null) {
+            coalescedRequests.incrementAndGet();
+            try {
+                return await(running);
+            } catch (DeferredLookupException deferredEx) {
+                if (RequestBudget.getLookupPriority().compareTo(deferredEx.getPriority()) >= 0) {
+                    throw deferredEx;
+                }
+
+                // the running lookup was less important - this one could still have quota left
+                return delegate.findProfile(name);
+            }
+        }
+
+        try {
+            Optional<Profile> profile = delegate.findProfile(name);
+            request.complete(profile);
+            return profile;
+        } catch (IOException | RateLimitException | RuntimeException ex) {
+            request.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            // later lookups should make a new request, because they could be answered differently
+            inFlight.remove(key, request);
+        }
+    }
+
+    /**
+     * @return number of lookups that were answered by another running request
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    /**
+     * @return number of lookups that are currently running
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
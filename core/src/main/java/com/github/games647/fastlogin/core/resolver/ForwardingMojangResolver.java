@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ProxySelector;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Base class for decorators of a {@link MojangResolver}. The operations used by this plugin and the configuration
+ * setters are forwarded to the wrapped resolver, so decorators can be stacked without changing the callers.
+ */
+public abstract class ForwardingMojangResolver extends MojangResolver {
+
+    protected final MojangResolver delegate;
+
+    protected ForwardingMojangResolver(MojangResolver delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+        return delegate.findProfile(name);
+    }
+
+    @Override
+    public Optional<Verification> hasJoined(String username, String serverHash, InetAddress hostIp)
+            throws IOException {
+        return delegate.hasJoined(username, serverHash, hostIp);
+    }
+
+    @Override
+    public void setMaxNameRequests(int maxNameRequests) {
+        delegate.setMaxNameRequests(maxNameRequests);
+    }
+
+    @Override
+    public void setProxySelector(ProxySelector proxySelector) {
+        delegate.setProxySelector(proxySelector);
+    }
+
+    @Override
+    public void setOutgoingAddresses(Collection<InetAddress> addresses) {
+        delegate.setOutgoingAddresses(addresses);
+    }
+
+    /**
+     * Waits for a lookup running on another thread and rethrows its original exception.
+     *
+     * @param running lookup result
+     * @param <T> result type
+     * @return the result of the lookup
+     * @throws IOException if the lookup failed or the thread was interrupted
+     * @throws RateLimitException if the lookup was rate limited
+     */
+    protected static <T> T await(CompletableFuture<T> running) throws IOException, RateLimitException {
+        try {
+            return running.get();
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the lookup");
+        } catch (ExecutionException executionEx) {
+            Throwable cause = executionEx.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RateLimitException) {
+                throw (RateLimitException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException("Lookup failed", cause);
+        }
+    }
+
+    public MojangResolver getDelegate() {
+        return delegate;
+    }
+}
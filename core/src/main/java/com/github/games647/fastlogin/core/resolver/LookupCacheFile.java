@@ -0,0 +1,424 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.fastlogin.core.resolver.CachingMojangResolver.CachedLookup;
+import com.github.games647.fastlogin.core.storage.RecordLog;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Append-only file of the lookup cache, so a restarted server doesn't have to look up every reconnecting player again.
+ * Every cached lookup and invalidation is appended to a {@link RecordLog} with its absolute expire time, so a partially
+ * written record is discarded.
+ * <p>
+ * The file is read in the background after the start. Lookups in the meantime are queued and applied on top of the
+ * loaded records. Like the cache itself, only the most recent entries of each type are kept. Once most records are
+ * outdated, the file is rewritten with only the current entries.
+ */
+public class LookupCacheFile {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TYPE_UNKNOWN = 0;
+    private static final byte TYPE_PREMIUM = 1;
+    private static final byte TYPE_REMOVED = 2;
+
+    // don't rewrite small files
+    private static final int MIN_COMPACT_RECORDS = 1_000;
+    private static final long SYNC_INTERVAL = 10;
+    private static final long COMPACT_CHECK_INTERVAL = 60;
+
+    private final Logger log;
+    private final RecordLog recordLog;
+
+    private final ScheduledExecutorService executor;
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by lock - the current record for each name, so the file can be compacted without reading it again
+    private final Map<String, CachedLookup> premium;
+    private final Map<String, CachedLookup> unknown;
+    private final List<Record> queued = new ArrayList<>();
+    private boolean loaded;
+    private boolean disabled;
+    private boolean clearOnLoad;
+    private boolean dirty;
+    private int records;
+    private int compactions;
+
+    /**
+     * @param maxSize maximum number of premium and unknown entries each - the size of the cache
+     */
+    public LookupCacheFile(Logger log, Path file, ThreadFactory threadFactory, int maxSize) {
+        this.log = log;
+        this.recordLog = new RecordLog(file);
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.premium = newBoundedMap(maxSize);
+        this.unknown = newBoundedMap(maxSize);
+    }
+
+    /**
+     * Reads the file in the background and passes every entry that isn't expired yet to the handler.
+     *
+     * @param restoreHandler receives the lower case name and the cached lookup
+     * @return future that completes after all entries were restored
+     */
+    public CompletableFuture<Void> loadAsync(BiConsumer<String, CachedLookup> restoreHandler) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> load(restoreHandler), executor);
+        executor.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.SECONDS);
+        executor.scheduleWithFixedDelay(this::compactIfNeeded, COMPACT_CHECK_INTERVAL, COMPACT_CHECK_INTERVAL,
+                TimeUnit.SECONDS);
+        return future;
+    }
+
+    private void load(BiConsumer<String, CachedLookup> restoreHandler) {
+        Map<String, CachedLookup> restored;
+        lock.lock();
+        try {
+            long discarded = recordLog.open(payload -> {
+                apply(decode(payload));
+                records++;
+            });
+            if (discarded > 0) {
+                log.warn("Discarded {} damaged bytes at the end of the lookup cache file", discarded);
+            }
+
+            if (clearOnLoad) {
+                clearEntries();
+                recordLog.clear();
+            }
+
+            removeExpired(System.currentTimeMillis());
+
+            // results from the meantime are newer than the file
+            restored = new HashMap<>(premium);
+            restored.putAll(unknown);
+            for (Record record : queued) {
+                restored.remove(record.key);
+                write(record);
+            }
+
+            queued.clear();
+            loaded = true;
+        } catch (IOException ioEx) {
+            log.error("Failed to load the lookup cache file", ioEx);
+            closeFile();
+            disabled = true;
+            queued.clear();
+            return;
+        } finally {
+            lock.unlock();
+        }
+
+        restored.forEach(restoreHandler);
+        log.info("Restored {} cached lookups", restored.size());
+    }
+
+    /**
+     * @param key lower case name
+     * @param lookup cached result
+     */
+    public void append(String key, CachedLookup lookup) {
+        appendRecord(new Record(key, lookup));
+    }
+
+    /**
+     * @param key lower case name that should be looked up again
+     */
+    public void remove(String key) {
+        appendRecord(new Record(key, null));
+    }
+
+    private void appendRecord(Record record) {
+        lock.lock();
+        try {
+            if (disabled) {
+                return;
+            }
+
+            if (loaded) {
+                write(record);
+            } else {
+                queued.add(record);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries from the file.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            clearEntries();
+            queued.clear();
+            if (loaded) {
+                recordLog.clear();
+            } else {
+                clearOnLoad = true;
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to clear lookup cache file", ioEx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getEntries() {
+        lock.lock();
+        try {
+            return premium.size() + unknown.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRecords() {
+        lock.lock();
+        try {
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCompactions() {
+        lock.lock();
+        try {
+            return compactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        lock.lock();
+        try {
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+
+        lock.lock();
+        try {
+            closeFile();
+            loaded = false;
+            disabled = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeFile() {
+        try {
+            recordLog.close();
+        } catch (IOException ioEx) {
+            log.error("Failed to close lookup cache file", ioEx);
+        }
+    }
+
+    private void write(Record record) {
+        try {
+            recordLog.append(encode(record));
+        } catch (IOException ioEx) {
+            log.error("Failed to write {} to the lookup cache file", record.key, ioEx);
+            return;
+        }
+
+        dirty = true;
+        records++;
+        apply(record);
+    }
+
+    private void apply(Record record) {
+        premium.remove(record.key);
+        unknown.remove(record.key);
+        if (record.lookup != null) {
+            // re-inserted, so that the oldest entries are removed first
+            (record.lookup.getProfile() == null ? unknown : premium).put(record.key, record.lookup);
+        }
+    }
+
+    private void clearEntries() {
+        premium.clear();
+        unknown.clear();
+        records = 0;
+    }
+
+    private void sync() {
+        lock.lock();
+        try {
+            // cached lookups can be repeated, so losing the last seconds after a crash is fine
+            if (loaded && dirty) {
+                recordLog.sync();
+                dirty = false;
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to sync lookup cache file", ioEx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void compactIfNeeded() {
+        lock.lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+
+            removeExpired(System.currentTimeMillis());
+            int entries = premium.size() + unknown.size();
+            if (records > MIN_COMPACT_RECORDS && records > entries * 2) {
+                compact(entries);
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to compact lookup cache file", ioEx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void compact(int entries) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(entries);
+        premium.forEach((key, lookup) -> payloads.add(encode(new Record(key, lookup))));
+        unknown.forEach((key, lookup) -> payloads.add(encode(new Record(key, lookup))));
+
+        recordLog.rewrite(payloads);
+        dirty = false;
+        records = entries;
+        compactions++;
+    }
+
+    private void removeExpired(long now) {
+        premium.values().removeIf(lookup -> lookup.isExpired(now));
+        unknown.values().removeIf(lookup -> lookup.isExpired(now));
+    }
+
+    private static Map<String, CachedLookup> newBoundedMap(int maxSize) {
+        return new LinkedHashMap<String, CachedLookup>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLookup> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static byte[] encode(Record record) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+
+            CachedLookup lookup = record.lookup;
+            if (lookup == null) {
+                out.writeByte(TYPE_REMOVED);
+                out.writeUTF(record.key);
+            } else if (lookup.getProfile() == null) {
+                out.writeByte(TYPE_UNKNOWN);
+                out.writeUTF(record.key);
+                out.writeLong(lookup.getExpiresAt());
+            } else {
+                Profile profile = lookup.getProfile();
+                out.writeByte(TYPE_PREMIUM);
+                out.writeUTF(record.key);
+                out.writeLong(lookup.getExpiresAt());
+                out.writeLong(profile.getId().getMostSignificantBits());
+                out.writeLong(profile.getId().getLeastSignificantBits());
+                out.writeUTF(profile.getName());
+            }
+        } catch (IOException ioEx) {
+            // cannot happen for in memory streams
+            throw new IllegalStateException(ioEx);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown lookup cache format " + version);
+            }
+
+            byte type = in.readByte();
+            String key = in.readUTF();
+            switch (type) {
+                case TYPE_REMOVED:
+                    return new Record(key, null);
+                case TYPE_UNKNOWN:
+                    return new Record(key, new CachedLookup(null, in.readLong()));
+                case TYPE_PREMIUM:
+                    long expiresAt = in.readLong();
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    Profile profile = new Profile(id, in.readUTF());
+                    return new Record(key, new CachedLookup(profile, expiresAt));
+                default:
+                    throw new IOException("Unknown lookup cache record " + type);
+            }
+        }
+    }
+
+    private static class Record {
+
+        private final String key;
+
+        // null if the name was invalidated
+        private final CachedLookup lookup;
+
+        Record(String key, CachedLookup lookup) {
+            this.key = key;
+            this.lookup = lookup;
+        }
+    }
+}
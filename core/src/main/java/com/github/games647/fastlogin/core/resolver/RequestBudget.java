@@ -0,0 +1,216 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the Mojang API quota in a sliding window of ten minutes. Each local address and each proxy has its own limit,
+ * but the resolver picks the route of a request internally. The quota of all routes is therefore tracked as a single
+ * pool. This matches the real limits as long as the resolver spreads the requests evenly.
+ * <p>
+ * Less important lookups are deferred before the hard limit is reached, so there is still quota left for the
+ * important ones. Deferred lookups are treated like a name without a premium account.
+ */
+public class RequestBudget {
+
+    /**
+     * Importance of a lookup. Each priority is only admitted while more than its reserved share of the quota is left.
+     */
+    public enum Priority {
+
+        /**
+         * Security relevant lookups like name conflicts with Bedrock players. Admitted until the hard limit.
+         */
+        CRITICAL,
+
+        /**
+         * Lookups that decide about a premium login, like the automatic registration.
+         */
+        NORMAL,
+
+        /**
+         * Lookups of unknown names that only rarely change the result, like the name change check.
+         */
+        SPECULATIVE
+    }
+
+    private static final long WINDOW = TimeUnit.MINUTES.toNanos(10);
+
+    private static final ThreadLocal<Priority> LOOKUP_PRIORITY = new ThreadLocal<>();
+
+    // send times of the requests within the window
+    private final Deque<Long> requests = new ArrayDeque<>();
+    private final int capacity;
+    private final double normalReserve;
+    private final double speculativeReserve;
+
+    private final AtomicLong deferredLookups = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * @param routes number of outgoing routes like local addresses and proxies
+     * @param limitPerRoute maximum number of requests per route in ten minutes
+     * @param normalReserve share of the quota from 0 to 1 that is reserved for critical lookups
+     * @param speculativeReserve share of the quota from 0 to 1 that speculative lookups may not use
+     */
+    public RequestBudget(int routes, int limitPerRoute, double normalReserve, double speculativeReserve) {
+        this.capacity = Math.max(1, routes) * limitPerRoute;
+        this.normalReserve = normalReserve;
+        this.speculativeReserve = speculativeReserve;
+    }
+
+    /**
+     * Runs a lookup with the given priority on this thread. The reserve is only checked once a request is really
+     * sent, so lookups answered by a cache, a running lookup of the same name or a pending batch are never deferred.
+     *
+     * @param priority importance of the lookup
+     * @param lookup lookup through the resolver chain
+     * @param <T> result type
+     * @return result of the lookup
+     * @throws DeferredLookupException if the lookup would have used the quota reserved for more important lookups
+     * @throws RateLimitException if the hard limit is reached
+     * @throws IOException if the lookup failed
+     */
+    public static <T> T withPriority(Priority priority, Lookup<T> lookup) throws IOException, RateLimitException {
+        Priority previous = LOOKUP_PRIORITY.get();
+        LOOKUP_PRIORITY.set(priority);
+        try {
+            return lookup.run();
+        } finally {
+            if (previous == null) {
+                LOOKUP_PRIORITY.remove();
+            } else {
+                LOOKUP_PRIORITY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return priority of the lookup running on this thread. Lookups without a priority are only limited by the hard
+     * limit.
+     */
+    public static Priority getLookupPriority() {
+        Priority priority = LOOKUP_PRIORITY.get();
+        return priority == null ? Priority.CRITICAL : priority;
+    }
+
+    /**
+     * @param priority importance of the request
+     * @return true if enough quota is left for this priority
+     */
+    public boolean hasQuotaFor(Priority priority) {
+        double reserve;
+        switch (priority) {
+            case SPECULATIVE:
+                reserve = speculativeReserve;
+                break;
+            case NORMAL:
+                reserve = normalReserve;
+                break;
+            default:
+                reserve = 0;
+                break;
+        }
+
+        return getRemaining() > reserve * getCapacity();
+    }
+
+    /**
+     * Consumes the quota for a request.
+     *
+     * @param priority importance of the request
+     * @throws DeferredLookupException if only the quota reserved for more important requests is left
+     * @throws QuotaExceededException if the limit is reached
+     */
+    public synchronized void acquire(Priority priority) throws QuotaExceededException {
+        long now = System.nanoTime();
+        expire(now);
+        if (requests.size() >= capacity) {
+            rejectedRequests.incrementAndGet();
+            throw new QuotaExceededException();
+        }
+
+        if (!hasQuotaFor(priority)) {
+            deferredLookups.incrementAndGet();
+            throw new DeferredLookupException(priority);
+        }
+
+        requests.addLast(now);
+    }
+
+    private void expire(long now) {
+        while (!requests.isEmpty() && now - requests.peekFirst() >= WINDOW) {
+            requests.pollFirst();
+        }
+    }
+
+    /**
+     * @return number of requests that can be made in the current window
+     */
+    public synchronized int getRemaining() {
+        expire(System.nanoTime());
+        return capacity - requests.size();
+    }
+
+    /**
+     * @return maximum number of requests of all routes within ten minutes
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Lookup that can be run with a priority.
+     *
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface Lookup<T> {
+
+        T run() throws IOException, RateLimitException;
+    }
+
+    /**
+     * @return number of lookups that were deferred to keep quota for more important ones
+     */
+    public long getDeferredLookups() {
+        return deferredLookups.get();
+    }
+
+    /**
+     * @return number of requests rejected at the hard limit
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Outgoing route to the session server or the bulk lookup endpoint - either a proxy or a local address. Every route
+ * tracks the latency of its recent session requests, so slow routes can be avoided.
+ */
+public class SessionRoute {
+
+    private static final int SAMPLES = 128;
+
+    // weight of a new sample in the moving average
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final Proxy proxy;
+    private final SSLSocketFactory socketFactory;
+
+    // ring buffer of the recent latencies in nanoseconds - guarded by this
+    private final long[] samples = new long[SAMPLES];
+    private int nextSample;
+    private int sampleCount;
+    private double averageLatency;
+
+    private SessionRoute(String name, Proxy proxy, SSLSocketFactory socketFactory) {
+        this.name = name;
+        this.proxy = proxy;
+        this.socketFactory = socketFactory;
+    }
+
+    public static SessionRoute direct() {
+        return new SessionRoute("direct", Proxy.NO_PROXY, null);
+    }
+
+    public static SessionRoute ofProxy(Proxy proxy) {
+        return new SessionRoute("proxy " + proxy.address(), proxy, null);
+    }
+
+    public static SessionRoute ofLocalAddress(InetAddress localAddress) {
+        SSLSocketFactory defaultFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        return new SessionRoute("address " + localAddress.getHostAddress(), Proxy.NO_PROXY,
+                new BoundSocketFactory(defaultFactory, localAddress));
+    }
+
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection(proxy);
+        if (socketFactory != null && conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(socketFactory);
+        }
+
+        return conn;
+    }
+
+    public synchronized void recordLatency(long nanos) {
+        samples[nextSample] = nanos;
+        nextSample = (nextSample + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) {
+            sampleCount++;
+        }
+
+        if (sampleCount == 1) {
+            averageLatency = nanos;
+        } else {
+            averageLatency += SMOOTHING * (nanos - averageLatency);
+        }
+    }
+
+    /**
+     * @param percentile percentile from 0 to 100
+     * @return latency in nanoseconds that this percentile of the recent requests didn't exceed or 0 without requests
+     */
+    public long getLatencyPercentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (sampleCount == 0) {
+                return 0;
+            }
+
+            sorted = Arrays.copyOf(samples, sampleCount);
+        }
+
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * @return exponential moving average of the latency in nanoseconds or 0 if there were no requests yet. Routes
+     * without requests are preferred, so every route gets measured.
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    public long getAverageLatency(TimeUnit unit) {
+        return unit.convert((long) getAverageLatency(), TimeUnit.NANOSECONDS);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Binds the connections of the requests to a local address.
+     */
+    private static class BoundSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+        private final InetAddress localAddress;
+
+        BoundSocketFactory(SSLSocketFactory delegate, InetAddress localAddress) {
+            this.delegate = delegate;
+            this.localAddress = localAddress;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            Socket socket = delegate.createSocket();
+            socket.bind(new InetSocketAddress(localAddress, 0));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return delegate.createSocket(socket, host, port, autoClose);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate.createSocket(host, port, localAddress, 0);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate.createSocket(host, port, localAddress, 0);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return delegate.createSocket(address, port, localHost, localPort);
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+    }
+}
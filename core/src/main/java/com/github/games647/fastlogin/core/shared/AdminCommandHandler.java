@@ -0,0 +1,354 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.antibot.AddressRateLimiter;
+import com.github.games647.fastlogin.core.antibot.AdmissionQueue;
+import com.github.games647.fastlogin.core.antibot.AntiBotService;
+import com.github.games647.fastlogin.core.antibot.AttackModeDetector;
+import com.github.games647.fastlogin.core.antibot.CidrFilter;
+import com.github.games647.fastlogin.core.resolver.AsyncSessionResolver;
+import com.github.games647.fastlogin.core.resolver.BatchingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CachingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CircuitBreaker;
+import com.github.games647.fastlogin.core.resolver.CircuitBreakerMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CoalescingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.LookupCacheFile;
+import com.github.games647.fastlogin.core.resolver.RequestBudget;
+import com.github.games647.fastlogin.core.resolver.SessionRoute;
+import com.github.games647.fastlogin.core.storage.CachedStorage;
+import com.github.games647.fastlogin.core.storage.NameFilter;
+import com.github.games647.fastlogin.core.storage.SQLStorage;
+import com.github.games647.fastlogin.core.storage.SaveJournal;
+import com.github.games647.fastlogin.core.storage.WriteBehindStorage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Platform independent implementation of the admin command. It reports the state of the optional performance
+ * features and allows to maintain them at runtime.
+ *
+ * @param <C> CommandSender
+ */
+public class AdminCommandHandler<C> {
+
+    public static final String USAGE = "Usage: /fastloginadmin "
+            + "<status|rebuild-filter|reset-compact-format|remove-text-columns|invalidate <name|all>>";
+
+    private final FastLoginCore<?, C, ?> core;
+
+    public AdminCommandHandler(FastLoginCore<?, C, ?> core) {
+        this.core = core;
+    }
+
+    /**
+     * @param sender invoker of the command. The permission has to be checked by the platform.
+     * @param args command arguments without the label
+     */
+    public void onCommand(C sender, String... args) {
+        if (args.length == 0) {
+            sendMessage(sender, USAGE);
+            return;
+        }
+
+        String subCommand = args[0].toLowerCase(Locale.ROOT);
+        switch (subCommand) {
+            case "status":
+                sendStatus(sender);
+                break;
+            case "rebuild-filter":
+                rebuildFilter(sender);
+                break;
+            case "reset-compact-format":
+                resetCompactFormat(sender);
+                break;
+            case "remove-text-columns":
+                removeTextColumns(sender);
+                break;
+            case "invalidate":
+                if (args.length < 2) {
+                    sendMessage(sender, USAGE);
+                } else {
+                    invalidate(sender, args[1]);
+                }
+                break;
+            default:
+                sendMessage(sender, USAGE);
+                break;
+        }
+    }
+
+    private void sendStatus(C sender) {
+        WriteBehindStorage writeBehind = core.getWriteBehind();
+        if (writeBehind == null) {
+            sendMessage(sender, "Write-behind: disabled");
+        } else {
+            sendMessage(sender, String.format("Write-behind: %d queued, %d written, %d coalesced, %d failed flushes, "
+                            + "flush latency avg %dms max %dms",
+                    writeBehind.getQueueDepth(), writeBehind.getFlushedProfiles(), writeBehind.getCoalescedSaves(),
+                    writeBehind.getFailedFlushes(), writeBehind.getAverageFlushLatency(TimeUnit.MILLISECONDS),
+                    writeBehind.getMaxFlushLatency(TimeUnit.MILLISECONDS)));
+        }
+
+        CachedStorage profileCache = core.getProfileCache();
+        if (profileCache == null) {
+            sendMessage(sender, "Profile cache: disabled");
+        } else {
+            sendMessage(sender, String.format("Profile cache: %d entries, %d hits, %d misses, %d evictions",
+                    profileCache.getSize(), profileCache.getHitCount(), profileCache.getMissCount(),
+                    profileCache.getEvictionCount()));
+        }
+
+        SaveJournal journal = core.getSaveJournal();
+        if (journal == null) {
+            sendMessage(sender, "Save journal: disabled");
+        } else {
+            Instant lastReplay = journal.getLastReplay();
+            sendMessage(sender, String.format("Save journal: %d pending (%d/%d KiB), %d journaled, %d replayed, "
+                            + "%d dropped, %d failed replays, last replay: %s",
+                    journal.getPendingRecords(), journal.getSize() / 1024, journal.getMaxSize() / 1024,
+                    journal.getJournaledSaves(), journal.getReplayedSaves(), journal.getDroppedSaves(),
+                    journal.getFailedReplays(), lastReplay == null ? "never" : lastReplay));
+        }
+
+        CachingMojangResolver lookupCache = core.getLookupCache();
+        if (lookupCache == null) {
+            sendMessage(sender, "Lookup cache: disabled");
+        } else {
+            sendMessage(sender, String.format(Locale.ROOT, "Lookup cache: %d premium, %d unknown, %d hits, %d misses "
+                            + "(hit rate %.2f), %d refreshed ahead",
+                    lookupCache.getPremiumSize(), lookupCache.getUnknownSize(), lookupCache.getHitCount(),
+                    lookupCache.getMissCount(), lookupCache.getHitRate(), lookupCache.getRefreshes()));
+
+            LookupCacheFile cacheFile = lookupCache.getCacheFile();
+            if (cacheFile != null) {
+                sendMessage(sender, String.format("Lookup cache file: %s, %d entries, %d records, %d compactions",
+                        cacheFile.isLoaded() ? "loaded" : "not loaded", cacheFile.getEntries(),
+                        cacheFile.getRecords(), cacheFile.getCompactions()));
+            }
+        }
+
+        CoalescingMojangResolver coalescingResolver = core.getCoalescingResolver();
+        if (coalescingResolver != null) {
+            sendMessage(sender, String.format("Lookup coalescing: %d running, %d saved requests",
+                    coalescingResolver.getInFlight(), coalescingResolver.getCoalescedRequests()));
+        }
+
+        CircuitBreakerMojangResolver breakerResolver = core.getCircuitBreakerResolver();
+        if (breakerResolver == null) {
+            sendMessage(sender, "Circuit breaker: disabled");
+        } else {
+            sendCircuitBreaker(sender, breakerResolver.getLookupBreaker());
+            sendCircuitBreaker(sender, breakerResolver.getSessionBreaker());
+            sendMessage(sender, String.format("Stale profiles served: %d", breakerResolver.getStaleResponses()));
+        }
+
+        AsyncSessionResolver sessionResolver = core.getSessionResolver();
+        if (sessionResolver == null) {
+            sendMessage(sender, "Session client: disabled");
+        } else {
+            sendMessage(sender, String.format("Session client: %d requests, %d failed, %d timed out, %d queued, "
+                            + "latency avg %dms max %dms last %dms",
+                    sessionResolver.getRequests(), sessionResolver.getFailedRequests(),
+                    sessionResolver.getTimedOutRequests(), sessionResolver.getQueuedRequests(),
+                    sessionResolver.getAverageLatency(TimeUnit.MILLISECONDS),
+                    sessionResolver.getMaxLatency(TimeUnit.MILLISECONDS),
+                    sessionResolver.getLastLatency(TimeUnit.MILLISECONDS)));
+
+            List<SessionRoute> routes = sessionResolver.getRoutes();
+            if (routes.size() > 1) {
+                String routeLatencies = routes.stream()
+                        .map(route -> route.getName() + ' ' + route.getAverageLatency(TimeUnit.MILLISECONDS) + "ms")
+                        .collect(Collectors.joining(", "));
+                sendMessage(sender, String.format("Session routes: %s, hedging %s, %d hedged, %d hedge wins",
+                        routeLatencies, sessionResolver.isHedging() ? "on" : "off",
+                        sessionResolver.getHedgedRequests(), sessionResolver.getHedgeWins()));
+            }
+        }
+
+        BatchingMojangResolver batchingResolver = core.getBatchingResolver();
+        if (batchingResolver == null) {
+            sendMessage(sender, "Lookup batching: disabled");
+        } else {
+            sendMessage(sender, String.format("Lookup batching: %d requests for %d names, %d rate limited names",
+                    batchingResolver.getRequests(), batchingResolver.getBatchedNames(),
+                    batchingResolver.getRateLimitedNames()));
+        }
+
+        RequestBudget requestBudget = core.getRequestBudget();
+        if (requestBudget != null) {
+            sendMessage(sender, String.format("Request budget: %d/%d left, %d deferred lookups, %d rejected requests",
+                    requestBudget.getRemaining(), requestBudget.getCapacity(), requestBudget.getDeferredLookups(),
+                    requestBudget.getRejectedRequests()));
+        }
+
+        NameFilter nameFilter = core.getNameFilter();
+        if (nameFilter == null) {
+            sendMessage(sender, "Name filter: disabled");
+        } else if (!nameFilter.isReady()) {
+            sendMessage(sender, "Name filter: loading");
+        } else {
+            sendMessage(sender, String.format(Locale.ROOT, "Name filter: ~%d names, %d KiB, %d skipped lookups, "
+                            + "%d false positives (observed %.4f, expected %.4f)",
+                    nameFilter.getApproximateNames(), nameFilter.getMemoryUsage() / 1024,
+                    nameFilter.getSkippedLookups(), nameFilter.getFalsePositives(),
+                    nameFilter.getObservedFalsePositiveRate(), nameFilter.getExpectedFalsePositiveRate()));
+        }
+
+        SQLStorage sqlStorage = core.getSqlStorage();
+        if (sqlStorage == null) {
+            sendMessage(sender, "Compact format: disabled");
+        } else if (!sqlStorage.isCompactFormatMigrated()) {
+            sendMessage(sender, "Compact format: " + (core.isCompactFormatEnabled() ? "converting" : "disabled"));
+        } else {
+            String textColumns = sqlStorage.hasTextColumns() ? "" : ", text columns removed";
+            sendMessage(sender, "Compact format: converted" + textColumns);
+        }
+
+        AntiBotService antiBot = core.getAntiBot();
+        StringBuilder antiBotStatus = new StringBuilder("Anti-bot: ")
+                .append(antiBot.getGlobalRejections()).append(" rejected by the total limit");
+        for (AddressRateLimiter limiter : antiBot.getAddressLimiters()) {
+            antiBotStatus.append(", ").append(antiBot.getRejections(limiter.getScope()))
+                    .append(" rejected by the ").append(limiter.getScope().getName()).append(" limit (")
+                    .append(limiter.getTracked()).append(" tracked)");
+        }
+
+        AttackModeDetector attackMode = antiBot.getAttackMode();
+        if (attackMode != null) {
+            antiBotStatus.append(", attack mode ").append(attackMode.isActive() ? "on" : "off")
+                    .append(" (").append(attackMode.getConnections()).append(" recent connections, ")
+                    .append(attackMode.getActivations()).append(" activations, ")
+                    .append(attackMode.getSkippedLogins()).append(" skipped logins)");
+        }
+
+        CidrFilter cidrFilter = antiBot.getCidrFilter();
+        if (cidrFilter != null) {
+            antiBotStatus.append(", ").append(cidrFilter.getAllowed().getPrefixes()).append(" allowed and ")
+                    .append(cidrFilter.getBlocked().getPrefixes()).append(" blocked ranges (")
+                    .append(antiBot.getBlockedRangeRejections()).append(" rejected, ")
+                    .append(cidrFilter.getReloads()).append(" reloads)");
+        }
+
+        sendMessage(sender, antiBotStatus.toString());
+
+        AdmissionQueue admissionQueue = antiBot.getAdmissionQueue();
+        if (admissionQueue != null) {
+            sendMessage(sender, String.format(Locale.ROOT, "Login queue: %d/%d waiting, %d/%d running, "
+                            + "oldest %d ms, average wait %d ms, max wait %d ms, %d admitted, %d expired, %d rejected",
+                    admissionQueue.getDepth(), admissionQueue.getCapacity(), admissionQueue.getRunning(),
+                    admissionQueue.getMaxConcurrent(), admissionQueue.getOldestWait(TimeUnit.MILLISECONDS),
+                    admissionQueue.getAverageWait(TimeUnit.MILLISECONDS),
+                    admissionQueue.getMaxWait(TimeUnit.MILLISECONDS), admissionQueue.getAdmitted(),
+                    admissionQueue.getExpired(), admissionQueue.getRejected()));
+        }
+    }
+
+    private void sendCircuitBreaker(C sender, CircuitBreaker breaker) {
+        sendMessage(sender, String.format(Locale.ROOT, "Circuit breaker %s: %s, failure rate %.2f, %d trips, "
+                        + "%d rejected requests",
+                breaker.getName(), breaker.getState(), breaker.getFailureRate(), breaker.getTrips(),
+                breaker.getRejectedRequests()));
+    }
+
+    private void rebuildFilter(C sender) {
+        if (core.getNameFilter() == null) {
+            sendMessage(sender, "Name filter is disabled in the config");
+            return;
+        }
+
+        sendMessage(sender, "Rebuilding name filter...");
+        core.rebuildNameFilter().thenRun(() -> sendMessage(sender, "Name filter rebuild finished"));
+    }
+
+    private void resetCompactFormat(C sender) {
+        SQLStorage sqlStorage = core.getSqlStorage();
+        if (sqlStorage == null) {
+            sendMessage(sender, "Compact format is not used by the database");
+            return;
+        }
+
+        if (!sqlStorage.hasTextColumns()) {
+            sendMessage(sender, "Compact format conversion is already complete");
+            return;
+        }
+
+        sendMessage(sender, "Resetting compact format conversion...");
+        core.resetCompactFormat().thenRun(() -> sendMessage(sender, "Compact format conversion was reset"));
+    }
+
+    private void removeTextColumns(C sender) {
+        SQLStorage sqlStorage = core.getSqlStorage();
+        if (sqlStorage == null || !sqlStorage.isCompactFormatMigrated()) {
+            sendMessage(sender, "The conversion to the compact format isn't complete");
+            return;
+        }
+
+        if (!sqlStorage.hasTextColumns()) {
+            sendMessage(sender, "The text columns were already removed");
+            return;
+        }
+
+        sendMessage(sender, "Removing the text columns. Restart all other servers sharing this database afterwards...");
+        core.removeTextColumns().thenRun(() -> sendMessage(sender, "Text column removal finished. "
+                + "Check /fastloginadmin status for the result"));
+    }
+
+    private void invalidate(C sender, String name) {
+        CachingMojangResolver lookupCache = core.getLookupCache();
+        CachedStorage profileCache = core.getProfileCache();
+        if ("all".equalsIgnoreCase(name)) {
+            if (lookupCache != null) {
+                lookupCache.invalidateAll();
+            }
+
+            if (profileCache != null) {
+                profileCache.invalidateAll();
+            }
+
+            sendMessage(sender, "Cleared all cached lookups and profiles");
+            return;
+        }
+
+        if (lookupCache != null) {
+            lookupCache.invalidate(name);
+        }
+
+        if (profileCache != null) {
+            profileCache.invalidate(name);
+        }
+
+        sendMessage(sender, "Removed " + name + " from the caches");
+    }
+
+    private void sendMessage(C sender, String message) {
+        core.getPlugin().sendMessage(sender, message);
+    }
+}
@@ -25,20 +25,44 @@
  */
 package com.github.games647.fastlogin.core.shared;
 
+import com.github.games647.craftapi.model.Profile;
 import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
 import com.github.games647.craftapi.resolver.http.RotatingProxySelector;
 import com.github.games647.fastlogin.core.CommonUtil;
 import com.github.games647.fastlogin.core.ProxyAgnosticMojangResolver;
+import com.github.games647.fastlogin.core.antibot.AddressRateLimiter;
+import com.github.games647.fastlogin.core.antibot.AdmissionQueue;
+import com.github.games647.fastlogin.core.antibot.AddressRateLimiter.Scope;
 import com.github.games647.fastlogin.core.antibot.AntiBotService;
 import com.github.games647.fastlogin.core.antibot.AntiBotService.Action;
+import com.github.games647.fastlogin.core.antibot.AttackModeDetector;
+import com.github.games647.fastlogin.core.antibot.CidrFilter;
 import com.github.games647.fastlogin.core.antibot.RateLimiter;
-import com.github.games647.fastlogin.core.antibot.TickingRateLimiter;
+import com.github.games647.fastlogin.core.antibot.SlidingWindowRateLimiter;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.hooks.DefaultPasswordGenerator;
 import com.github.games647.fastlogin.core.hooks.PasswordGenerator;
+import com.github.games647.fastlogin.core.resolver.AsyncSessionResolver;
+import com.github.games647.fastlogin.core.resolver.BatchingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.BudgetedMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CachingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CircuitBreaker;
+import com.github.games647.fastlogin.core.resolver.CircuitBreakerMojangResolver;
+import com.github.games647.fastlogin.core.resolver.CoalescingMojangResolver;
+import com.github.games647.fastlogin.core.resolver.DeferredLookupException;
+import com.github.games647.fastlogin.core.resolver.LookupCacheFile;
+import com.github.games647.fastlogin.core.resolver.RequestBudget;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import com.github.games647.fastlogin.core.resolver.SessionRoute;
+import com.github.games647.fastlogin.core.storage.AuthStorage;
+import com.github.games647.fastlogin.core.storage.CachedStorage;
 import com.github.games647.fastlogin.core.storage.MySQLStorage;
+import com.github.games647.fastlogin.core.storage.NameFilter;
 import com.github.games647.fastlogin.core.storage.SQLStorage;
 import com.github.games647.fastlogin.core.storage.SQLiteStorage;
+import com.github.games647.fastlogin.core.storage.SaveJournal;
+import com.github.games647.fastlogin.core.storage.WriteBehindStorage;
 import com.google.common.base.Ticker;
 import com.zaxxer.hikari.HikariConfig;
 import net.md_5.bungee.config.Configuration;
@@ -50,19 +74,29 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.Proxy.Type;
+import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -85,7 +119,16 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     private MojangResolver resolver;
 
     private Configuration config;
-    private SQLStorage storage;
+    private AuthStorage storage;
+    private WriteBehindStorage writeBehind;
+    private CachedStorage profileCache;
+    private CachingMojangResolver lookupCache;
+    private CoalescingMojangResolver coalescingResolver;
+    private BatchingMojangResolver batchingResolver;
+    private AsyncSessionResolver sessionResolver;
+    private RequestBudget requestBudget;
+    private CircuitBreakerMojangResolver circuitBreakerResolver;
+    private SQLStorage sqlStorage;
     private AntiBotService antiBot;
     private PasswordGenerator<P> passwordGenerator = new DefaultPasswordGenerator<>();
     private AuthPlugin<P> authPlugin;
@@ -138,39 +181,223 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
             }
         }
 
+        setupResolverChain(proxies, addresses);
+    }
+
+    /**
+     * Wraps the base resolver with the optional stages. From the outside to the inside: lookup cache, coalescing,
+     * circuit breaker, batching, session client and the request budget.
+     */
+    private void setupResolverChain(Set<Proxy> proxies, Collection<InetAddress> addresses) {
+        // the resolver rotates over the local addresses and the proxies - each of them has its own limit
+        int routes = Math.max(1, addresses.size()) + proxies.size();
+
+        Configuration budgetSection = config.getSection("request-budget");
+        double criticalReserve = budgetSection.getInt("critical-reserve", 10) / 100.0;
+        double speculativeReserve = budgetSection.getInt("speculative-reserve", 40) / 100.0;
+        requestBudget = new RequestBudget(routes, config.getInt("mojang-request-limit"), criticalReserve,
+                speculativeReserve);
+        resolver = new BudgetedMojangResolver(resolver, requestBudget);
+
+        // the same proxies and addresses as the name lookups of the base resolver
+        List<SessionRoute> outgoingRoutes = new ArrayList<>();
+        if (addresses.isEmpty()) {
+            outgoingRoutes.add(SessionRoute.direct());
+        }
+
+        addresses.forEach(address -> outgoingRoutes.add(SessionRoute.ofLocalAddress(address)));
+        proxies.forEach(proxy -> outgoingRoutes.add(SessionRoute.ofProxy(proxy)));
+
+        Configuration sessionSection = config.getSection("session-client");
+        if (sessionSection.getBoolean("enabled", false)) {
+            String url = sessionSection.getString("url", AsyncSessionResolver.DEFAULT_URL);
+            boolean sendIp = !config.getBoolean("useProxyAgnosticResolver", false);
+            int threads = sessionSection.getInt("threads", 8);
+            int connectTimeout = sessionSection.getInt("connect-timeout", 3_000);
+            int readTimeout = sessionSection.getInt("read-timeout", 5_000);
+            sessionResolver = new AsyncSessionResolver(resolver, url, sendIp, threads, connectTimeout, readTimeout,
+                    plugin.getThreadFactory());
+
+            // ranked by their latency
+            sessionResolver.setRoutes(outgoingRoutes);
+
+            Configuration hedgingSection = sessionSection.getSection("hedging");
+            if (hedgingSection.getBoolean("enabled", false)) {
+                double percentile = hedgingSection.getDouble("percentile", 90);
+                long minDelay = hedgingSection.getLong("min-delay", 100);
+                sessionResolver.enableHedging(percentile, minDelay);
+            }
+
+            long warmUpInterval = sessionSection.getLong("warm-up-interval", 20);
+            if (warmUpInterval > 0) {
+                sessionResolver.scheduleWarmUp(warmUpInterval);
+            }
+
+            resolver = sessionResolver;
+        }
+
+        Configuration batchingSection = config.getSection("lookup-batching");
+        if (batchingSection.getBoolean("enabled", false)) {
+            String url = batchingSection.getString("url", BatchingMojangResolver.DEFAULT_URL);
+            try {
+                long window = batchingSection.getLong("window", 30);
+                batchingResolver = new BatchingMojangResolver(resolver, new URL(url), window, requestBudget,
+                        plugin.getThreadFactory());
+                batchingResolver.setRoutes(outgoingRoutes);
+                resolver = batchingResolver;
+            } catch (MalformedURLException urlEx) {
+                plugin.getLog().error("Invalid bulk lookup URL {} - batching is disabled", url, urlEx);
+            }
+        }
+
         resolver.setMaxNameRequests(config.getInt("mojang-request-limit"));
         resolver.setProxySelector(new RotatingProxySelector(proxies));
         resolver.setOutgoingAddresses(addresses);
+
+        Configuration breakerSection = config.getSection("circuit-breaker");
+        if (breakerSection.getBoolean("enabled", false)) {
+            CircuitBreaker lookupBreaker = createCircuitBreaker("Mojang API", breakerSection);
+            CircuitBreaker sessionBreaker = createCircuitBreaker("session server", breakerSection);
+            int maxStaleProfiles = breakerSection.getInt("max-stale-profiles", 10_000);
+            long staleExpire = breakerSection.getLong("stale-profile-expire", 7);
+            circuitBreakerResolver = new CircuitBreakerMojangResolver(resolver, lookupBreaker, sessionBreaker,
+                    maxStaleProfiles, staleExpire);
+            resolver = circuitBreakerResolver;
+            if (sessionResolver != null) {
+                sessionResolver.setCircuitBreaker(sessionBreaker);
+            }
+        }
+
+        // the cache is in front of it, so only misses are coalesced
+        coalescingResolver = new CoalescingMojangResolver(resolver);
+        resolver = coalescingResolver;
+
+        Configuration lookupCacheSection = config.getSection("lookup-cache");
+        if (lookupCacheSection.getBoolean("enabled", false)) {
+            int maxSize = lookupCacheSection.getInt("max-size", 10_000);
+            long premiumExpire = lookupCacheSection.getLong("premium-expire", 60);
+            long unknownExpire = lookupCacheSection.getLong("unknown-expire", 10);
+            lookupCache = new CachingMojangResolver(resolver, maxSize, premiumExpire, unknownExpire, TimeUnit.MINUTES);
+            resolver = lookupCache;
+
+            if (lookupCacheSection.getBoolean("persist", false)) {
+                Path cacheFile = plugin.getPluginFolder().resolve("lookup-cache.dat");
+                lookupCache.setCacheFile(new LookupCacheFile(plugin.getLog(), cacheFile, plugin.getThreadFactory(),
+                        maxSize));
+            }
+
+            Configuration refreshSection = lookupCacheSection.getSection("refresh-ahead");
+            if (refreshSection.getBoolean("enabled", false)) {
+                int minAccesses = refreshSection.getInt("min-accesses", 3);
+                double window = refreshSection.getInt("window", 20) / 100.0;
+                int maxRefreshes = refreshSection.getInt("max-per-run", 20);
+                long interval = refreshSection.getLong("interval", 30);
+                lookupCache.enableRefreshAhead(requestBudget, minAccesses, window, maxRefreshes, interval,
+                        plugin.getThreadFactory());
+            }
+        }
+    }
+
+    private CircuitBreaker createCircuitBreaker(String name, Configuration section) {
+        int window = section.getInt("window", 20);
+        int minimumRequests = section.getInt("minimum-requests", 10);
+        double failureRate = section.getInt("failure-rate", 50) / 100.0;
+        long slowRequestDuration = section.getLong("slow-request-duration", 3_000);
+        long openDuration = section.getLong("open-duration", 30) * 1_000;
+        return new CircuitBreaker(plugin.getLog(), name, window, minimumRequests, failureRate, slowRequestDuration,
+                openDuration, TimeUnit.MILLISECONDS);
     }
 
     private AntiBotService createAntiBotService(Configuration botSection) {
         RateLimiter rateLimiter;
         if (botSection.getBoolean("enabled", true)) {
-            int maxCon = botSection.getInt("connections", 200);
+            int maxCon = Math.min(botSection.getInt("connections", 200), SlidingWindowRateLimiter.MAX_LIMIT);
             long expireTime = botSection.getLong("expire", 5) * 60 * 1_000L;
             if (expireTime > MAX_EXPIRE_RATE) {
                 expireTime = MAX_EXPIRE_RATE;
             }
 
-            rateLimiter = new TickingRateLimiter(Ticker.systemTicker(), maxCon, expireTime);
+            // at least a millisecond, because the limiter needs a window
+            expireTime = Math.max(1, expireTime);
+
+            rateLimiter = new SlidingWindowRateLimiter(Ticker.systemTicker(), maxCon, expireTime);
         } else {
             // no-op rate limiter
             rateLimiter = () -> true;
         }
 
-        Action action = Action.Ignore;
-        switch (botSection.getString("action", "ignore")) {
+        Action action = parseAntiBotAction(botSection.getString("action", "ignore"));
+        AntiBotService antiBotService = new AntiBotService(plugin.getLog(), rateLimiter, action);
+        if (botSection.getBoolean("enabled", true)) {
+            if (action == Action.Queue) {
+                Configuration queueSection = botSection.getSection("queue");
+                int capacity = Math.max(1, queueSection.getInt("capacity", 200));
+                int maxConcurrent = Math.max(1, queueSection.getInt("max-concurrent", 4));
+                long maxWait = Math.max(1, queueSection.getLong("max-wait", 10));
+                Executor executor = task -> plugin.getScheduler().runAsync(task);
+                antiBotService.setAdmissionQueue(new AdmissionQueue(plugin.getLog(), Ticker.systemTicker(), executor,
+                        capacity, maxConcurrent, maxWait, TimeUnit.SECONDS, plugin.getThreadFactory()));
+            }
+
+            int maxTracked = botSection.getInt("max-tracked", 16_384);
+            addAddressLimit(antiBotService, Scope.ADDRESS, botSection.getSection("per-address"), maxTracked);
+            addAddressLimit(antiBotService, Scope.SUBNET, botSection.getSection("per-subnet"), maxTracked);
+
+            Configuration attackSection = botSection.getSection("attack-mode");
+            if (attackSection.getBoolean("enabled", false)) {
+                long window = Math.max(1, attackSection.getLong("window", 10));
+                int enterConnections = attackSection.getInt("enter-connections", 100);
+                int exitConnections = Math.min(enterConnections, attackSection.getInt("exit-connections", 30));
+                long cooldown = attackSection.getLong("cooldown", 60);
+                boolean kick = "kick".equals(attackSection.getString("unknown-names", "cracked"));
+                antiBotService.setAttackMode(new AttackModeDetector(plugin.getLog(), Ticker.systemTicker(), window,
+                        enterConnections, exitConnections, cooldown, kick));
+            }
+
+            Configuration listSection = botSection.getSection("address-lists");
+            if (listSection.getBoolean("enabled", false)) {
+                Path folder = plugin.getPluginFolder();
+                CidrFilter cidrFilter = new CidrFilter(plugin.getLog(),
+                        folder.resolve(listSection.getString("allowlist", "allowlist.txt")),
+                        folder.resolve(listSection.getString("blocklist", "blocklist.txt")));
+                cidrFilter.load();
+                if (listSection.getBoolean("watch", true)) {
+                    cidrFilter.startWatching(plugin.getThreadFactory());
+                }
+
+                Action listAction = parseAntiBotAction(listSection.getString("action", "block"));
+                antiBotService.setCidrFilter(cidrFilter, listAction);
+            }
+        }
+
+        return antiBotService;
+    }
+
+    private void addAddressLimit(AntiBotService antiBotService, Scope scope, Configuration section, int maxTracked) {
+        int connections = section.getInt("connections", 0);
+        if (connections <= 0) {
+            return;
+        }
+
+        long expireTime = Math.max(1, section.getLong("expire", 1) * 60 * 1_000L);
+        Action action = parseAntiBotAction(section.getString("action", "block"));
+        AddressRateLimiter limiter = new AddressRateLimiter(Ticker.systemTicker(), scope, connections, expireTime,
+                maxTracked);
+        antiBotService.addAddressLimit(limiter, action);
+    }
+
+    private Action parseAntiBotAction(String action) {
+        switch (action) {
             case "ignore":
-                action = Action.Ignore;
-                break;
+                return Action.Ignore;
             case "block":
-                action = Action.Block;
-                break;
+                return Action.Block;
+            case "queue":
+                return Action.Queue;
             default:
                 plugin.getLog().warn("Invalid anti bot action - defaulting to ignore");
+                return Action.Ignore;
         }
-
-        return new AntiBotService(plugin.getLog(), rateLimiter, action);
     }
 
     private Configuration loadFile(String fileName) throws IOException {
@@ -200,10 +427,190 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         return resolver;
     }
 
-    public SQLStorage getStorage() {
+    public AuthStorage getStorage() {
         return storage;
     }
 
+    /**
+     * @return write-behind layer of the storage or null if disabled
+     */
+    public WriteBehindStorage getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * @return profile cache in front of the storage or null if disabled
+     */
+    public CachedStorage getProfileCache() {
+        return profileCache;
+    }
+
+    /**
+     * @return cache of name to premium profile lookups or null if disabled
+     */
+    public CachingMojangResolver getLookupCache() {
+        return lookupCache;
+    }
+
+    public CoalescingMojangResolver getCoalescingResolver() {
+        return coalescingResolver;
+    }
+
+    /**
+     * @return resolver combining name lookups into bulk requests or null if disabled
+     */
+    public BatchingMojangResolver getBatchingResolver() {
+        return batchingResolver;
+    }
+
+    /**
+     * @return session server client with an asynchronous API or null if disabled
+     */
+    public AsyncSessionResolver getSessionResolver() {
+        return sessionResolver;
+    }
+
+    public RequestBudget getRequestBudget() {
+        return requestBudget;
+    }
+
+    /**
+     * @return resolver protecting the Mojang services with circuit breakers or null if disabled
+     */
+    public CircuitBreakerMojangResolver getCircuitBreakerResolver() {
+        return circuitBreakerResolver;
+    }
+
+    /**
+     * Looks up the premium profile of this name unless the request budget is too low for lookups of this priority.
+     * The budget is only checked if a request to Mojang is necessary, so cached results are always returned.
+     *
+     * @param username player name
+     * @param priority importance of this lookup
+     * @return the premium profile or empty if there is none or the lookup was deferred
+     * @throws IOException if the lookup failed
+     * @throws RateLimitException if the hard limit of the Mojang API is reached
+     */
+    public Optional<Profile> findProfile(String username, Priority priority) throws IOException, RateLimitException {
+        try {
+            return RequestBudget.withPriority(priority, () -> resolver.findProfile(username));
+        } catch (DeferredLookupException deferredEx) {
+            plugin.getLog().info("Deferred {} premium lookup of {} to keep the Mojang request quota for more "
+                    + "important lookups", priority.name().toLowerCase(Locale.ROOT), username);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return database storage without the optional caching layers or null if the setup failed
+     */
+    public SQLStorage getSqlStorage() {
+        return sqlStorage;
+    }
+
+    /**
+     * @return filter of names stored in the database or null if disabled
+     */
+    public NameFilter getNameFilter() {
+        return sqlStorage == null ? null : sqlStorage.getNameFilter();
+    }
+
+    /**
+     * Converts the remaining profiles to the compact format in the background if the conversion isn't complete.
+     */
+    private void convertCompactFormat() {
+        if (sqlStorage.isCompactFormatMigrated()) {
+            return;
+        }
+
+        Configuration compactSection = config.getSection("compact-format");
+        int chunkSize = compactSection.getInt("chunk-size", 1_000);
+        long pause = compactSection.getLong("pause", 100);
+        plugin.getScheduler().runAsync(() -> {
+            try {
+                sqlStorage.migrateCompactFormat(chunkSize, pause);
+            } catch (SQLException sqlEx) {
+                plugin.getLog().error("Failed to convert profiles to the compact format. "
+                        + "The conversion continues on the next start", sqlEx);
+            }
+        });
+    }
+
+    /**
+     * Starts the conversion to the compact format again from the first row.
+     *
+     * @return future that completes after the progress was reset
+     */
+    public CompletableFuture<Void> resetCompactFormat() {
+        return plugin.getScheduler().runAsync(() -> {
+            try {
+                sqlStorage.resetCompactFormat();
+                plugin.getLog().info("Reset the conversion to the compact format");
+                if (isCompactFormatEnabled()) {
+                    convertCompactFormat();
+                }
+            } catch (SQLException sqlEx) {
+                plugin.getLog().error("Failed to reset the compact format conversion", sqlEx);
+            }
+        });
+    }
+
+    /**
+     * Removes the text columns after the conversion to the compact format is complete.
+     *
+     * @return future that completes after the columns were removed or the removal failed
+     */
+    public CompletableFuture<Void> removeTextColumns() {
+        return plugin.getScheduler().runAsync(() -> {
+            try {
+                if (!sqlStorage.removeTextColumns()) {
+                    plugin.getLog().warn("The database cannot remove columns. The text columns are kept");
+                }
+            } catch (SQLException sqlEx) {
+                plugin.getLog().error("Failed to remove the text columns of the compact format", sqlEx);
+            }
+        });
+    }
+
+    /**
+     * @return true if the profiles should be converted to the compact format
+     */
+    public boolean isCompactFormatEnabled() {
+        return sqlStorage != null && config.getSection("compact-format").getBoolean("enabled", false);
+    }
+
+    /**
+     * Reads all stored names into a new name filter in the background.
+     *
+     * @return future that completes after the filter was replaced
+     */
+    public CompletableFuture<Void> rebuildNameFilter() {
+        NameFilter filter = getNameFilter();
+        if (filter == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return plugin.getScheduler().runAsync(() -> {
+            try {
+                long start = System.nanoTime();
+                sqlStorage.rebuildNameFilter();
+
+                long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                plugin.getLog().info("Loaded {} names into the name filter in {}ms using {} bytes",
+                        filter.getApproximateNames(), duration, filter.getMemoryUsage());
+            } catch (SQLException sqlEx) {
+                plugin.getLog().error("Failed to build name filter", sqlEx);
+            }
+        });
+    }
+
+    /**
+     * @return journal for saves during database outages or null if disabled
+     */
+    public SaveJournal getSaveJournal() {
+        return sqlStorage == null ? null : sqlStorage.getSaveJournal();
+    }
+
     public T getPlugin() {
         return plugin;
     }
@@ -229,7 +636,10 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         databaseConfig.setMaxLifetime(config.getInt("lifetime", 30) * 1_000L);
 
         if (type.contains("sqlite")) {
-            storage = new SQLiteStorage(plugin, database, databaseConfig);
+            Configuration sqliteSection = config.getSection("sqlite");
+            boolean wal = sqliteSection.getBoolean("wal", false);
+            int readConnections = sqliteSection.getInt("read-connections", 4);
+            sqlStorage = new SQLiteStorage(plugin, database, databaseConfig, wal, readConnections);
         } else {
             String host = config.get("host", "");
             int port = config.get("port", 3306);
@@ -247,16 +657,72 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
 
             databaseConfig.setUsername(config.get("username", ""));
             databaseConfig.setPassword(config.getString("password"));
-            storage = new MySQLStorage(plugin, type, host, port, database, databaseConfig, useSSL);
+            Configuration replicaSection = config.getSection("read-replicas");
+            List<String> replicaHosts = replicaSection.getStringList("hosts");
+            long healthCheckInterval = replicaSection.getLong("health-check-interval", 5);
+            long readYourWrites = replicaSection.getLong("read-your-writes", 10);
+            sqlStorage = new MySQLStorage(plugin, type, host, port, database, databaseConfig, useSSL,
+                    replicaHosts, healthCheckInterval, readYourWrites);
         }
 
+        storage = sqlStorage;
         try {
-            storage.createTables();
-            return true;
+            sqlStorage.createTables();
+            sqlStorage.loadCompactFormat();
         } catch (Exception ex) {
             plugin.getLog().warn("Failed to setup database. Disabling plugin...", ex);
             return false;
         }
+
+        if (isCompactFormatEnabled()) {
+            convertCompactFormat();
+        }
+
+        Configuration journalSection = config.getSection("save-journal");
+        if (journalSection.getBoolean("enabled", false)) {
+            long maxSize = journalSection.getLong("max-size", 10_240) * 1_024;
+            long syncInterval = journalSection.getLong("sync-interval", 200);
+            long replayInterval = journalSection.getLong("replay-interval", 5);
+
+            Path journalFile = plugin.getPluginFolder().resolve("save-journal.dat");
+            SaveJournal journal = new SaveJournal(plugin.getLog(), journalFile, maxSize, plugin.getThreadFactory(),
+                    syncInterval);
+            try {
+                journal.open();
+                sqlStorage.setSaveJournal(journal);
+                journal.scheduleReplay(sqlStorage::replayJournal, replayInterval);
+            } catch (IOException ioEx) {
+                plugin.getLog().error("Failed to open save journal {}", journalFile, ioEx);
+                journal.close();
+            }
+        }
+
+        Configuration filterSection = config.getSection("name-filter");
+        if (filterSection.getBoolean("enabled", false)) {
+            double falsePositiveRate = filterSection.getDouble("false-positive-rate", 0.01);
+            sqlStorage.setNameFilter(new NameFilter(falsePositiveRate));
+            // lookups pass through to the database until the filter is filled
+            rebuildNameFilter();
+        }
+
+        Configuration writeBehindSection = config.getSection("write-behind");
+        if (writeBehindSection.getBoolean("enabled", false)) {
+            long interval = writeBehindSection.getLong("interval", 1_000);
+            int batchSize = writeBehindSection.getInt("batch-size", 100);
+            writeBehind = new WriteBehindStorage(plugin.getLog(), sqlStorage, plugin.getThreadFactory(),
+                    interval, batchSize);
+            storage = writeBehind;
+        }
+
+        Configuration cacheSection = config.getSection("profile-cache");
+        if (cacheSection.getBoolean("enabled", false)) {
+            int maxSize = cacheSection.getInt("max-size", 1_000);
+            long expire = cacheSection.getLong("expire", 300);
+            profileCache = new CachedStorage(storage, maxSize, expire, TimeUnit.SECONDS);
+            storage = profileCache;
+        }
+
+        return true;
     }
 
     public Configuration getConfig() {
@@ -312,6 +778,26 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     public void close() {
         plugin.getLog().info("Safely shutting down scheduler. This could take up to one minute.");
 
+        if (batchingResolver != null) {
+            batchingResolver.close();
+        }
+
+        if (sessionResolver != null) {
+            sessionResolver.close();
+        }
+
+        if (lookupCache != null) {
+            lookupCache.close();
+        }
+
+        if (antiBot != null && antiBot.getCidrFilter() != null) {
+            antiBot.getCidrFilter().close();
+        }
+
+        if (antiBot != null && antiBot.getAdmissionQueue() != null) {
+            antiBot.getAdmissionQueue().close();
+        }
+
         if (storage != null) {
             storage.close();
         }
@@ -28,6 +28,7 @@ package com.github.games647.fastlogin.core.shared;
 import com.github.games647.craftapi.model.Profile;
 import com.github.games647.craftapi.resolver.RateLimitException;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
 import com.github.games647.fastlogin.core.storage.StoredProfile;
 import org.geysermc.floodgate.api.player.FloodgatePlayer;
 
@@ -140,7 +141,7 @@ public abstract class FloodgateManagement<P extends C, C, L extends LoginSession
             // check for conflicting Premium Java name
             Optional<Profile> premiumUUID;
             try {
-                premiumUUID = core.getResolver().findProfile(username);
+                premiumUUID = core.findProfile(username, Priority.CRITICAL);
             } catch (IOException | RateLimitException e) {
                 core.getPlugin().getLog().error(
                         "Could not check whether Floodgate Player {}'s name conflicts a premium Java account's name.",
@@ -27,7 +27,6 @@ package com.github.games647.fastlogin.core.shared;
 
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.shared.event.FastLoginAutoLoginEvent;
-import com.github.games647.fastlogin.core.storage.SQLStorage;
 import com.github.games647.fastlogin.core.storage.StoredProfile;
 
 public abstract class ForceLoginManagement<P extends C, C, L extends LoginSession, T extends PlatformPlugin<C>>
@@ -55,7 +54,6 @@ public abstract class ForceLoginManagement<P extends C, C, L extends LoginSessio
             return;
         }
 
-        SQLStorage storage = core.getStorage();
         StoredProfile playerProfile = session.getProfile();
         try {
             if (isOnlineMode()) {
@@ -82,7 +80,7 @@ public abstract class ForceLoginManagement<P extends C, C, L extends LoginSessio
                         if (playerProfile != null) {
                             playerProfile.setId(session.getUuid());
                             playerProfile.setPremium(true);
-                            storage.save(playerProfile);
+                            save(playerProfile);
                         }
 
                         onForceActionSuccess(session);
@@ -92,13 +90,21 @@ public abstract class ForceLoginManagement<P extends C, C, L extends LoginSessio
                 //cracked player
                 playerProfile.setId(null);
                 playerProfile.setPremium(false);
-                storage.save(playerProfile);
+                save(playerProfile);
             }
         } catch (Exception ex) {
             core.getPlugin().getLog().warn("ERROR ON FORCE LOGIN of {}", getName(player), ex);
         }
     }
 
+    private void save(StoredProfile playerProfile) {
+        // the login doesn't depend on the write, so don't hold up this thread
+        core.getStorage().saveAsync(playerProfile).exceptionally(error -> {
+            core.getPlugin().getLog().error("Failed to save profile of {}", playerProfile.getName(), error);
+            return null;
+        });
+    }
+
     public boolean forceRegister(P player) {
         core.getPlugin().getLog().info("Register player {}", getName(player));
 
@@ -29,7 +29,10 @@ import com.github.games647.craftapi.model.Profile;
 import com.github.games647.craftapi.resolver.RateLimitException;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.hooks.bedrock.BedrockService;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
+import com.github.games647.fastlogin.core.storage.CachedStorage;
+import com.github.games647.fastlogin.core.storage.NameFilter;
 import com.github.games647.fastlogin.core.storage.StoredProfile;
 import net.md_5.bungee.config.Configuration;
 
@@ -58,6 +61,17 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
             }
         }
 
+        // during a flood, bot names shouldn't cause any database or Mojang requests
+        boolean attackMode = core.getAntiBot().isAttackMode();
+        if (attackMode && isUnknownName(username)) {
+            StoredProfile newProfile = new StoredProfile(null, username, false, FloodgateState.FALSE, "");
+            newProfile.setLastIp(source.getAddress().getAddress().getHostAddress());
+            // listeners still see every login, only the lookups are skipped
+            callFastLoginPreLoginEvent(username, source, newProfile);
+            skipDuringAttack(source, newProfile, username);
+            return;
+        }
+
         StoredProfile profile = core.getStorage().loadProfile(username);
 
         //can't be a premium Java player, if it's not saved in the database
@@ -102,9 +116,17 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
                     return;
                 }
 
+                if (attackMode) {
+                    skipDuringAttack(source, profile, username);
+                    return;
+                }
+
                 Optional<Profile> premiumUUID = Optional.empty();
-                if (config.get("nameChangeCheck", false) || config.get("autoRegister", false)) {
-                    premiumUUID = core.getResolver().findProfile(username);
+                if (config.get("autoRegister", false)) {
+                    premiumUUID = core.findProfile(username, Priority.NORMAL);
+                } else if (config.get("nameChangeCheck", false)) {
+                    // name changes are rare, so this lookup is deferred first
+                    premiumUUID = core.findProfile(username, Priority.SPECULATIVE);
                 }
 
                 if (!premiumUUID.isPresent()
@@ -129,6 +151,38 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
         }
     }
 
+    private boolean isUnknownName(String username) {
+        CachedStorage profileCache = core.getProfileCache();
+        if (profileCache != null && profileCache.isCached(username)) {
+            return false;
+        }
+
+        // without the filter only the database knows if the name is stored
+        NameFilter nameFilter = core.getNameFilter();
+        return nameFilter != null && nameFilter.isReady() && !nameFilter.mightContain(username);
+    }
+
+    private void skipDuringAttack(S source, StoredProfile profile, String username) {
+        core.getAntiBot().getAttackMode().recordSkippedLogin();
+
+        String kickMessage;
+        if (core.getAntiBot().getAttackMode().isKickUnknownNames()) {
+            kickMessage = core.getMessage("kick-antibot");
+        } else if (core.getConfig().get("switchMode", false)) {
+            // like the regular path for names that aren't detected as premium
+            kickMessage = core.getMessage("switch-kick-message");
+        } else {
+            startCrackedSession(source, profile, username);
+            return;
+        }
+
+        try {
+            source.kick(kickMessage);
+        } catch (Exception ex) {
+            core.getPlugin().getLog().error("Failed to kick {}", username, ex);
+        }
+    }
+
     protected boolean isValidUsername(LoginSource source, StoredProfile profile) throws Exception {
         if (bedrockService != null && bedrockService.isUsernameForbidden(profile)) {
             core.getPlugin().getLog().info("Floodgate Prefix detected on cracked player");
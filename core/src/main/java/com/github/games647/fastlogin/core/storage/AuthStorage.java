@@ -26,6 +26,8 @@
 package com.github.games647.fastlogin.core.storage;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface AuthStorage {
     StoredProfile loadProfile(String name);
@@ -34,5 +36,45 @@ public interface AuthStorage {
 
     void save(StoredProfile playerProfile);
 
+    /**
+     * @return executor for the blocking operations of this storage. Database storages bound it by the number of
+     * connections and reject new tasks if too many are waiting. The default runs the operations on the calling
+     * thread.
+     */
+    default Executor getExecutor() {
+        return Runnable::run;
+    }
+
+    /**
+     * Loads the profile on the storage executor, so the calling thread never waits for the database.
+     *
+     * @param name player name
+     * @return future completed with the profile or null if the lookup failed
+     */
+    default CompletableFuture<StoredProfile> loadProfileAsync(String name) {
+        return StorageExecutors.supplyAsync(() -> loadProfile(name), getExecutor());
+    }
+
+    /**
+     * @param uuid premium UUID
+     * @return future completed with the profile or null if the lookup failed
+     * @see #loadProfileAsync(String)
+     */
+    default CompletableFuture<StoredProfile> loadProfileAsync(UUID uuid) {
+        return StorageExecutors.supplyAsync(() -> loadProfile(uuid), getExecutor());
+    }
+
+    /**
+     * Saves the profile without blocking the calling thread. Database storages queue saves separately from the
+     * lookups and without a limit, so an overloaded database delays changes instead of dropping them.
+     *
+     * @param playerProfile profile to save
+     * @return future completed after the profile was written. Database storages complete it exceptionally if the
+     * profile couldn't be written.
+     */
+    default CompletableFuture<Void> saveAsync(StoredProfile playerProfile) {
+        return StorageExecutors.runAsync(() -> save(playerProfile), getExecutor());
+    }
+
     void close();
 }
@@ -0,0 +1,238 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache for stored profiles. Profiles are indexed by their name and their UUID. Saved profiles replace
+ * the cached entries, so the cache always contains the most recent version known to this server.
+ * <p>
+ * Only profiles that exist in the database are cached. Lookups for unknown names are always delegated. The cache
+ * holds its own copies and returns a new copy on every hit, so changes that were never saved don't leak to other
+ * callers.
+ */
+public class CachedStorage implements AuthStorage {
+
+    private final AuthStorage delegate;
+
+    private final Cache<String, StoredProfile> byName;
+    private final Cache<UUID, StoredProfile> byId;
+
+    public CachedStorage(AuthStorage delegate, int maxSize, long expireAfterWrite, TimeUnit unit) {
+        this.delegate = delegate;
+
+        this.byName = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite, unit)
+                .recordStats()
+                .build();
+        this.byId = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite, unit)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        StoredProfile cached = getCached(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        StoredProfile profile = delegate.loadProfile(name);
+        if (profile != null && profile.isSaved()) {
+            put(profile);
+        }
+
+        return profile;
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        StoredProfile cached = getCached(uuid);
+        if (cached != null) {
+            return cached;
+        }
+
+        StoredProfile profile = delegate.loadProfile(uuid);
+        if (profile != null && profile.isSaved()) {
+            put(profile);
+        }
+
+        return profile;
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        // failures are only logged, so the next lookup has to read what is actually stored
+        invalidate(playerProfile);
+        delegate.save(playerProfile);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return delegate.getExecutor();
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(StoredProfile playerProfile) {
+        // the delegate could queue saves separately from the lookups. Only successful writes are cached.
+        invalidate(playerProfile);
+        return delegate.saveAsync(playerProfile).thenRun(() -> {
+            if (playerProfile.isSaved()) {
+                put(playerProfile);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<StoredProfile> loadProfileAsync(String name) {
+        // complete hits directly without a detour over the database executor
+        StoredProfile cached = getCached(name);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return AuthStorage.super.loadProfileAsync(name);
+    }
+
+    @Override
+    public CompletableFuture<StoredProfile> loadProfileAsync(UUID uuid) {
+        StoredProfile cached = getCached(uuid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return AuthStorage.super.loadProfileAsync(uuid);
+    }
+
+    private StoredProfile getCached(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        StoredProfile cached = byName.getIfPresent(key);
+        if (cached != null) {
+            if (key.equals(cached.getName().toLowerCase(Locale.ROOT))) {
+                return cached.copy();
+            }
+
+            // the player changed the name in the meantime
+            byName.invalidate(key);
+        }
+
+        return null;
+    }
+
+    private StoredProfile getCached(UUID uuid) {
+        StoredProfile cached = byId.getIfPresent(uuid);
+        if (cached != null) {
+            if (uuid.equals(cached.getId())) {
+                return cached.copy();
+            }
+
+            // premium status was removed in the meantime
+            byId.invalidate(uuid);
+        }
+
+        return null;
+    }
+
+    private void put(StoredProfile profile) {
+        // the caller keeps changing its instance
+        StoredProfile copy = profile.copy();
+        byName.put(copy.getName().toLowerCase(Locale.ROOT), copy);
+
+        UUID id = copy.getId();
+        if (id != null) {
+            byId.put(id, copy);
+        }
+    }
+
+    private void invalidate(StoredProfile profile) {
+        invalidate(profile.getName());
+
+        // the UUID entry could belong to an older name of the player
+        UUID id = profile.getId();
+        if (id != null) {
+            byId.invalidate(id);
+        }
+    }
+
+    /**
+     * Removes the profile with the given name from the cache. The next lookup will query the database again.
+     *
+     * @param name player name
+     */
+    public void invalidate(String name) {
+        StoredProfile removed = byName.asMap().remove(name.toLowerCase(Locale.ROOT));
+        if (removed != null && removed.getId() != null) {
+            byId.invalidate(removed.getId());
+        }
+    }
+
+    public void invalidateAll() {
+        byName.invalidateAll();
+        byId.invalidateAll();
+    }
+
+    /**
+     * @param name player name
+     * @return true if the profile for this name is currently cached
+     */
+    public boolean isCached(String name) {
+        // doesn't count as cache request
+        return byName.asMap().containsKey(name.toLowerCase(Locale.ROOT));
+    }
+
+    public long getSize() {
+        return byName.size();
+    }
+
+    public long getHitCount() {
+        return byName.stats().hitCount() + byId.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return byName.stats().missCount() + byId.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return byName.stats().evictionCount() + byId.stats().evictionCount();
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+        delegate.close();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.net.InetAddresses;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Conversions for the compact binary columns. UUIDs are stored as 16 big endian bytes. This matches the result of
+ * {@code UNHEX} on the hex representation. IP addresses use their network byte order with 4 bytes for IPv4 and 16
+ * bytes for IPv6 like {@code INET6_ATON}.
+ */
+public final class CompactFormat {
+
+    private static final int UUID_LENGTH = 16;
+
+    private CompactFormat() {
+        // Utility class
+    }
+
+    public static byte[] toBytes(UUID uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        return ByteBuffer.allocate(UUID_LENGTH)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID toUUID(byte[] bytes) {
+        if (bytes == null || bytes.length != UUID_LENGTH) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * @param ip textual IP address
+     * @return address bytes or null if the input is empty or not an IP literal
+     */
+    public static byte[] ipToBytes(String ip) {
+        // doesn't perform DNS lookups unlike InetAddress.getByName
+        if (ip == null || !InetAddresses.isInetAddress(ip)) {
+            return null;
+        }
+
+        return InetAddresses.forString(ip).getAddress();
+    }
+
+    /**
+     * @param bytes address bytes in network byte order
+     * @return textual IP address or null if the input isn't a valid address
+     */
+    public static String bytesToIp(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            return InetAddresses.toAddrString(InetAddress.getByAddress(bytes));
+        } catch (UnknownHostException unknownHostException) {
+            // invalid length
+            return null;
+        }
+    }
+}
@@ -26,9 +26,22 @@
 package com.github.games647.fastlogin.core.storage;
 
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MySQLStorage extends SQLStorage {
 
@@ -36,10 +49,168 @@ public class MySQLStorage extends SQLStorage {
     private static final String MYSQL_DRIVER = "com.mysql.cj.jdbc.Driver";
     private static final String MARIADB_DRIVER = "fastlogin.mariadb.jdbc.Driver";
 
+    // fail over quickly to the next replica or the primary instead of waiting for the default timeout
+    private static final long REPLICA_CONNECTION_TIMEOUT = 2_000;
+    private static final int REPLICA_VALIDATION_TIMEOUT = 2;
+
+    private final MySQLVariant variant;
+
+    private final List<Replica> replicas;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService healthCheckExecutor;
+
+    // profiles that are read from the primary, because the replicas could lag behind
+    private final Cache<Object, Boolean> recentlyWritten;
+
     public MySQLStorage(PlatformPlugin<?> plugin, String driver, String host, int port, String database,
                         HikariConfig config, boolean useSSL) {
+        this(plugin, driver, host, port, database, config, useSSL, Collections.emptyList(), 0, 0);
+    }
+
+    /**
+     * @param replicaHosts read replicas in the format host[:port]
+     * @param healthCheckInterval seconds between checks of the replicas
+     * @param readYourWrites seconds a saved profile is read from the primary
+     */
+    public MySQLStorage(PlatformPlugin<?> plugin, String driver, String host, int port, String database,
+                        HikariConfig config, boolean useSSL,
+                        Collection<String> replicaHosts, long healthCheckInterval, long readYourWrites) {
         super(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
                 setParams(config, driver, host, port, database, useSSL));
+        this.variant = MySQLVariant.fromDriver(driver);
+
+        this.replicas = new ArrayList<>();
+        for (String replicaHost : replicaHosts) {
+            String[] parts = replicaHost.trim().split(":");
+            int replicaPort = parts.length > 1 ? Integer.parseInt(parts[1]) : port;
+
+            HikariConfig replicaConfig = new HikariConfig();
+            config.copyStateTo(replicaConfig);
+            replicaConfig.setJdbcUrl(JDBC_PROTOCOL + buildJDBCUrl(driver, parts[0], replicaPort, database));
+            replicaConfig.setPoolName(plugin.getName() + "-Replica-" + replicas.size());
+            replicaConfig.setReadOnly(true);
+            replicaConfig.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT);
+            // an unavailable replica shouldn't prevent the startup
+            replicaConfig.setInitializationFailTimeout(-1);
+
+            replicas.add(new Replica(replicaHost, new HikariDataSource(replicaConfig)));
+        }
+
+        this.recentlyWritten = CacheBuilder.newBuilder()
+                .expireAfterWrite(Math.max(readYourWrites, 1), TimeUnit.SECONDS)
+                .build();
+
+        if (replicas.isEmpty()) {
+            this.healthCheckExecutor = null;
+        } else {
+            this.healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(plugin.getThreadFactory());
+            long interval = Math.max(healthCheckInterval, 1);
+            healthCheckExecutor.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    protected Connection getReadConnection() throws SQLException {
+        int replicaCount = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(replicaCount, 1));
+        for (int i = 0; i < replicaCount; i++) {
+            Replica replica = replicas.get((start + i) % replicaCount);
+            if (!replica.healthy) {
+                continue;
+            }
+
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException sqlEx) {
+                // try the next one - the health check will enable it again
+                replica.healthy = false;
+                log.warn("Read replica {} is unavailable: {}", replica.address, sqlEx.getMessage());
+            }
+        }
+
+        return super.getReadConnection();
+    }
+
+    @Override
+    protected Connection getReadConnection(Object profileKey) throws SQLException {
+        if (recentlyWritten.getIfPresent(profileKey) != null) {
+            // read-your-writes
+            return getWriteConnection();
+        }
+
+        return getReadConnection();
+    }
+
+    @Override
+    protected void onSaved(StoredProfile profile) {
+        super.onSaved(profile);
+        if (!replicas.isEmpty()) {
+            recentlyWritten.put(profile.getName().toLowerCase(Locale.ROOT), Boolean.TRUE);
+            profile.getOptId().ifPresent(uuid -> recentlyWritten.put(uuid, Boolean.TRUE));
+        }
+    }
+
+    /**
+     * @return number of replicas that are currently used for reading
+     */
+    public int getHealthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection con = replica.dataSource.getConnection()) {
+                healthy = con.isValid(REPLICA_VALIDATION_TIMEOUT);
+            } catch (SQLException sqlEx) {
+                healthy = false;
+            }
+
+            if (healthy != replica.healthy) {
+                if (healthy) {
+                    log.info("Read replica {} is available again", replica.address);
+                } else {
+                    log.warn("Read replica {} failed the health check", replica.address);
+                }
+            }
+
+            replica.healthy = healthy;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (healthCheckExecutor != null) {
+            healthCheckExecutor.shutdownNow();
+        }
+
+        // waits for queued operations which might still read from the replicas
+        super.close();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    @Override
+    protected int getExecutorThreads() {
+        int threads = super.getExecutorThreads();
+        for (Replica replica : replicas) {
+            threads += replica.dataSource.getMaximumPoolSize();
+        }
+
+        return threads;
+    }
+
+    @Override
+    protected int getStreamingFetchSize() {
+        if (variant == MySQLVariant.MYSQL) {
+            // Connector/J only streams row by row with this special value, otherwise it reads the complete result
+            return Integer.MIN_VALUE;
+        }
+
+        return super.getStreamingFetchSize();
     }
 
     private static HikariConfig setParams(HikariConfig config,
@@ -109,6 +280,19 @@ public class MySQLStorage extends SQLStorage {
         // config.addDataSourceProperty("maintainTimeStats", false);
     }
 
+    private static class Replica {
+
+        private final String address;
+        private final HikariDataSource dataSource;
+
+        private volatile boolean healthy = true;
+
+        Replica(String address, HikariDataSource dataSource) {
+            this.address = address;
+            this.dataSource = dataSource;
+        }
+    }
+
     enum MySQLVariant {
 
         MYSQL("mysql"),
@@ -0,0 +1,213 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Compact in-memory set of all names stored in the database based on a bloom filter. If a name is reported as
+ * absent, there is definitely no profile for it and the database query can be skipped. False positives only cause
+ * the query that would have been made anyway.
+ * <p>
+ * Until the filter is built, every name is reported as possibly stored.
+ */
+public class NameFilter {
+
+    // leave room for new players until the next rebuild
+    private static final int MIN_EXPECTED_NAMES = 10_000;
+    private static final int GROWTH_FACTOR = 2;
+
+    private final double falsePositiveRate;
+
+    // guards writes to current and rebuilding, so a name added during the swap ends up in the new filter
+    private final Object swapLock = new Object();
+
+    private volatile BloomFilter<CharSequence> current;
+    // receives new names while a rebuild is in progress, so they are not lost on the swap
+    private BloomFilter<CharSequence> rebuilding;
+    private volatile long expectedNames;
+
+    private final AtomicLong skippedLookups = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public NameFilter(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @param name player name
+     * @return false if the name is definitely not stored, true if it might be stored
+     */
+    public boolean mightContain(String name) {
+        BloomFilter<CharSequence> filter = current;
+        if (filter == null || filter.mightContain(normalize(name))) {
+            return true;
+        }
+
+        skippedLookups.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Adds a name after it was written to the database.
+     *
+     * @param name player name
+     */
+    public void put(String name) {
+        String normalized = normalize(name);
+        synchronized (swapLock) {
+            if (current != null) {
+                current.put(normalized);
+            }
+
+            if (rebuilding != null) {
+                rebuilding.put(normalized);
+            }
+        }
+    }
+
+    /**
+     * Records that a name passed the filter, but no profile was found in the database.
+     */
+    public void recordFalsePositive() {
+        if (current != null) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces the current filter with a new one containing the given names. Lookups keep using the old filter until
+     * the new one is complete.
+     *
+     * @param storedNames number of stored names used to size the filter
+     * @param names source of all stored names
+     * @throws SQLException if reading the names failed. The old filter stays active in that case.
+     */
+    public void rebuild(long storedNames, NameSource names) throws SQLException {
+        long expected = Math.max(MIN_EXPECTED_NAMES, storedNames * GROWTH_FACTOR);
+        BloomFilter<CharSequence> filter = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), expected, falsePositiveRate
+        );
+
+        synchronized (swapLock) {
+            rebuilding = filter;
+        }
+
+        boolean complete = false;
+        try {
+            // the bloom filter is thread-safe, so concurrent puts don't have to wait for the whole rebuild
+            names.forEach(name -> filter.put(normalize(name)));
+            complete = true;
+        } finally {
+            synchronized (swapLock) {
+                if (complete) {
+                    current = filter;
+                    expectedNames = expected;
+                }
+
+                rebuilding = null;
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    public long getApproximateNames() {
+        BloomFilter<CharSequence> filter = current;
+        if (filter == null) {
+            return 0;
+        }
+
+        return filter.approximateElementCount();
+    }
+
+    /**
+     * @return false positive probability based on the current number of names
+     */
+    public double getExpectedFalsePositiveRate() {
+        BloomFilter<CharSequence> filter = current;
+        if (filter == null) {
+            return 0;
+        }
+
+        return filter.expectedFpp();
+    }
+
+    /**
+     * @return measured rate of unknown names that were not filtered
+     */
+    public double getObservedFalsePositiveRate() {
+        long skipped = skippedLookups.get();
+        long passed = falsePositives.get();
+        if (skipped + passed == 0) {
+            return 0;
+        }
+
+        return (double) passed / (skipped + passed);
+    }
+
+    /**
+     * @return approximated memory usage of the bit array in bytes
+     */
+    public long getMemoryUsage() {
+        long expected = expectedNames;
+        if (expected == 0) {
+            return 0;
+        }
+
+        // same formula as used by the bloom filter to calculate the number of bits
+        double bits = -expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        return (long) Math.ceil(bits / Byte.SIZE);
+    }
+
+    public long getSkippedLookups() {
+        return skippedLookups.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    private static String normalize(String name) {
+        // MySQL compares names case-insensitive by default
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    public interface NameSource {
+
+        void forEach(Consumer<String> action) throws SQLException;
+    }
+}
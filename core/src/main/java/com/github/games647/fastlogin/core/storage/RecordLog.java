@@ -0,0 +1,246 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of binary records. Each record is prefixed with its length and a CRC32 checksum, so a partially
+ * written record after a crash is detected and discarded. The file is rewritten to remove outdated records.
+ * <p>
+ * This class isn't thread-safe. The owner has to guard all calls with its own lock.
+ */
+public class RecordLog {
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path file;
+    private FileChannel channel;
+
+    public RecordLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param payload content of a record
+     * @return size of the record in the file including its header
+     */
+    public static int getRecordSize(byte[] payload) {
+        return HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Opens the file and passes all valid records to the handler. A damaged end of the file is truncated.
+     *
+     * @param handler receives the payload of every valid record
+     * @return number of discarded bytes at the end of the file
+     * @throws IOException if the file couldn't be read
+     */
+    public long open(RecordHandler handler) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long size = channel.size();
+        long validEnd = read(0, size, handler);
+        if (validEnd < size) {
+            channel.truncate(validEnd);
+        }
+
+        channel.position(validEnd);
+        return size - validEnd;
+    }
+
+    /**
+     * @param start position of the first record
+     * @param end position after the last record
+     * @param handler receives the payload of every valid record
+     * @return the position after the last valid record
+     * @throws IOException if the file couldn't be read
+     */
+    public long read(long start, long end, RecordHandler handler) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = start;
+        while (position + HEADER_SIZE <= end) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > end) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            if (checksum(payload.array()) != checksum) {
+                break;
+            }
+
+            handler.accept(payload.array());
+            position += HEADER_SIZE + length;
+        }
+
+        return position;
+    }
+
+    /**
+     * Writes the record to the end of the file. It's only durable after the next {@link #sync()}.
+     *
+     * @param payload content of the record
+     * @throws IOException if the record couldn't be written
+     */
+    public void append(byte[] payload) throws IOException {
+        write(channel, payload);
+    }
+
+    /**
+     * Replaces the file with one that only contains the given records. They are written to a temporary file first
+     * that atomically replaces the old one, so a crash keeps either of them.
+     *
+     * @param payloads content of the remaining records
+     * @throws IOException if the file couldn't be replaced
+     */
+    public void rewrite(Iterable<byte[]> payloads) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] payload : payloads) {
+                write(tempChannel, payload);
+            }
+
+            tempChannel.force(true);
+        }
+
+        channel.close();
+        try {
+            replaceFile(tempFile);
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+
+    /**
+     * Removes all records.
+     *
+     * @throws IOException if the file couldn't be truncated
+     */
+    public void clear() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+    }
+
+    /**
+     * Flushes the appended records to the disk.
+     *
+     * @throws IOException if the file couldn't be synced
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @return the position after the last record
+     * @throws IOException if the file is closed
+     */
+    public long getSize() throws IOException {
+        return channel.position();
+    }
+
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Syncs and closes the file.
+     *
+     * @throws IOException if the appended records couldn't be synced
+     */
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void write(FileChannel target, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            target.write(record);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file.getFileName());
+            }
+        }
+    }
+
+    private void replaceFile(Path tempFile) throws IOException {
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException atomicEx) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         * @param payload content of a valid record
+         * @throws IOException if the record couldn't be decoded
+         */
+        void accept(byte[] payload) throws IOException;
+    }
+}
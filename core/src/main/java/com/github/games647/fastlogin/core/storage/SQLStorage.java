@@ -27,20 +27,41 @@ package com.github.games647.fastlogin.core.storage;
 
 import com.github.games647.craftapi.UUIDAdapter;
 import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.storage.migration.Migration;
+import com.github.games647.fastlogin.core.storage.migration.MigrationProgress;
+import com.github.games647.fastlogin.core.storage.migration.SchemaMigrator;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 
@@ -61,22 +82,87 @@ public abstract class SQLStorage implements AuthStorage {
     protected static final String ADD_FLOODGATE_COLUMN_STMT = "ALTER TABLE `" + PREMIUM_TABLE
             + "` ADD COLUMN `Floodgate` INTEGER(3)";
 
+    protected static final String UUID_INDEX = "premium_uuid_idx";
+
     protected static final String LOAD_BY_NAME = "SELECT * FROM `" + PREMIUM_TABLE
             + "` WHERE `Name`=? LIMIT 1";
     protected static final String LOAD_BY_UUID = "SELECT * FROM `" + PREMIUM_TABLE
             + "` WHERE `UUID`=? LIMIT 1";
+    protected static final String COUNT_PROFILES = "SELECT COUNT(*) FROM `" + PREMIUM_TABLE + '`';
+    protected static final String LOAD_NAMES = "SELECT `Name` FROM `" + PREMIUM_TABLE + '`';
     protected static final String INSERT_PROFILE = "INSERT INTO `" + PREMIUM_TABLE
             + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`) " + "VALUES (?, ?, ?, ?, ?) ";
+    // LAST_INSERT_ID(expr) makes the driver return the id of the existing row as generated key
+    protected static final String UPSERT_CLAUSE = "ON DUPLICATE KEY UPDATE `UserID`=LAST_INSERT_ID(`UserID`), "
+            + "`UUID`=VALUES(`UUID`), `Name`=VALUES(`Name`), `Premium`=VALUES(`Premium`), "
+            + "`Floodgate`=VALUES(`Floodgate`), `LastIp`=VALUES(`LastIp`), `LastLogin`=CURRENT_TIMESTAMP";
     // limit not necessary here, because it's unique
     protected static final String UPDATE_PROFILE = "UPDATE `" + PREMIUM_TABLE
             + "` SET `UUID`=?, `Name`=?, `Premium`=?, `Floodgate`=?, `LastIp`=?, "
             + "`LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
 
+    // compact format - the binary columns are written in addition to the text columns until the cut-over
+    protected static final String UUID_BIN_INDEX = "premium_uuid_bin_idx";
+    protected static final String COMPACT_MIGRATION = "compact-format";
+    protected static final String COMPACT_CUT_OVER = "compact-format-cut-over";
+    protected static final String LOAD_COMPACT_STATE = "SELECT `Name`, `Done` FROM `"
+            + MigrationProgress.PROGRESS_TABLE + "` WHERE `Name` IN (?, ?)";
+
+    protected static final String LOAD_BY_UUID_COMPACT = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` WHERE `UUIDBin`=? LIMIT 1";
+    protected static final String INSERT_PROFILE_COMPACT = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`UUID`, `Name`, `Premium`, `Floodgate`, `LastIp`, `UUIDBin`, `LastIpBin`) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) ";
+    protected static final String UPSERT_PROFILE_COMPACT = INSERT_PROFILE_COMPACT + UPSERT_CLAUSE
+            + ", `UUIDBin`=VALUES(`UUIDBin`), `LastIpBin`=VALUES(`LastIpBin`)";
+    protected static final String UPDATE_PROFILE_COMPACT = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `UUID`=?, `Name`=?, `Premium`=?, `Floodgate`=?, `LastIp`=?, `UUIDBin`=?, `LastIpBin`=?, "
+            + "`LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+    // compact format after the cut-over removed the text columns
+    protected static final String INSERT_PROFILE_BINARY = "INSERT INTO `" + PREMIUM_TABLE
+            + "` (`Name`, `Premium`, `Floodgate`, `UUIDBin`, `LastIpBin`) VALUES (?, ?, ?, ?, ?) ";
+    protected static final String UPSERT_PROFILE_BINARY = INSERT_PROFILE_BINARY
+            + "ON DUPLICATE KEY UPDATE `UserID`=LAST_INSERT_ID(`UserID`), `Name`=VALUES(`Name`), "
+            + "`Premium`=VALUES(`Premium`), `Floodgate`=VALUES(`Floodgate`), `UUIDBin`=VALUES(`UUIDBin`), "
+            + "`LastIpBin`=VALUES(`LastIpBin`), `LastLogin`=CURRENT_TIMESTAMP";
+    protected static final String UPDATE_PROFILE_BINARY = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `Name`=?, `Premium`=?, `Floodgate`=?, `UUIDBin`=?, `LastIpBin`=?, "
+            + "`LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+    protected static final String LOAD_MAX_ID = "SELECT MAX(`UserID`) FROM `" + PREMIUM_TABLE + '`';
+    // converts the rows on the server, so that concurrent writes cannot be overwritten with outdated values
+    protected static final String CONVERT_COMPACT_CHUNK = "UPDATE `" + PREMIUM_TABLE + "` SET "
+            + "`UUIDBin`=UNHEX(REPLACE(`UUID`, '-', '')), "
+            + "`LastIpBin`=CASE WHEN IS_IPV4(`LastIp`) OR IS_IPV6(`LastIp`) THEN INET6_ATON(`LastIp`) END "
+            + "WHERE `UserID`>? AND `UserID`<=?";
+
+    private static final int JOURNAL_VALIDATION_TIMEOUT = 2;
+    private static final int JOURNAL_REPLAY_BATCH = 500;
+
+    private static final int EXECUTOR_QUEUE_CAPACITY = 1024;
+    private static final int EXECUTOR_SHUTDOWN_TIMEOUT = 10;
+
     protected final Logger log;
     protected final HikariDataSource dataSource;
 
+    private final ThreadFactory threadFactory;
+    private volatile ThreadPoolExecutor executor;
+    // saves are queued without a limit, so they are never rejected or run on the calling thread
+    private volatile ThreadPoolExecutor saveExecutor;
+
+    private final MigrationProgress compactProgress = new MigrationProgress(COMPACT_MIGRATION);
+    private final MigrationProgress cutOverProgress = new MigrationProgress(COMPACT_CUT_OVER);
+
+    private volatile NameFilter nameFilter;
+    private volatile SaveJournal saveJournal;
+
+    // all rows are converted, so lookups can use the binary columns
+    private volatile boolean compactReads;
+    // the text UUID and IP columns still exist - false after the cut-over to the compact format
+    private volatile boolean textColumns = true;
+
     public SQLStorage(Logger log, String poolName, ThreadFactory threadFactory, HikariConfig config) {
         this.log = log;
+        this.threadFactory = threadFactory == null ? Executors.defaultThreadFactory() : threadFactory;
         config.setPoolName(poolName);
         if (threadFactory != null) {
             config.setThreadFactory(threadFactory);
@@ -86,39 +172,395 @@ public abstract class SQLStorage implements AuthStorage {
     }
 
     public void createTables() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator(log, getMigrations());
+        try (Connection con = getWriteConnection()) {
+            int applied = migrator.migrate(con);
+            if (applied > 0) {
+                log.info("Applied {} database migrations", applied);
+            }
+        }
+    }
+
+    /**
+     * Ordered steps to build the schema. Released versions must never be changed or removed, because they are
+     * recorded in the database. Add new steps to the end instead.
+     *
+     * @return all migrations of this database type
+     */
+    protected List<Migration> getMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+
         // choose surrogate PK(ID), because UUID can be null for offline players
         // if UUID is always Premium UUID we would have to update offline player entries on insert
         // name cannot be PK, because it can be changed for premium players
-        //todo: add unique uuid index usage
-        try (Connection con = dataSource.getConnection();
-             Statement stmt = con.createStatement()) {
-            stmt.executeUpdate(getCreateTableStmt());
+        migrations.add(new Migration(1, "Create premium table", con -> executeUpdate(con, getCreateTableStmt())));
+        migrations.add(new Migration(2, "Add Floodgate column", con -> {
+            // databases from before the migrations could already have this column
+            if (isColumnMissing(con.getMetaData(), "Floodgate")) {
+                executeUpdate(con, ADD_FLOODGATE_COLUMN_STMT);
+            }
+        }));
 
-            // add Floodgate column
-            DatabaseMetaData md = con.getMetaData();
-            if (isColumnMissing(md, "Floodgate")) {
-                stmt.executeUpdate(ADD_FLOODGATE_COLUMN_STMT);
+        // not unique, because existing databases could contain duplicates for example from name changes
+        migrations.add(new Migration(3, "Add UUID index", con -> createIndex(con, UUID_INDEX, "`UUID`")));
+        migrations.add(new Migration(4, "Create migration progress table", compactProgress::createTable));
+
+        // always written, so that the conversion to the compact format only has to fill the existing rows
+        migrations.add(new Migration(5, "Add compact UUID column", con -> {
+            // databases from before the migration could already have this column
+            if (isColumnMissing(con.getMetaData(), "UUIDBin")) {
+                executeUpdate(con, "ALTER TABLE `" + PREMIUM_TABLE + "` ADD COLUMN `UUIDBin` "
+                        + getBinaryType(16, true));
+            }
+        }));
+        migrations.add(new Migration(6, "Add compact IP column", con -> {
+            if (isColumnMissing(con.getMetaData(), "LastIpBin")) {
+                executeUpdate(con, "ALTER TABLE `" + PREMIUM_TABLE + "` ADD COLUMN `LastIpBin` "
+                        + getBinaryType(16, false));
             }
+        }));
+        return migrations;
+    }
+
+    protected void createIndex(Connection con, String indexName, String columns) throws SQLException {
+        if (isIndexMissing(con.getMetaData(), indexName)) {
+            executeUpdate(con, "CREATE INDEX `" + indexName + "` ON `" + PREMIUM_TABLE + "` (" + columns + ')');
+        }
+    }
 
+    protected void executeUpdate(Connection con, String sql) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(sql);
         }
     }
 
-    private boolean isColumnMissing(DatabaseMetaData metaData, String columnName) throws SQLException {
+    protected boolean isColumnMissing(DatabaseMetaData metaData, String columnName) throws SQLException {
         try (ResultSet rs = metaData.getColumns(null, null, PREMIUM_TABLE, columnName)) {
             return !rs.next();
         }
     }
 
+    protected boolean isIndexMissing(DatabaseMetaData metaData, String indexName) throws SQLException {
+        try (ResultSet rs = metaData.getIndexInfo(null, null, PREMIUM_TABLE, false, true)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Loads the state of the compact format from the progress table. The binary columns are always written in
+     * addition to the text columns, so that an interrupted or completed conversion stays valid even if the format is
+     * disabled. Existing rows have to be converted using {@link #migrateCompactFormat(int, long)}.
+     *
+     * @throws SQLException on failure
+     */
+    public void loadCompactFormat() throws SQLException {
+        boolean converted = false;
+        boolean cutOver = false;
+        try (Connection con = getWriteConnection();
+             PreparedStatement loadStmt = con.prepareStatement(LOAD_COMPACT_STATE)) {
+            loadStmt.setString(1, COMPACT_MIGRATION);
+            loadStmt.setString(2, COMPACT_CUT_OVER);
+            try (ResultSet resultSet = loadStmt.executeQuery()) {
+                while (resultSet.next()) {
+                    boolean done = resultSet.getBoolean(2);
+                    if (COMPACT_MIGRATION.equals(resultSet.getString(1))) {
+                        converted = done;
+                    } else {
+                        cutOver = done;
+                    }
+                }
+            }
+        }
+
+        compactReads = converted || cutOver;
+        textColumns = !cutOver;
+    }
+
+    /**
+     * Removes the text UUID and IP columns after all rows were converted. This cannot be undone. Older plugin
+     * versions cannot use the database afterwards and other servers sharing it have to be restarted, because they
+     * still write the removed columns until then.
+     *
+     * @return true if the columns were removed, false if the database doesn't support it
+     * @throws SQLException on failure
+     * @throws IllegalStateException if the conversion isn't complete
+     */
+    public boolean removeTextColumns() throws SQLException {
+        if (!compactReads) {
+            throw new IllegalStateException("The conversion to the compact format isn't complete");
+        }
+
+        if (!textColumns) {
+            return true;
+        }
+
+        // new statements only use the binary columns, which are valid before and after the removal
+        textColumns = false;
+        try (Connection con = getWriteConnection()) {
+            if (!dropTextColumns(con)) {
+                textColumns = true;
+                return false;
+            }
+
+            cutOverProgress.save(con, 0, true);
+        } catch (SQLException | RuntimeException ex) {
+            textColumns = true;
+            throw ex;
+        }
+
+        log.info("Removed the text columns of the compact format");
+        return true;
+    }
+
+    /**
+     * Removes the text UUID and IP columns including their index after all rows were converted.
+     *
+     * @param con database connection
+     * @return true if the columns were removed, false if the database doesn't support it
+     * @throws SQLException on failure
+     */
+    protected boolean dropTextColumns(Connection con) throws SQLException {
+        // a single statement rebuilds the table only once
+        String dropIndex = isIndexMissing(con.getMetaData(), UUID_INDEX) ? "" : "DROP INDEX `" + UUID_INDEX + "`, ";
+        executeUpdate(con, "ALTER TABLE `" + PREMIUM_TABLE + "` " + dropIndex
+                + "DROP COLUMN `UUID`, DROP COLUMN `LastIp`");
+        return true;
+    }
+
+    /**
+     * Forgets the conversion progress, so that the next conversion starts again from the first row. This is only
+     * necessary if rows were written without the binary columns, for example by an older plugin version sharing
+     * this database.
+     *
+     * @throws SQLException on failure
+     * @throws IllegalStateException if the text columns were already removed
+     */
+    public void resetCompactFormat() throws SQLException {
+        if (!textColumns) {
+            throw new IllegalStateException("The text columns were already removed");
+        }
+
+        try (Connection con = getWriteConnection()) {
+            compactProgress.delete(con);
+        }
+
+        compactReads = false;
+    }
+
+    /**
+     * Converts the existing rows to the compact format in small transactions while the storage stays usable. The
+     * progress is saved after every chunk, so an interrupted migration continues where it stopped.
+     *
+     * @param chunkSize maximum number of rows per transaction
+     * @param pauseMillis pause between two chunks to leave room for regular queries
+     * @return true if all rows are converted, false if the migration was interrupted
+     * @throws SQLException if a chunk failed. Previous chunks stay converted.
+     */
+    public boolean migrateCompactFormat(int chunkSize, long pauseMillis) throws SQLException {
+        if (compactReads) {
+            return true;
+        }
+
+        long lastId;
+        long maxId;
+        try (Connection con = getWriteConnection();
+             Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery(LOAD_MAX_ID)) {
+            lastId = compactProgress.loadLastId(con);
+            // newer rows are already written in both formats
+            maxId = resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+
+        if (lastId < maxId) {
+            log.info("Converting profiles {} to {} to the compact format", lastId + 1, maxId);
+        }
+
+        while (lastId < maxId) {
+            if (dataSource.isClosed()) {
+                return false;
+            }
+
+            long toId = Math.min(lastId + chunkSize, maxId);
+            try (Connection con = getWriteConnection()) {
+                con.setAutoCommit(false);
+                try {
+                    convertCompactChunk(con, lastId, toId);
+                    compactProgress.save(con, toId, false);
+                    con.commit();
+                } catch (SQLException sqlEx) {
+                    con.rollback();
+                    throw sqlEx;
+                } finally {
+                    con.setAutoCommit(true);
+                }
+            }
+
+            lastId = toId;
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        try (Connection con = getWriteConnection()) {
+            // creating the index after the conversion is faster than updating it for every row
+            createIndex(con, UUID_BIN_INDEX, "`UUIDBin`");
+            compactProgress.save(con, maxId, true);
+        }
+
+        compactReads = true;
+        log.info("Converted all profiles to the compact format");
+        return true;
+    }
+
+    public boolean isCompactFormatMigrated() {
+        return compactReads;
+    }
+
+    /**
+     * @return true if the text UUID and IP columns still exist, false after the cut-over to the compact format
+     */
+    public boolean hasTextColumns() {
+        return textColumns;
+    }
+
+    /**
+     * Converts the rows in the given id range to the compact format.
+     *
+     * @param con database connection inside a transaction
+     * @param fromId exclusive lower id bound
+     * @param toId inclusive upper id bound
+     * @throws SQLException on failure
+     */
+    protected void convertCompactChunk(Connection con, long fromId, long toId) throws SQLException {
+        try (PreparedStatement convertStmt = con.prepareStatement(CONVERT_COMPACT_CHUNK)) {
+            convertStmt.setLong(1, fromId);
+            convertStmt.setLong(2, toId);
+            convertStmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @param length maximum number of bytes
+     * @param fixed true if all values have exactly this length
+     * @return column type for binary data
+     */
+    protected String getBinaryType(int length, boolean fixed) {
+        return (fixed ? "BINARY(" : "VARBINARY(") + length + ')';
+    }
+
+    /**
+     * @return connection for queries that don't modify any data
+     * @throws SQLException if no connection is available
+     */
+    protected Connection getReadConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Connection to load a single profile. Implementations could use it to read recently saved profiles from the
+     * same database that received the write.
+     *
+     * @param profileKey lowercase name or UUID of the requested profile
+     * @return connection for queries that don't modify any data
+     * @throws SQLException if no connection is available
+     */
+    protected Connection getReadConnection(Object profileKey) throws SQLException {
+        return getReadConnection();
+    }
+
+    /**
+     * @return connection for modifications
+     * @throws SQLException if no connection is available
+     */
+    protected Connection getWriteConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Activates the filter for names that are not stored. Call {@link #rebuildNameFilter()} to fill it.
+     *
+     * @param nameFilter filter or null to disable
+     */
+    public void setNameFilter(NameFilter nameFilter) {
+        this.nameFilter = nameFilter;
+    }
+
+    public NameFilter getNameFilter() {
+        return nameFilter;
+    }
+
+    /**
+     * Streams all stored names into a new name filter and replaces the old one afterwards.
+     *
+     * @throws SQLException if reading the names failed
+     */
+    public void rebuildNameFilter() throws SQLException {
+        NameFilter filter = nameFilter;
+        if (filter == null) {
+            return;
+        }
+
+        try (Connection con = getReadConnection()) {
+            long storedNames;
+            try (Statement countStmt = con.createStatement();
+                 ResultSet resultSet = countStmt.executeQuery(COUNT_PROFILES)) {
+                resultSet.next();
+                storedNames = resultSet.getLong(1);
+            }
+
+            filter.rebuild(storedNames, action -> {
+                try (Statement loadStmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+                    loadStmt.setFetchSize(getStreamingFetchSize());
+                    try (ResultSet resultSet = loadStmt.executeQuery(LOAD_NAMES)) {
+                        while (resultSet.next()) {
+                            action.accept(resultSet.getString(1));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return fetch size that makes the driver stream large results instead of loading them into memory at once
+     */
+    protected int getStreamingFetchSize() {
+        return 1_000;
+    }
+
     @Override
     public StoredProfile loadProfile(String name) {
-        try (Connection con = dataSource.getConnection();
+        NameFilter filter = nameFilter;
+        if (filter != null && !filter.mightContain(name)) {
+            return new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+        }
+
+        try (Connection con = getReadConnection(name.toLowerCase(Locale.ROOT));
              PreparedStatement loadStmt = con.prepareStatement(LOAD_BY_NAME)
         ) {
             loadStmt.setString(1, name);
 
             try (ResultSet resultSet = loadStmt.executeQuery()) {
-                return parseResult(resultSet).orElseGet(() -> new StoredProfile(null, name, false,
-                        FloodgateState.FALSE, ""));
+                Optional<StoredProfile> profile = parseResult(resultSet);
+                if (!profile.isPresent() && filter != null) {
+                    filter.recordFalsePositive();
+                }
+
+                return profile.orElseGet(() -> {
+                    StoredProfile newProfile = new StoredProfile(null, name, false, FloodgateState.FALSE, "");
+                    newProfile.setConfirmedNew(true);
+                    return newProfile;
+                });
             }
         } catch (SQLException sqlEx) {
             log.error("Failed to query profile: {}", name, sqlEx);
@@ -129,9 +571,14 @@ public abstract class SQLStorage implements AuthStorage {
 
     @Override
     public StoredProfile loadProfile(UUID uuid) {
-        try (Connection con = dataSource.getConnection();
-             PreparedStatement loadStmt = con.prepareStatement(LOAD_BY_UUID)) {
-            loadStmt.setString(1, UUIDAdapter.toMojangId(uuid));
+        boolean compact = compactReads;
+        try (Connection con = getReadConnection(uuid);
+             PreparedStatement loadStmt = con.prepareStatement(compact ? LOAD_BY_UUID_COMPACT : LOAD_BY_UUID)) {
+            if (compact) {
+                loadStmt.setBytes(1, CompactFormat.toBytes(uuid));
+            } else {
+                loadStmt.setString(1, UUIDAdapter.toMojangId(uuid));
+            }
 
             try (ResultSet resultSet = loadStmt.executeQuery()) {
                 return parseResult(resultSet).orElse(null);
@@ -147,7 +594,15 @@ public abstract class SQLStorage implements AuthStorage {
         if (resultSet.next()) {
             long userId = resultSet.getInt("UserID");
 
-            UUID uuid = Optional.ofNullable(resultSet.getString("UUID")).map(UUIDAdapter::parseId).orElse(null);
+            UUID uuid = null;
+            if (compactReads) {
+                // avoids parsing the text representation
+                uuid = CompactFormat.toUUID(resultSet.getBytes("UUIDBin"));
+            }
+
+            if (uuid == null && textColumns) {
+                uuid = Optional.ofNullable(resultSet.getString("UUID")).map(UUIDAdapter::parseId).orElse(null);
+            }
 
             String name = resultSet.getString("Name");
             boolean premium = resultSet.getBoolean("Premium");
@@ -161,7 +616,13 @@ public abstract class SQLStorage implements AuthStorage {
                 floodgate = FloodgateState.fromInt(floodgateNum);
             }
 
-            String lastIp = resultSet.getString("LastIp");
+            String lastIp;
+            if (textColumns) {
+                lastIp = resultSet.getString("LastIp");
+            } else {
+                lastIp = Optional.ofNullable(CompactFormat.bytesToIp(resultSet.getBytes("LastIpBin"))).orElse("");
+            }
+
             Instant lastLogin = resultSet.getTimestamp("LastLogin").toInstant();
             return Optional.of(new StoredProfile(userId, uuid, name, premium, floodgate, lastIp, lastLogin));
         }
@@ -171,48 +632,335 @@ public abstract class SQLStorage implements AuthStorage {
 
     @Override
     public void save(StoredProfile playerProfile) {
-        try (Connection con = dataSource.getConnection()) {
-            String uuid = playerProfile.getOptId().map(UUIDAdapter::toMojangId).orElse(null);
+        try {
+            write(playerProfile);
+        } catch (SQLException sqlEx) {
+            log.error("Failed to save playerProfile {}", playerProfile, sqlEx);
+        }
+    }
 
+    /**
+     * Writes the profile to the database. If the database is unavailable, the profile is added to the save journal
+     * instead if it's enabled.
+     *
+     * @param playerProfile profile to save
+     * @throws SQLException if the profile was neither written to the database nor to the journal
+     */
+    protected void write(StoredProfile playerProfile) throws SQLException {
+        SaveJournal journal = saveJournal;
+        if (journal != null && journal.appendIfPending(playerProfile)) {
+            // keep the order of changes for this player
+            return;
+        }
+
+        try (Connection con = getWriteConnection()) {
             playerProfile.getSaveLock().lock();
             try {
                 if (playerProfile.isSaved()) {
-                    try (PreparedStatement saveStmt = con.prepareStatement(UPDATE_PROFILE)) {
-                        saveStmt.setString(1, uuid);
-                        saveStmt.setString(2, playerProfile.getName());
-                        saveStmt.setBoolean(3, playerProfile.isPremium());
-                        saveStmt.setInt(4, playerProfile.getFloodgate().getValue());
-                        saveStmt.setString(5, playerProfile.getLastIp());
-
-                        saveStmt.setLong(6, playerProfile.getRowId());
+                    try (PreparedStatement saveStmt = con.prepareStatement(getUpdateStmt())) {
+                        bindUpdate(saveStmt, playerProfile);
                         saveStmt.execute();
                     }
                 } else {
-                    try (PreparedStatement saveStmt = con.prepareStatement(INSERT_PROFILE, RETURN_GENERATED_KEYS)) {
-                        saveStmt.setString(1, uuid);
+                    insertNew(con, playerProfile);
+                }
+            } finally {
+                playerProfile.getSaveLock().unlock();
+            }
 
-                        saveStmt.setString(2, playerProfile.getName());
-                        saveStmt.setBoolean(3, playerProfile.isPremium());
-                        saveStmt.setBoolean(3, playerProfile.isPremium());
-                        saveStmt.setInt(4, playerProfile.getFloodgate().getValue());
-                        saveStmt.setString(5, playerProfile.getLastIp());
+            onSaved(playerProfile);
+        } catch (SQLException ex) {
+            if (journal != null && isConnectionFailure(ex) && journal.append(playerProfile)) {
+                log.warn("Database unavailable - saved {} to the journal: {}", playerProfile.getName(),
+                        ex.getMessage());
+                return;
+            }
 
-                        saveStmt.execute();
-                        try (ResultSet generatedKeys = saveStmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                playerProfile.setRowId(generatedKeys.getInt(1));
-                            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Saves all given profiles using a single connection and transaction. Updates of existing rows are sent as one
+     * JDBC batch. New profiles still have to be upserted one by one, because not every driver returns the generated
+     * keys of a batch.
+     *
+     * If a profile violates a constraint like the unique name, the profiles are written one by one and only the
+     * conflicting ones are dropped.
+     *
+     * @param profiles profiles to save
+     * @throws SQLException if the database is unavailable or a profile couldn't be written for another reason
+     */
+    public void saveBatch(Collection<StoredProfile> profiles) throws SQLException {
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            // keep the order of changes for players with journaled changes
+            Collection<StoredProfile> direct = new ArrayList<>(profiles.size());
+            for (StoredProfile profile : profiles) {
+                if (!journal.appendIfPending(profile)) {
+                    direct.add(profile);
+                }
+            }
+
+            profiles = direct;
+        }
+
+        writeOrIsolate(profiles);
+    }
+
+    private void writeOrIsolate(Collection<StoredProfile> profiles) throws SQLException {
+        try {
+            writeBatch(profiles);
+        } catch (SQLException sqlEx) {
+            if (!isConstraintViolation(sqlEx)) {
+                throw sqlEx;
+            }
+
+            // a single conflicting insert must not roll back the other profiles - an insert could also be written
+            // already by a previous attempt
+            writeIndividually(profiles);
+        }
+    }
+
+    private void writeBatch(Collection<StoredProfile> profiles) throws SQLException {
+        Collection<StoredProfile> inserted = new ArrayList<>();
+        try (Connection con = getWriteConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement updateStmt = con.prepareStatement(getUpdateStmt())) {
+                for (StoredProfile profile : profiles) {
+                    profile.getSaveLock().lock();
+                    try {
+                        if (profile.isSaved()) {
+                            bindUpdate(updateStmt, profile);
+                            updateStmt.addBatch();
+                        } else {
+                            insertNew(con, profile);
+                            inserted.add(profile);
                         }
+                    } finally {
+                        profile.getSaveLock().unlock();
                     }
                 }
+
+                updateStmt.executeBatch();
+                con.commit();
+
+                profiles.forEach(this::onSaved);
+            } catch (SQLException sqlEx) {
+                con.rollback();
+
+                // the generated ids are no longer valid
+                inserted.forEach(profile -> profile.setRowId(-1));
+                throw sqlEx;
             } finally {
-                playerProfile.getSaveLock().unlock();
+                con.setAutoCommit(true);
             }
-        } catch (SQLException ex) {
-            log.error("Failed to save playerProfile {}", playerProfile, ex);
         }
     }
 
+    /**
+     * Writes profiles that couldn't be saved, because the database was unavailable, to the journal.
+     *
+     * @param journal journal or null to disable
+     */
+    public void setSaveJournal(SaveJournal journal) {
+        this.saveJournal = journal;
+    }
+
+    public SaveJournal getSaveJournal() {
+        return saveJournal;
+    }
+
+    /**
+     * Adds the profile to the journal if enabled. This is intended for changes that couldn't be written on shutdown.
+     *
+     * @param profile profile to save later
+     * @return true if the profile was journaled
+     */
+    public boolean journal(StoredProfile profile) {
+        SaveJournal journal = saveJournal;
+        return journal != null && journal.append(profile);
+    }
+
+    /**
+     * Writes the journaled profiles to the database in their original order. Only the latest change of every
+     * profile is written.
+     */
+    public void replayJournal() {
+        SaveJournal journal = saveJournal;
+        if (journal == null || journal.isEmpty()) {
+            return;
+        }
+
+        try (Connection con = getWriteConnection()) {
+            if (!con.isValid(JOURNAL_VALIDATION_TIMEOUT)) {
+                return;
+            }
+        } catch (SQLException sqlEx) {
+            // still unavailable
+            return;
+        }
+
+        try {
+            SaveJournal.Snapshot snapshot = journal.snapshot();
+            Map<String, StoredProfile> latest = new LinkedHashMap<>();
+            for (StoredProfile profile : snapshot.getProfiles()) {
+                latest.put(profile.getName().toLowerCase(Locale.ROOT), profile);
+            }
+
+            List<StoredProfile> profiles = new ArrayList<>(latest.values());
+            for (int i = 0; i < profiles.size(); i += JOURNAL_REPLAY_BATCH) {
+                writeOrIsolate(profiles.subList(i, Math.min(i + JOURNAL_REPLAY_BATCH, profiles.size())));
+            }
+
+            journal.commit(snapshot);
+            log.info("Wrote {} journaled profile changes to the database", profiles.size());
+        } catch (SQLException sqlEx) {
+            journal.recordFailedReplay();
+            log.warn("Failed to write the save journal to the database - retrying later", sqlEx);
+        } catch (IOException ioEx) {
+            journal.recordFailedReplay();
+            log.error("Failed to read the save journal", ioEx);
+        }
+    }
+
+    private void writeIndividually(Collection<StoredProfile> profiles) throws SQLException {
+        for (StoredProfile profile : profiles) {
+            try {
+                writeBatch(Collections.singletonList(profile));
+            } catch (SQLException sqlEx) {
+                if (!isConstraintViolation(sqlEx)) {
+                    throw sqlEx;
+                }
+
+                // the stored row wins - a new profile must not overwrite an existing player
+                log.warn("Dropped change of {}, because the name is already stored", profile.getName());
+            }
+        }
+    }
+
+    /**
+     * @param sqlEx exception of a failed query
+     * @return true if the query violated a constraint like the unique name
+     */
+    protected boolean isConstraintViolation(SQLException sqlEx) {
+        String sqlState = sqlEx.getSQLState();
+        // SQL state class for integrity constraint violations
+        return sqlEx instanceof SQLIntegrityConstraintViolationException
+                || (sqlState != null && sqlState.startsWith("23"));
+    }
+
+    /**
+     * @param sqlEx exception of a failed query
+     * @return true if the query failed because the database couldn't be reached, false if the query itself is invalid
+     */
+    protected boolean isConnectionFailure(SQLException sqlEx) {
+        String sqlState = sqlEx.getSQLState();
+        return sqlEx instanceof SQLTransientException
+                || sqlEx instanceof SQLRecoverableException
+                || sqlEx instanceof SQLNonTransientConnectionException
+                // SQL state class for connection exceptions
+                || (sqlState != null && sqlState.startsWith("08"));
+    }
+
+    /**
+     * Called after the profile was successfully written to the database.
+     *
+     * @param profile saved profile
+     */
+    protected void onSaved(StoredProfile profile) {
+        // the name could be new for updated profiles too, because the player changed it
+        NameFilter filter = nameFilter;
+        if (filter != null) {
+            filter.put(profile.getName());
+        }
+    }
+
+    private void insertNew(Connection con, StoredProfile playerProfile) throws SQLException {
+        if (playerProfile.isConfirmedNew()) {
+            upsertProfile(con, playerProfile);
+        } else {
+            // the name could be stored already - don't replace the premium status and UUID of that player
+            insertProfile(con, playerProfile);
+        }
+    }
+
+    /**
+     * Inserts the profile or updates the existing row with the same name in a single round trip. This prevents
+     * failures if the same name joins concurrently for the first time, for example on another server sharing this
+     * database. The row id is set to the id of the inserted or updated row afterwards. Only used for profiles that
+     * are {@link StoredProfile#isConfirmedNew() confirmed new}.
+     *
+     * @param con database connection
+     * @param playerProfile unsaved profile
+     * @throws SQLException on failure
+     */
+    protected void upsertProfile(Connection con, StoredProfile playerProfile) throws SQLException {
+        try (PreparedStatement saveStmt = con.prepareStatement(getUpsertStmt(), RETURN_GENERATED_KEYS)) {
+            bindInsert(saveStmt, playerProfile);
+
+            saveStmt.execute();
+            try (ResultSet generatedKeys = saveStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    playerProfile.setRowId(generatedKeys.getInt(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Plain insert for databases without upsert support. Concurrent inserts of the same name fail here.
+     *
+     * @param con database connection
+     * @param playerProfile unsaved profile
+     * @throws SQLException on failure
+     */
+    protected void insertProfile(Connection con, StoredProfile playerProfile) throws SQLException {
+        try (PreparedStatement saveStmt = con.prepareStatement(getInsertStmt(), RETURN_GENERATED_KEYS)) {
+            bindInsert(saveStmt, playerProfile);
+
+            saveStmt.execute();
+            try (ResultSet generatedKeys = saveStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    playerProfile.setRowId(generatedKeys.getInt(1));
+                }
+            }
+        }
+    }
+
+    protected void bindInsert(PreparedStatement saveStmt, StoredProfile playerProfile) throws SQLException {
+        bindProfile(saveStmt, playerProfile);
+    }
+
+    private void bindUpdate(PreparedStatement saveStmt, StoredProfile playerProfile) throws SQLException {
+        int idIndex = bindProfile(saveStmt, playerProfile);
+        saveStmt.setLong(idIndex, playerProfile.getRowId());
+    }
+
+    /**
+     * Binds the profile in the column order of the insert and update statements of the current format.
+     *
+     * @return next parameter index
+     */
+    private int bindProfile(PreparedStatement saveStmt, StoredProfile playerProfile) throws SQLException {
+        int index = 1;
+        if (textColumns) {
+            saveStmt.setString(index++, playerProfile.getOptId().map(UUIDAdapter::toMojangId).orElse(null));
+        }
+
+        saveStmt.setString(index++, playerProfile.getName());
+        saveStmt.setBoolean(index++, playerProfile.isPremium());
+        saveStmt.setInt(index++, playerProfile.getFloodgate().getValue());
+        if (textColumns) {
+            saveStmt.setString(index++, playerProfile.getLastIp());
+        }
+
+        saveStmt.setBytes(index++, playerProfile.getOptId().map(CompactFormat::toBytes).orElse(null));
+        saveStmt.setBytes(index++, CompactFormat.ipToBytes(playerProfile.getLastIp()));
+
+        return index;
+    }
+
     /**
      * SQLite has a slightly different syntax, so this will be overridden by SQLiteStorage
      * @return An SQL Statement to create the `premium` table
@@ -221,8 +969,185 @@ public abstract class SQLStorage implements AuthStorage {
         return CREATE_TABLE_STMT;
     }
 
+    protected String getInsertStmt() {
+        if (!textColumns) {
+            return INSERT_PROFILE_BINARY;
+        }
+
+        return INSERT_PROFILE_COMPACT;
+    }
+
+    protected String getUpsertStmt() {
+        if (!textColumns) {
+            return UPSERT_PROFILE_BINARY;
+        }
+
+        return UPSERT_PROFILE_COMPACT;
+    }
+
+    protected String getUpdateStmt() {
+        if (!textColumns) {
+            return UPDATE_PROFILE_BINARY;
+        }
+
+        return UPDATE_PROFILE_COMPACT;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    int threads = Math.max(1, getExecutorThreads());
+                    current = StorageExecutors.newBoundedExecutor(threads, EXECUTOR_QUEUE_CAPACITY, threadFactory);
+                    executor = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(StoredProfile playerProfile) {
+        SaveTask task = new SaveTask(playerProfile);
+        try {
+            getSaveExecutor().execute(task);
+        } catch (RejectedExecutionException rejectedEx) {
+            // already shutting down
+            if (journal(playerProfile)) {
+                task.future.complete(null);
+            } else {
+                task.future.completeExceptionally(rejectedEx);
+            }
+        }
+
+        return task.future;
+    }
+
+    private ThreadPoolExecutor getSaveExecutor() {
+        ThreadPoolExecutor current = saveExecutor;
+        if (current == null) {
+            synchronized (this) {
+                current = saveExecutor;
+                if (current == null) {
+                    current = StorageExecutors.newUnboundedExecutor(Math.max(1, getExecutorThreads()), threadFactory);
+                    saveExecutor = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * @return number of threads for the asynchronous operations. More threads than connections would only wait for
+     * a free connection inside the pool.
+     */
+    protected int getExecutorThreads() {
+        return dataSource.getMaximumPoolSize();
+    }
+
     @Override
     public void close() {
+        ThreadPoolExecutor saves = saveExecutor;
+        if (saves != null) {
+            saves.shutdown();
+        }
+
+        ThreadPoolExecutor current = executor;
+        if (current != null) {
+            // let queued operations finish while the connections are still available
+            current.shutdown();
+            try {
+                if (!current.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    log.warn("Database lookups didn't finish in time. Cancelled {} pending lookups",
+                            current.shutdownNow().size());
+                }
+            } catch (InterruptedException interruptedEx) {
+                current.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (saves != null) {
+            awaitSaves(saves);
+        }
+
+        SaveJournal journal = saveJournal;
+        if (journal != null) {
+            journal.close();
+        }
+
         dataSource.close();
     }
+
+    private void awaitSaves(ThreadPoolExecutor saves) {
+        try {
+            if (saves.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                return;
+            }
+
+            if (saveJournal != null) {
+                // the journal writes the queued saves on the next start
+                log.warn("Database writes didn't finish in time. Saved {} pending profiles to the journal",
+                        journalQueuedSaves(saves));
+            }
+
+            // saves are never dropped - running and remaining saves fail with the connection timeout at the latest
+            while (!saves.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("Waiting for {} pending profile saves", saves.getQueue().size() + saves.getActiveCount());
+            }
+        } catch (InterruptedException interruptedEx) {
+            int queued = saves.getQueue().size();
+            int journaled = journalQueuedSaves(saves);
+            if (journaled < queued) {
+                log.error("Interrupted while waiting for the database. Dropped {} pending profile saves",
+                        queued - journaled);
+            }
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int journalQueuedSaves(ThreadPoolExecutor saves) {
+        List<Runnable> queued = new ArrayList<>();
+        saves.getQueue().drainTo(queued);
+
+        int journaled = 0;
+        for (Runnable task : queued) {
+            SaveTask saveTask = (SaveTask) task;
+            if (journal(saveTask.profile)) {
+                journaled++;
+                saveTask.future.complete(null);
+            } else {
+                saveTask.future.completeExceptionally(new RejectedExecutionException("Storage is closed"));
+            }
+        }
+
+        return journaled;
+    }
+
+    private class SaveTask implements Runnable {
+
+        private final StoredProfile profile;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        SaveTask(StoredProfile profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public void run() {
+            try {
+                write(profile);
+                future.complete(null);
+            } catch (SQLException | RuntimeException ex) {
+                // the caller handles the failure
+                future.completeExceptionally(ex);
+            }
+        }
+    }
 }
@@ -25,12 +25,22 @@
  */
 package com.github.games647.fastlogin.core.storage;
 
+import com.github.games647.craftapi.UUIDAdapter;
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
 import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.sqlite.JDBC;
 import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
 
 import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -48,40 +58,123 @@ public class SQLiteStorage extends SQLStorage {
             + "UNIQUE (`Name`) "
             + ')';
 
+    // SQLite doesn't update the last insert id on conflicts, so the id is returned explicitly
+    protected static final String UPSERT_CLAUSE = "ON CONFLICT (`Name`) DO UPDATE SET `UUID`=excluded.`UUID`, "
+            + "`Name`=excluded.`Name`, `Premium`=excluded.`Premium`, `Floodgate`=excluded.`Floodgate`, "
+            + "`LastIp`=excluded.`LastIp`, `LastLogin`=CURRENT_TIMESTAMP";
+    protected static final String UPSERT_PROFILE_COMPACT = INSERT_PROFILE_COMPACT + UPSERT_CLAUSE
+            + ", `UUIDBin`=excluded.`UUIDBin`, `LastIpBin`=excluded.`LastIpBin` RETURNING `UserID`";
+    protected static final String UPSERT_PROFILE_BINARY = INSERT_PROFILE_BINARY + "ON CONFLICT (`Name`) DO UPDATE SET "
+            + "`Name`=excluded.`Name`, `Premium`=excluded.`Premium`, `Floodgate`=excluded.`Floodgate`, "
+            + "`UUIDBin`=excluded.`UUIDBin`, `LastIpBin`=excluded.`LastIpBin`, `LastLogin`=CURRENT_TIMESTAMP "
+            + "RETURNING `UserID`";
+
+    protected static final String LOAD_COMPACT_CHUNK = "SELECT `UserID`, `UUID`, `LastIp` FROM `" + PREMIUM_TABLE
+            + "` WHERE `UserID`>? AND `UserID`<=?";
+    protected static final String UPDATE_COMPACT_CHUNK = "UPDATE `" + PREMIUM_TABLE
+            + "` SET `UUIDBin`=?, `LastIpBin`=? WHERE `UserID`=?";
+
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    // RETURNING clause
+    private static final int[] UPSERT_MIN_VERSION = {3, 35};
+    private static final int[] DROP_COLUMN_MIN_VERSION = {3, 35};
+
     private static final String SQLITE_DRIVER = "org.sqlite.SQLiteDataSource";
     private final Lock lock = new ReentrantLock();
 
+    private final boolean wal;
+    private volatile boolean upsertSupported;
+    private final HikariDataSource readDataSource;
+
     public SQLiteStorage(PlatformPlugin<?> plugin, String databasePath, HikariConfig config) {
+        this(plugin, databasePath, config, false, 0);
+    }
+
+    /**
+     * @param wal use write-ahead logging with separate connections for reading
+     * @param readConnections number of connections for reading in WAL mode
+     */
+    public SQLiteStorage(PlatformPlugin<?> plugin, String databasePath, HikariConfig config,
+                         boolean wal, int readConnections) {
         super(plugin.getLog(), plugin.getName(), plugin.getThreadFactory(),
-                setParams(config, replacePathVariables(plugin.getPluginFolder(), databasePath)));
+                setParams(config, replacePathVariables(plugin.getPluginFolder(), databasePath), wal));
+
+        this.wal = wal;
+        if (wal) {
+            // the writer pool is already created, so the database file and the WAL mode exist for the readers
+            HikariConfig readConfig = new HikariConfig();
+            config.copyStateTo(readConfig);
+            readConfig.setPoolName(plugin.getName() + "-Read");
+            readConfig.setMaximumPoolSize(readConnections);
+            this.readDataSource = new HikariDataSource(readConfig);
+        } else {
+            this.readDataSource = null;
+        }
     }
 
-    private static HikariConfig setParams(HikariConfig config, String path) {
+    private static HikariConfig setParams(HikariConfig config, String path, boolean wal) {
         config.setDataSourceClassName(SQLITE_DRIVER);
 
         config.setConnectionTestQuery("SELECT 1");
+        // SQLite allows only a single writer at a time
         config.setMaximumPoolSize(1);
 
         config.addDataSourceProperty("url", JDBC.PREFIX + path);
 
+        SQLiteConfig sqLiteConfig = new SQLiteConfig();
+        if (wal) {
+            // readers no longer block the writer and the other way around
+            sqLiteConfig.setJournalMode(JournalMode.WAL);
+            // only sync the WAL on checkpoints - a power loss could lose the latest commits, but never corrupts
+            // the database
+            sqLiteConfig.setSynchronous(SynchronousMode.NORMAL);
+        }
+
         // a try to fix https://www.spigotmc.org/threads/fastlogin.101192/page-26#post-1874647
         // format strings retrieved by the timestamp column to match them from MySQL
         // vs the default: yyyy-MM-dd HH:mm:ss.SSS
         try {
             SQLiteConfig.class.getDeclaredMethod("setDateStringFormat", String.class);
-
-            SQLiteConfig sqLiteConfig = new SQLiteConfig();
             sqLiteConfig.setDateStringFormat("yyyy-MM-dd HH:mm:ss");
-            config.addDataSourceProperty("config", sqLiteConfig);
         } catch (NoSuchMethodException noSuchMethodException) {
             // Versions below this driver version do set the default timestamp value, so this change is not necessary
         }
 
+        config.addDataSourceProperty("config", sqLiteConfig);
         return config;
     }
 
+    @Override
+    protected int getExecutorThreads() {
+        if (wal) {
+            return dataSource.getMaximumPoolSize() + readDataSource.getMaximumPoolSize();
+        }
+
+        // every operation takes the same lock
+        return 1;
+    }
+
+    public boolean isWal() {
+        return wal;
+    }
+
+    @Override
+    protected Connection getReadConnection() throws SQLException {
+        if (wal) {
+            return readDataSource.getConnection();
+        }
+
+        return super.getReadConnection();
+    }
+
     @Override
     public StoredProfile loadProfile(String name) {
+        if (wal) {
+            // readers only see committed data and don't have to wait for the writer
+            return super.loadProfile(name);
+        }
+
         lock.lock();
         try {
             return super.loadProfile(name);
@@ -92,6 +185,10 @@ public class SQLiteStorage extends SQLStorage {
 
     @Override
     public StoredProfile loadProfile(UUID uuid) {
+        if (wal) {
+            return super.loadProfile(uuid);
+        }
+
         lock.lock();
         try {
             return super.loadProfile(uuid);
@@ -101,10 +198,20 @@ public class SQLiteStorage extends SQLStorage {
     }
 
     @Override
-    public void save(StoredProfile playerProfile) {
+    protected void write(StoredProfile playerProfile) throws SQLException {
         lock.lock();
         try {
-            super.save(playerProfile);
+            super.write(playerProfile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveBatch(Collection<StoredProfile> profiles) throws SQLException {
+        lock.lock();
+        try {
+            super.saveBatch(profiles);
         } finally {
             lock.unlock();
         }
@@ -116,6 +223,122 @@ public class SQLiteStorage extends SQLStorage {
         return CREATE_TABLE_STMT.replace("AUTO_INCREMENT", "AUTOINCREMENT");
     }
 
+    @Override
+    public void createTables() throws SQLException {
+        super.createTables();
+
+        try (Connection con = getWriteConnection()) {
+            // servers could ship an older driver than we compile against
+            String version = con.getMetaData().getDatabaseProductVersion();
+            upsertSupported = isAtLeast(version, UPSERT_MIN_VERSION);
+            if (!upsertSupported) {
+                log.warn("SQLite {} doesn't support upserts. Concurrent first joins of the same name could fail",
+                        version);
+            }
+        }
+    }
+
+    @Override
+    protected void upsertProfile(Connection con, StoredProfile playerProfile) throws SQLException {
+        if (!upsertSupported) {
+            insertProfile(con, playerProfile);
+            return;
+        }
+
+        try (PreparedStatement saveStmt = con.prepareStatement(getUpsertStmt())) {
+            bindInsert(saveStmt, playerProfile);
+
+            try (ResultSet resultSet = saveStmt.executeQuery()) {
+                if (resultSet.next()) {
+                    playerProfile.setRowId(resultSet.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Override
+    protected String getUpsertStmt() {
+        if (!hasTextColumns()) {
+            return UPSERT_PROFILE_BINARY;
+        }
+
+        return UPSERT_PROFILE_COMPACT;
+    }
+
+    @Override
+    protected void convertCompactChunk(Connection con, long fromId, long toId) throws SQLException {
+        // SQLite has no functions to convert IP addresses. Converting them here is still safe, because this is the
+        // only writing connection. There cannot be concurrent writes between reading and updating a row.
+        try (PreparedStatement loadStmt = con.prepareStatement(LOAD_COMPACT_CHUNK);
+             PreparedStatement updateStmt = con.prepareStatement(UPDATE_COMPACT_CHUNK)) {
+            loadStmt.setLong(1, fromId);
+            loadStmt.setLong(2, toId);
+            try (ResultSet resultSet = loadStmt.executeQuery()) {
+                while (resultSet.next()) {
+                    UUID uuid = Optional.ofNullable(resultSet.getString("UUID")).map(UUIDAdapter::parseId)
+                            .orElse(null);
+
+                    updateStmt.setBytes(1, CompactFormat.toBytes(uuid));
+                    updateStmt.setBytes(2, CompactFormat.ipToBytes(resultSet.getString("LastIp")));
+                    updateStmt.setLong(3, resultSet.getLong("UserID"));
+                    updateStmt.addBatch();
+                }
+            }
+
+            updateStmt.executeBatch();
+        }
+    }
+
+    @Override
+    protected boolean dropTextColumns(Connection con) throws SQLException {
+        String version = con.getMetaData().getDatabaseProductVersion();
+        if (!isAtLeast(version, DROP_COLUMN_MIN_VERSION)) {
+            log.warn("SQLite {} cannot remove columns. The text columns of the compact format are kept", version);
+            return false;
+        }
+
+        // SQLite neither drops indexed columns nor multiple columns in one statement
+        if (!isIndexMissing(con.getMetaData(), UUID_INDEX)) {
+            executeUpdate(con, "DROP INDEX `" + UUID_INDEX + '`');
+        }
+
+        executeUpdate(con, "ALTER TABLE `" + PREMIUM_TABLE + "` DROP COLUMN `UUID`");
+        executeUpdate(con, "ALTER TABLE `" + PREMIUM_TABLE + "` DROP COLUMN `LastIp`");
+        return true;
+    }
+
+    @Override
+    protected boolean isConstraintViolation(SQLException sqlEx) {
+        // the driver doesn't set an SQL state - the vendor code is the primary result code of SQLite
+        return super.isConstraintViolation(sqlEx) || (sqlEx.getErrorCode() & 0xFF) == SQLITE_CONSTRAINT;
+    }
+
+    @Override
+    protected String getBinaryType(int length, boolean fixed) {
+        return "BLOB";
+    }
+
+    @Override
+    public void close() {
+        if (readDataSource != null) {
+            readDataSource.close();
+        }
+
+        super.close();
+    }
+
+    private static boolean isAtLeast(String version, int[] required) {
+        String[] parts = version.split("\\.");
+        for (int i = 0; i < required.length; i++) {
+            int part = i < parts.length ? Integer.parseInt(parts[i].replaceAll("\\D.*", "")) : 0;
+            if (part != required[i]) {
+                return part > required[i];
+            }
+        }
+
+        return true;
+    }
+
     private static String replacePathVariables(Path dataFolder, String input) {
         String pluginFolder = dataFolder.toAbsolutePath().toString();
         return input.replace("{pluginDir}", pluginFolder);
@@ -0,0 +1,397 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only file of profile saves that failed, because the database was unavailable. Records are written
+ * sequentially to a {@link RecordLog} and synced to the disk in batches, so a partially written record after a crash is
+ * detected and discarded.
+ */
+public class SaveJournal {
+
+    private static final byte FORMAT_VERSION = 2;
+    // without the confirmed new flag
+    private static final byte LEGACY_FORMAT_VERSION = 1;
+
+    private final Logger log;
+    private final RecordLog recordLog;
+    private final long maxSize;
+
+    private final ScheduledExecutorService executor;
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by lock
+    private final Set<String> pendingNames = new HashSet<>();
+    private int pendingRecords;
+    private boolean dirty;
+
+    private final AtomicLong journaledSaves = new AtomicLong();
+    private final AtomicLong replayedSaves = new AtomicLong();
+    private final AtomicLong droppedSaves = new AtomicLong();
+    private final AtomicLong failedReplays = new AtomicLong();
+    private volatile Instant lastReplay;
+
+    /**
+     * @param maxSize maximum file size in bytes
+     * @param syncInterval milliseconds between two disk syncs
+     */
+    public SaveJournal(Logger log, Path file, long maxSize, ThreadFactory threadFactory, long syncInterval) {
+        this.log = log;
+        this.recordLog = new RecordLog(file);
+        this.maxSize = maxSize;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        executor.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal file and loads the names of the contained profiles. A damaged end of the file is truncated.
+     *
+     * @throws IOException if the file couldn't be opened
+     */
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            List<StoredProfile> profiles = new ArrayList<>();
+            long discarded = recordLog.open(payload -> profiles.add(decode(payload)));
+            if (discarded > 0) {
+                log.warn("Discarded {} damaged bytes at the end of the save journal", discarded);
+            }
+
+            resetPending(profiles);
+            if (pendingRecords > 0) {
+                log.info("Save journal contains {} profile changes that are not written to the database",
+                        pendingRecords);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the given task periodically on the thread of this journal.
+     *
+     * @param replayTask task that writes the journal to the database
+     * @param interval seconds between two runs
+     */
+    public void scheduleReplay(Runnable replayTask, long interval) {
+        executor.scheduleWithFixedDelay(replayTask, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param profile profile that couldn't be saved
+     * @return true if the profile was written to the journal, false if it's full or not writable
+     */
+    public boolean append(StoredProfile profile) {
+        byte[] record = encode(profile);
+
+        lock.lock();
+        try {
+            return write(profile, record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the profile only if there are already older changes of it in the journal. Writing it directly to the
+     * database would be overwritten by the replay of the older change.
+     *
+     * @param profile profile to save
+     * @return true if the profile was appended
+     */
+    public boolean appendIfPending(StoredProfile profile) {
+        String key = profile.getName().toLowerCase(Locale.ROOT);
+
+        lock.lock();
+        try {
+            if (!pendingNames.contains(key)) {
+                return false;
+            }
+
+            // a full journal would lose the change either way
+            if (!write(profile, encode(profile))) {
+                log.error("Dropped change of {}, because the save journal is full", profile.getName());
+            }
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return all journaled profiles in the order of their saves
+     * @throws IOException if the journal couldn't be read
+     */
+    public Snapshot snapshot() throws IOException {
+        lock.lock();
+        try {
+            long end = recordLog.getSize();
+            List<StoredProfile> profiles = new ArrayList<>(pendingRecords);
+            recordLog.read(0, end, payload -> profiles.add(decode(payload)));
+            return new Snapshot(profiles, end);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the records of the given snapshot after they are written to the database. Records appended after the
+     * snapshot are kept.
+     *
+     * @param snapshot replayed snapshot
+     * @throws IOException if the journal couldn't be rewritten
+     */
+    public void commit(Snapshot snapshot) throws IOException {
+        lock.lock();
+        try {
+            List<byte[]> remaining = new ArrayList<>();
+            recordLog.read(snapshot.end, recordLog.getSize(), remaining::add);
+
+            // only the records appended after the snapshot are kept
+            recordLog.rewrite(remaining);
+            dirty = false;
+
+            List<StoredProfile> profiles = new ArrayList<>(remaining.size());
+            for (byte[] payload : remaining) {
+                profiles.add(decode(payload));
+            }
+
+            resetPending(profiles);
+            replayedSaves.addAndGet(snapshot.profiles.size());
+            lastReplay = Instant.now();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordFailedReplay() {
+        failedReplays.incrementAndGet();
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return pendingRecords == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingRecords() {
+        lock.lock();
+        try {
+            return pendingRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSize() {
+        lock.lock();
+        try {
+            return recordLog.getSize();
+        } catch (IOException ioEx) {
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getJournaledSaves() {
+        return journaledSaves.get();
+    }
+
+    public long getReplayedSaves() {
+        return replayedSaves.get();
+    }
+
+    public long getDroppedSaves() {
+        return droppedSaves.get();
+    }
+
+    public long getFailedReplays() {
+        return failedReplays.get();
+    }
+
+    /**
+     * @return time of the last successful replay or null if none happened yet
+     */
+    public Instant getLastReplay() {
+        return lastReplay;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+
+        lock.lock();
+        try {
+            recordLog.close();
+        } catch (IOException ioEx) {
+            log.error("Failed to close save journal", ioEx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean write(StoredProfile profile, byte[] record) {
+        try {
+            if (recordLog.getSize() + RecordLog.getRecordSize(record) > maxSize) {
+                droppedSaves.incrementAndGet();
+                return false;
+            }
+
+            recordLog.append(record);
+        } catch (IOException ioEx) {
+            log.error("Failed to write {} to the save journal", profile, ioEx);
+            droppedSaves.incrementAndGet();
+            return false;
+        }
+
+        dirty = true;
+        pendingRecords++;
+        pendingNames.add(profile.getName().toLowerCase(Locale.ROOT));
+        journaledSaves.incrementAndGet();
+        return true;
+    }
+
+    private void sync() {
+        lock.lock();
+        try {
+            // batches all appends since the last sync into a single disk flush
+            if (dirty) {
+                recordLog.sync();
+                dirty = false;
+            }
+        } catch (IOException ioEx) {
+            log.error("Failed to sync save journal", ioEx);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resetPending(List<StoredProfile> profiles) {
+        pendingRecords = profiles.size();
+        pendingNames.clear();
+        for (StoredProfile profile : profiles) {
+            pendingNames.add(profile.getName().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static byte[] encode(StoredProfile profile) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(profile.getRowId());
+
+            UUID uuid = profile.getId();
+            out.writeBoolean(uuid != null);
+            if (uuid != null) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+
+            out.writeUTF(profile.getName());
+            out.writeBoolean(profile.isPremium());
+            out.writeInt(profile.getFloodgate().getValue());
+            out.writeUTF(profile.getLastIp() == null ? "" : profile.getLastIp());
+            out.writeBoolean(profile.isConfirmedNew());
+        } catch (IOException ioEx) {
+            // cannot happen for in memory streams
+            throw new IllegalStateException(ioEx);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static StoredProfile decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION && version != LEGACY_FORMAT_VERSION) {
+                throw new IOException("Unknown save journal format " + version);
+            }
+
+            long rowId = in.readLong();
+            UUID uuid = null;
+            if (in.readBoolean()) {
+                uuid = new UUID(in.readLong(), in.readLong());
+            }
+
+            String name = in.readUTF();
+            boolean premium = in.readBoolean();
+            FloodgateState floodgate = FloodgateState.fromInt(in.readInt());
+            String lastIp = in.readUTF();
+            StoredProfile profile = new StoredProfile(rowId, uuid, name, premium, floodgate, lastIp, Instant.now());
+            profile.setConfirmedNew(version != LEGACY_FORMAT_VERSION && in.readBoolean());
+            return profile;
+        }
+    }
+
+    public static class Snapshot {
+
+        private final List<StoredProfile> profiles;
+        private final long end;
+
+        private Snapshot(List<StoredProfile> profiles, long end) {
+            this.profiles = Collections.unmodifiableList(profiles);
+            this.end = end;
+        }
+
+        public List<StoredProfile> getProfiles() {
+            return profiles;
+        }
+    }
+}
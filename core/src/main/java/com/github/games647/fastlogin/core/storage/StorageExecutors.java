@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for the executors that run the blocking database calls behind the asynchronous storage methods.
+ */
+public final class StorageExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private StorageExecutors() {
+        // utility class
+    }
+
+    /**
+     * Creates an executor with a fixed number of threads and a bounded queue. Tasks are rejected if the queue is full,
+     * so a stalled database cannot pile up an unbounded number of waiting tasks.
+     *
+     * @param threads maximum number of threads - there is no benefit in exceeding the number of database connections
+     * @param queueCapacity number of tasks waiting for a free thread
+     * @param threadFactory factory for the worker threads
+     * @return the new executor
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(int threads, int queueCapacity, ThreadFactory threadFactory) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates an executor with a fixed number of threads that queues all tasks without a limit. This is intended for
+     * writes that must not be dropped if the database is slow.
+     *
+     * @param threads maximum number of threads
+     * @param threadFactory factory for the worker threads
+     * @return the new executor
+     */
+    public static ThreadPoolExecutor newUnboundedExecutor(int threads, ThreadFactory threadFactory) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(Supplier, Executor)}, but a rejected task completes the future
+     * exceptionally instead of throwing to the caller.
+     *
+     * @param supplier blocking operation
+     * @param executor executor running the operation
+     * @param <T> result type
+     * @return future completed with the result of the operation
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException rejectedEx) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(rejectedEx);
+            return future;
+        }
+    }
+
+    /**
+     * @param runnable blocking operation
+     * @param executor executor running the operation
+     * @return future completed after the operation finished
+     * @see #supplyAsync(Supplier, Executor)
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
+        }, executor);
+    }
+}
@@ -44,6 +44,9 @@ public class StoredProfile extends Profile {
     private String lastIp;
     private Instant lastLogin;
 
+    // the database had no row for this name when it was loaded
+    private boolean confirmedNew;
+
     public StoredProfile(long rowId, UUID uuid, String playerName, boolean premium, FloodgateState floodgate,
                          String lastIp, Instant lastLogin) {
         super(uuid, playerName);
@@ -64,6 +67,15 @@ public class StoredProfile extends Profile {
         this(-1, uuid, playerName, premium, FloodgateState.FALSE, lastIp, Instant.now());
     }
 
+    /**
+     * @return independent profile with the same values, so changes to one of them don't affect the other
+     */
+    public synchronized StoredProfile copy() {
+        StoredProfile copy = new StoredProfile(rowId, id, name, premium, floodgate, lastIp, lastLogin);
+        copy.confirmedNew = confirmedNew;
+        return copy;
+    }
+
     public ReentrantLock getSaveLock() {
         return saveLock;
     }
@@ -72,6 +84,19 @@ public class StoredProfile extends Profile {
         return rowId >= 0;
     }
 
+    /**
+     * @return true if the database was asked for this name and had no row. Only then may saving it replace a row
+     * with the same name, because such a row can only come from a concurrent first join. Profiles created
+     * without asking the database (like from the name filter) are inserted and fail if the name already exists.
+     */
+    public synchronized boolean isConfirmedNew() {
+        return confirmedNew;
+    }
+
+    public synchronized void setConfirmedNew(boolean confirmedNew) {
+        this.confirmedNew = confirmedNew;
+    }
+
     public synchronized void setPlayerName(String playerName) {
         this.name = playerName;
     }
@@ -0,0 +1,308 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.slf4j.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects profile saves and writes them to the database in batches. Multiple saves of the same profile between two
+ * flushes are coalesced into a single statement. Pending profiles are served to reads, so callers always see their
+ * own changes.
+ */
+public class WriteBehindStorage implements AuthStorage {
+
+    private final Logger log;
+    private final SQLStorage delegate;
+
+    private final int batchSize;
+    private final ScheduledExecutorService flushExecutor;
+
+    // name is unique in the database, so it identifies a profile even if it's not saved yet
+    private final ConcurrentMap<String, StoredProfile> pending = new ConcurrentHashMap<>();
+    // profiles that are currently written, but not yet committed
+    private final ConcurrentMap<String, StoredProfile> flushing = new ConcurrentHashMap<>();
+    private final Lock flushLock = new ReentrantLock();
+
+    private final AtomicLong coalescedSaves = new AtomicLong();
+    private final AtomicLong flushedProfiles = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public WriteBehindStorage(Logger log, SQLStorage delegate, ThreadFactory threadFactory,
+                              long flushInterval, int batchSize) {
+        this.log = log;
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public StoredProfile loadProfile(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        StoredProfile profile = pending.get(key);
+        if (profile == null) {
+            profile = flushing.get(key);
+        }
+
+        if (profile == null) {
+            return delegate.loadProfile(name);
+        }
+
+        return profile;
+    }
+
+    @Override
+    public StoredProfile loadProfile(UUID uuid) {
+        // only a few entries are pending at a time, so a scan is cheaper than maintaining a second index
+        for (StoredProfile profile : pending.values()) {
+            if (uuid.equals(profile.getId())) {
+                return profile;
+            }
+        }
+
+        for (StoredProfile profile : flushing.values()) {
+            if (uuid.equals(profile.getId())) {
+                return profile;
+            }
+        }
+
+        return delegate.loadProfile(uuid);
+    }
+
+    @Override
+    public void save(StoredProfile playerProfile) {
+        String key = playerProfile.getName().toLowerCase(Locale.ROOT);
+        if (pending.put(key, playerProfile) != null) {
+            coalescedSaves.incrementAndGet();
+        }
+
+        if (pending.size() >= batchSize) {
+            try {
+                flushExecutor.execute(this::flush);
+            } catch (RejectedExecutionException rejectedEx) {
+                // shutting down - close() will write the remaining profiles
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(StoredProfile playerProfile) {
+        // queueing never blocks, the flush task performs the actual write
+        save(playerProfile);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return delegate.getExecutor();
+    }
+
+    /**
+     * Writes all pending profiles to the database. If the database is unavailable, the profiles of the failed batch
+     * stay queued unless they were saved again in the meantime. Profiles that cannot be written for other reasons are
+     * dropped, so they don't block the other profiles.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                List<StoredProfile> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+                for (Entry<String, StoredProfile> entry : pending.entrySet()) {
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+
+                    String key = entry.getKey();
+                    StoredProfile profile = entry.getValue();
+                    if (pending.remove(key, profile)) {
+                        flushing.put(key, profile);
+                        batch.add(profile);
+                    }
+                }
+
+                if (!writeBatch(batch)) {
+                    break;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean writeBatch(List<StoredProfile> batch) {
+        long start = System.nanoTime();
+        try {
+            delegate.saveBatch(batch);
+            flushedProfiles.addAndGet(batch.size());
+            return true;
+        } catch (SQLException sqlEx) {
+            failedFlushes.incrementAndGet();
+            if (delegate.isConnectionFailure(sqlEx)) {
+                log.error("Failed to write {} pending profiles - retrying on the next flush", batch.size(), sqlEx);
+                requeue(batch);
+                return false;
+            }
+
+            // retrying wouldn't help - find the profiles that cannot be written, so they don't block the others
+            return writeIndividually(batch);
+        } finally {
+            for (StoredProfile profile : batch) {
+                flushing.remove(profile.getName().toLowerCase(Locale.ROOT), profile);
+            }
+
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    private boolean writeIndividually(List<StoredProfile> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            StoredProfile profile = batch.get(i);
+            try {
+                delegate.saveBatch(Collections.singletonList(profile));
+                flushedProfiles.incrementAndGet();
+            } catch (SQLException sqlEx) {
+                if (delegate.isConnectionFailure(sqlEx)) {
+                    log.error("Failed to write {} pending profiles - retrying on the next flush", batch.size() - i,
+                            sqlEx);
+                    requeue(batch.subList(i, batch.size()));
+                    return false;
+                }
+
+                log.error("Dropped pending profile {}, because it cannot be written", profile, sqlEx);
+            }
+        }
+
+        return true;
+    }
+
+    private void requeue(Collection<StoredProfile> profiles) {
+        for (StoredProfile profile : profiles) {
+            // don't override a newer save
+            pending.putIfAbsent(profile.getName().toLowerCase(Locale.ROOT), profile);
+        }
+    }
+
+    private void recordLatency(long duration) {
+        flushes.incrementAndGet();
+        totalFlushNanos.addAndGet(duration);
+        lastFlushNanos = duration;
+        if (duration > maxFlushNanos) {
+            maxFlushNanos = duration;
+        }
+    }
+
+    public int getQueueDepth() {
+        return pending.size() + flushing.size();
+    }
+
+    public long getCoalescedSaves() {
+        return coalescedSaves.get();
+    }
+
+    public long getFlushedProfiles() {
+        return flushedProfiles.get();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.get();
+    }
+
+    public long getLastFlushLatency(TimeUnit unit) {
+        return unit.convert(lastFlushNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxFlushLatency(TimeUnit unit) {
+        return unit.convert(maxFlushNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getAverageFlushLatency(TimeUnit unit) {
+        long count = flushes.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        return unit.convert(totalFlushNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Timed out waiting for the running profile flush");
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        }
+
+        // write everything that is left before the connections are closed
+        flush();
+        if (!pending.isEmpty()) {
+            int journaled = 0;
+            for (StoredProfile profile : pending.values()) {
+                if (delegate.journal(profile)) {
+                    journaled++;
+                }
+            }
+
+            if (journaled > 0) {
+                log.warn("Saved {} pending profiles to the journal on shutdown", journaled);
+            }
+
+            if (journaled < pending.size()) {
+                log.error("Failed to write {} pending profiles on shutdown", pending.size() - journaled);
+            }
+        }
+
+        delegate.close();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single step of the database schema. Steps have to be idempotent, because another server sharing the same
+ * database could run them concurrently or a previous run could be interrupted before the version was recorded.
+ */
+public class Migration {
+
+    private final int version;
+    private final String description;
+    private final Action action;
+
+    public Migration(int version, String description, Action action) {
+        this.version = version;
+        this.description = description;
+        this.action = action;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void apply(Connection con) throws SQLException {
+        action.apply(con);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + '{'
+                + "version=" + version
+                + ", description='" + description + '\''
+                + '}';
+    }
+
+    @FunctionalInterface
+    public interface Action {
+
+        void apply(Connection con) throws SQLException;
+    }
+}
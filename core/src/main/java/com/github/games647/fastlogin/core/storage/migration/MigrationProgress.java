@@ -0,0 +1,115 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Persists the position of a long-running data migration. This allows it to continue after a restart instead of
+ * starting over.
+ */
+public class MigrationProgress {
+
+    public static final String PROGRESS_TABLE = "fastlogin_migration_progress";
+
+    private static final String CREATE_PROGRESS_TABLE_STMT = "CREATE TABLE IF NOT EXISTS `" + PROGRESS_TABLE + "` ("
+            + "`Name` VARCHAR(64) PRIMARY KEY, "
+            + "`LastId` BIGINT NOT NULL, "
+            + "`Done` BOOLEAN NOT NULL"
+            + ')';
+
+    private static final String LOAD_PROGRESS = "SELECT `LastId`, `Done` FROM `" + PROGRESS_TABLE
+            + "` WHERE `Name`=?";
+    private static final String DELETE_PROGRESS = "DELETE FROM `" + PROGRESS_TABLE + "` WHERE `Name`=?";
+    private static final String INSERT_PROGRESS = "INSERT INTO `" + PROGRESS_TABLE
+            + "` (`Name`, `LastId`, `Done`) VALUES (?, ?, ?)";
+    private static final String UPDATE_PROGRESS = "UPDATE `" + PROGRESS_TABLE
+            + "` SET `LastId`=?, `Done`=? WHERE `Name`=?";
+
+    private final String name;
+
+    public MigrationProgress(String name) {
+        this.name = name;
+    }
+
+    public void createTable(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(CREATE_PROGRESS_TABLE_STMT);
+        }
+    }
+
+    /**
+     * @param con database connection
+     * @return the last processed row id or 0 if the migration didn't start yet
+     * @throws SQLException on failure
+     */
+    public long loadLastId(Connection con) throws SQLException {
+        try (PreparedStatement loadStmt = con.prepareStatement(LOAD_PROGRESS)) {
+            loadStmt.setString(1, name);
+            try (ResultSet resultSet = loadStmt.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    public boolean isDone(Connection con) throws SQLException {
+        try (PreparedStatement loadStmt = con.prepareStatement(LOAD_PROGRESS)) {
+            loadStmt.setString(1, name);
+            try (ResultSet resultSet = loadStmt.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(2);
+            }
+        }
+    }
+
+    public void save(Connection con, long lastId, boolean done) throws SQLException {
+        try (PreparedStatement updateStmt = con.prepareStatement(UPDATE_PROGRESS)) {
+            updateStmt.setLong(1, lastId);
+            updateStmt.setBoolean(2, done);
+            updateStmt.setString(3, name);
+            if (updateStmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+
+        try (PreparedStatement insertStmt = con.prepareStatement(INSERT_PROGRESS)) {
+            insertStmt.setString(1, name);
+            insertStmt.setLong(2, lastId);
+            insertStmt.setBoolean(3, done);
+            insertStmt.executeUpdate();
+        }
+    }
+
+    public void delete(Connection con) throws SQLException {
+        try (PreparedStatement deleteStmt = con.prepareStatement(DELETE_PROGRESS)) {
+            deleteStmt.setString(1, name);
+            deleteStmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage.migration;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Applies all migrations that are newer than the version recorded in the version table. If the schema is already
+ * up-to-date, startup only costs a single query.
+ */
+public class SchemaMigrator {
+
+    public static final String VERSION_TABLE = "fastlogin_schema_version";
+
+    private static final String CREATE_VERSION_TABLE_STMT = "CREATE TABLE IF NOT EXISTS `" + VERSION_TABLE + "` ("
+            + "`Version` INTEGER PRIMARY KEY, "
+            + "`Description` VARCHAR(255) NOT NULL, "
+            + "`InstalledOn` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"
+            + ')';
+
+    private static final String LOAD_VERSION = "SELECT MAX(`Version`) FROM `" + VERSION_TABLE + '`';
+    private static final String INSERT_VERSION = "INSERT INTO `" + VERSION_TABLE
+            + "` (`Version`, `Description`) VALUES (?, ?)";
+
+    private final Logger log;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(Logger log, List<Migration> migrations) {
+        this.log = log;
+
+        this.migrations = new ArrayList<>(migrations);
+        this.migrations.sort(Comparator.comparingInt(Migration::getVersion));
+    }
+
+    /**
+     * @return the latest version known by this plugin version
+     */
+    public int getLatestVersion() {
+        if (migrations.isEmpty()) {
+            return 0;
+        }
+
+        return migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    /**
+     * Brings the schema to the latest version.
+     *
+     * @param con database connection in auto commit mode
+     * @return the number of applied migrations
+     * @throws SQLException if a migration failed. Already applied migrations stay recorded.
+     */
+    public int migrate(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(CREATE_VERSION_TABLE_STMT);
+        }
+
+        int currentVersion = getCurrentVersion(con);
+        int latestVersion = getLatestVersion();
+        if (currentVersion > latestVersion) {
+            log.warn("Database schema version {} is newer than the supported version {}. "
+                    + "Did you downgrade the plugin?", currentVersion, latestVersion);
+            return 0;
+        }
+
+        int applied = 0;
+        for (Migration migration : migrations) {
+            if (migration.getVersion() <= currentVersion) {
+                continue;
+            }
+
+            log.info("Migrating database schema to version {}: {}", migration.getVersion(),
+                    migration.getDescription());
+            migration.apply(con);
+            recordVersion(con, migration);
+            applied++;
+        }
+
+        return applied;
+    }
+
+    private int getCurrentVersion(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery(LOAD_VERSION)) {
+            // MAX returns null and so 0 for an empty table
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private void recordVersion(Connection con, Migration migration) throws SQLException {
+        try (PreparedStatement insertStmt = con.prepareStatement(INSERT_VERSION)) {
+            insertStmt.setInt(1, migration.getVersion());
+            insertStmt.setString(2, migration.getDescription());
+            insertStmt.executeUpdate();
+        } catch (SQLException sqlEx) {
+            // another server sharing this database could have applied the same migration concurrently
+            if (getCurrentVersion(con) < migration.getVersion()) {
+                throw sqlEx;
+            }
+        }
+    }
+}
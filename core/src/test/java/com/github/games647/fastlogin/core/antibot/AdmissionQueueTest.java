@@ -0,0 +1,132 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionQueueTest {
+
+    private static final long MAX_WAIT = 10;
+
+    private final ManualTicker ticker = new ManualTicker();
+    // started checks that didn't run yet
+    private final Deque<Runnable> started = new ArrayDeque<>();
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private final AdmissionQueue queue = new AdmissionQueue(LoggerFactory.getLogger(AdmissionQueueTest.class),
+            ticker, started::addLast, 3, 2, MAX_WAIT, TimeUnit.SECONDS, Executors.defaultThreadFactory());
+
+    @AfterEach
+    void tearDown() {
+        queue.close();
+    }
+
+    @Test
+    void limitsRunningChecksInArrivalOrder() {
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(offer("check-" + i));
+        }
+
+        assertFalse(offer("check-6"));
+        assertEquals(2, started.size());
+        assertEquals(3, queue.getDepth());
+        assertEquals(1, queue.getRejected());
+
+        while (!started.isEmpty()) {
+            started.pollFirst().run();
+        }
+
+        assertEquals(Arrays.asList("check-1", "check-2", "check-3", "check-4", "check-5"), events);
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, queue.getRunning());
+        assertEquals(5, queue.getAdmitted());
+    }
+
+    @Test
+    void expiresLongWaitingEntries() {
+        offer("check-1");
+        offer("check-2");
+        offer("check-3");
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(MAX_WAIT) + 1);
+        offer("check-4");
+        started.pollFirst().run();
+
+        // the third one waited too long, but the new one is still in time - the expire thread could be first
+        assertEquals(new HashSet<>(Arrays.asList("check-1", "expired-3")), new HashSet<>(events));
+        assertEquals(1, queue.getExpired());
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    void continuesWaitingOnClose() {
+        offer("check-1");
+        offer("check-2");
+        offer("check-3");
+
+        queue.close();
+        assertEquals(Arrays.asList("expired-3"), events);
+        assertFalse(offer("check-4"));
+    }
+
+    private boolean offer(String name) {
+        String id = name.substring(name.indexOf('-') + 1);
+        return queue.offer(() -> events.add(name), () -> events.add("expired-" + id));
+    }
+
+    private static class ManualTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttackModeDetectorTest {
+
+    private static final long WINDOW = 10;
+    private static final long COOLDOWN = 30;
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final AttackModeDetector detector = new AttackModeDetector(
+            LoggerFactory.getLogger(AttackModeDetectorTest.class), ticker, WINDOW, 5, 2, COOLDOWN, false);
+
+    @Test
+    void entersAtThreshold() {
+        connect(4);
+        assertFalse(detector.isActive());
+
+        connect(1);
+        assertTrue(detector.isActive());
+        assertEquals(1, detector.getActivations());
+    }
+
+    @Test
+    void exitsWithoutFurtherConnections() {
+        connect(5);
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(WINDOW + COOLDOWN) - 1);
+        assertTrue(detector.isActive());
+        assertEquals(0, detector.getConnections());
+
+        ticker.advance(1);
+        assertFalse(detector.isActive());
+    }
+
+    @Test
+    void connectionsBelowExitThresholdDoNotExtend() {
+        connect(5);
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(20));
+        connect(2);
+        assertTrue(detector.isActive());
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(20));
+        assertFalse(detector.isActive());
+    }
+
+    @Test
+    void attackWaveRestartsCooldown() {
+        connect(5);
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(20));
+        // above the exit threshold, but below the enter threshold
+        connect(3);
+
+        ticker.advance(TimeUnit.SECONDS.toMillis(WINDOW + COOLDOWN) - 1);
+        assertTrue(detector.isActive());
+
+        ticker.advance(1);
+        assertFalse(detector.isActive());
+        assertEquals(1, detector.getActivations());
+    }
+
+    @Test
+    void reentersAfterExit() {
+        connect(5);
+        ticker.advance(TimeUnit.SECONDS.toMillis(WINDOW + COOLDOWN));
+        assertFalse(detector.isActive());
+
+        connect(4);
+        assertFalse(detector.isActive());
+        connect(1);
+        assertTrue(detector.isActive());
+        assertEquals(2, detector.getActivations());
+    }
+
+    private void connect(int connections) {
+        for (int i = 0; i < connections; i++) {
+            detector.onConnection();
+        }
+    }
+
+    private static class ManualTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
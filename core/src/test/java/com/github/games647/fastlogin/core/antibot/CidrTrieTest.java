@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.net.InetAddresses;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CidrTrieTest {
+
+    @Test
+    void matchesIpv4Ranges() {
+        CidrTrie trie = new CidrTrie.Builder()
+                .add(InetAddresses.forString("192.0.2.0"), 24)
+                .add(InetAddresses.forString("198.51.100.7"), 32)
+                .add(InetAddresses.forString("10.0.0.0"), 8)
+                .build();
+
+        assertTrue(trie.contains(InetAddresses.forString("192.0.2.255")));
+        assertFalse(trie.contains(InetAddresses.forString("192.0.3.0")));
+        assertTrue(trie.contains(InetAddresses.forString("198.51.100.7")));
+        assertFalse(trie.contains(InetAddresses.forString("198.51.100.8")));
+        assertTrue(trie.contains(InetAddresses.forString("10.200.1.1")));
+        assertFalse(trie.contains(InetAddresses.forString("11.0.0.0")));
+    }
+
+    @Test
+    void ignoresHostBitsAndCoveredRanges() {
+        CidrTrie trie = new CidrTrie.Builder()
+                .add(InetAddresses.forString("203.0.113.0"), 28)
+                .add(InetAddresses.forString("203.0.113.77"), 24)
+                .build();
+
+        assertTrue(trie.contains(InetAddresses.forString("203.0.113.200")));
+        assertFalse(trie.contains(InetAddresses.forString("203.0.114.1")));
+    }
+
+    @Test
+    void matchesIpv6Ranges() {
+        CidrTrie trie = new CidrTrie.Builder()
+                .add(InetAddresses.forString("2001:db8::"), 32)
+                .add(InetAddresses.forString("2001:db8:ffff:1::"), 64)
+                .add(InetAddresses.forString("2a00::1"), 128)
+                .build();
+
+        assertTrue(trie.contains(InetAddresses.forString("2001:db8:1234::1")));
+        assertFalse(trie.contains(InetAddresses.forString("2001:db9::1")));
+        assertTrue(trie.contains(InetAddresses.forString("2a00::1")));
+        assertFalse(trie.contains(InetAddresses.forString("2a00::2")));
+
+        // separate from IPv4
+        assertFalse(trie.contains(InetAddresses.forString("32.1.13.184")));
+    }
+
+    @Test
+    void emptyMatchesNothing() {
+        assertFalse(CidrTrie.empty().contains(InetAddresses.forString("127.0.0.1")));
+        assertFalse(CidrTrie.empty().contains(InetAddresses.forString("::1")));
+    }
+}
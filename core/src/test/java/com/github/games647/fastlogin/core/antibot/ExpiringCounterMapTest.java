@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringCounterMapTest {
+
+    private static final long WINDOW = 1_000;
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @Test
+    void limitsEachKey() {
+        ExpiringCounterMap counters = new ExpiringCounterMap(ticker, 64, WINDOW);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(counters.tryAcquire(1, 3));
+        }
+
+        assertFalse(counters.tryAcquire(1, 3));
+        assertTrue(counters.tryAcquire(2, 3));
+        assertEquals(2, counters.getTracked());
+    }
+
+    @Test
+    void weightsPreviousWindow() {
+        ExpiringCounterMap counters = new ExpiringCounterMap(ticker, 64, WINDOW);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(counters.tryAcquire(1, 3));
+        }
+
+        // the full previous window is still inside the sliding window
+        ticker.advance(WINDOW);
+        assertFalse(counters.tryAcquire(1, 3));
+
+        // only half of the previous window counts: 1.5 + 1 < 3
+        ticker.advance(WINDOW / 2);
+        assertTrue(counters.tryAcquire(1, 3));
+        assertTrue(counters.tryAcquire(1, 3));
+        assertFalse(counters.tryAcquire(1, 3));
+
+        // both windows expired
+        ticker.advance(2 * WINDOW);
+        assertEquals(0, counters.getTracked());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(counters.tryAcquire(1, 3));
+        }
+    }
+
+    @Test
+    void memoryIsBounded() {
+        ExpiringCounterMap counters = new ExpiringCounterMap(ticker, 8, WINDOW);
+        assertEquals(8, counters.getCapacity());
+
+        for (long key = 0; key < 1_000; key++) {
+            assertTrue(counters.tryAcquire(key, 1));
+        }
+
+        assertEquals(counters.getCapacity(), counters.getTracked());
+    }
+
+    @Test
+    void replacesOldestWindow() {
+        // a single set with 8 slots
+        ExpiringCounterMap counters = new ExpiringCounterMap(ticker, 8, WINDOW);
+        assertTrue(counters.tryAcquire(0, 1));
+        assertFalse(counters.tryAcquire(0, 1));
+
+        ticker.advance(WINDOW);
+        for (long key = 1; key <= 8; key++) {
+            assertTrue(counters.tryAcquire(key, 1));
+        }
+
+        // key 0 had the oldest window and was replaced, so its count is gone
+        assertTrue(counters.tryAcquire(0, 1));
+    }
+
+    @Test
+    void collidingKeysDontResetBusyEntry() {
+        // a single set with 8 slots, so every key collides
+        ExpiringCounterMap counters = new ExpiringCounterMap(ticker, 8, WINDOW);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(counters.tryAcquire(0, 5));
+        }
+
+        // spraying other keys in the same window replaces the entries with the fewest requests
+        for (long key = 1; key <= 100; key++) {
+            assertTrue(counters.tryAcquire(key, 5));
+        }
+
+        assertFalse(counters.tryAcquire(0, 5));
+    }
+
+    private static class ManualTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.antibot;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingWindowRateLimiterTest {
+
+    private static final long EXPIRE_TIME = TimeUnit.MINUTES.toMillis(5);
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @Test
+    void blocksAfterLimit() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(ticker, 3, EXPIRE_TIME);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(3, limiter.getRequests());
+    }
+
+    @Test
+    void releasesAfterExpireTime() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(ticker, 2, EXPIRE_TIME);
+        assertTrue(limiter.tryAcquire());
+        ticker.advance(TimeUnit.MINUTES.toMillis(2));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // only the first request expired
+        ticker.advance(TimeUnit.MINUTES.toMillis(3));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // idle for a long time
+        ticker.advance(TimeUnit.HOURS.toMillis(2));
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void toleratesTimeJumpingBack() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(ticker, 2, EXPIRE_TIME);
+        ticker.advance(TimeUnit.MINUTES.toMillis(1));
+        assertTrue(limiter.tryAcquire());
+
+        ticker.advance(-TimeUnit.MINUTES.toMillis(2));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void concurrentAcquiresRespectLimit() throws InterruptedException {
+        int limit = 1_000;
+        int threads = 16;
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(ticker, limit, EXPIRE_TIME);
+
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException interruptedEx) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                for (int i = 0; i < limit; i++) {
+                    if (limiter.tryAcquire()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(limit, acquired.get());
+        assertEquals(limit, limiter.getRequests());
+    }
+
+    private static class ManualTicker extends Ticker {
+
+        // starts negative like System.nanoTime can
+        private final AtomicLong nanos = new AtomicLong(-TimeUnit.DAYS.toNanos(1));
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
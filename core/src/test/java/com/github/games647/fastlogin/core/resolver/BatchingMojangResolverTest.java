@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchingMojangResolverTest {
+
+    private static final UUID PREMIUM_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final String PREMIUM_NAME = "Notch";
+
+    // long enough that all lookups of a test join the same batch
+    private static final long WINDOW = 500;
+
+    private final List<List<String>> receivedBatches = new CopyOnWriteArrayList<>();
+    private volatile int responseCode = 200;
+
+    private HttpServer server;
+    private URL url;
+    private ExecutorService lookupPool;
+    private RequestBudget budget;
+    private BatchingMojangResolver resolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/profiles", this::handleBulkRequest);
+        server.start();
+
+        url = new URL("http", "127.0.0.1", server.getAddress().getPort(), "/profiles");
+        createResolver(600);
+        lookupPool = Executors.newCachedThreadPool();
+    }
+
+    private void createResolver(int limit) {
+        if (resolver != null) {
+            resolver.close();
+        }
+
+        budget = new RequestBudget(1, limit, 0, 0);
+        resolver = new BatchingMojangResolver(new MojangResolver(), url, WINDOW, budget,
+                Executors.defaultThreadFactory());
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+        lookupPool.shutdownNow();
+        server.stop(0);
+    }
+
+    private void handleBulkRequest(HttpExchange exchange) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            for (JsonElement name : JsonParser.parseReader(reader).getAsJsonArray()) {
+                names.add(name.getAsString());
+            }
+        }
+
+        receivedBatches.add(names);
+
+        JsonArray profiles = new JsonArray();
+        for (String name : names) {
+            if (PREMIUM_NAME.equalsIgnoreCase(name)) {
+                JsonObject profile = new JsonObject();
+                profile.addProperty("id", UUIDAdapter.toMojangId(PREMIUM_ID));
+                profile.addProperty("name", PREMIUM_NAME);
+                profiles.add(profile);
+            }
+        }
+
+        byte[] body = profiles.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Future<Optional<Profile>> lookup(String name) {
+        return lookupPool.submit(() -> resolver.findProfile(name));
+    }
+
+    @Test
+    void concurrentLookupsShareRequest() throws Exception {
+        Future<Optional<Profile>> premium = lookup("notch");
+        Future<Optional<Profile>> unknown = lookup("UnknownPlayer1");
+        Future<Optional<Profile>> otherUnknown = lookup("UnknownPlayer2");
+
+        Optional<Profile> premiumProfile = premium.get();
+        assertTrue(premiumProfile.isPresent());
+        assertEquals(PREMIUM_ID, premiumProfile.get().getId());
+        assertFalse(unknown.get().isPresent());
+        assertFalse(otherUnknown.get().isPresent());
+
+        assertEquals(1, receivedBatches.size());
+        assertEquals(3, receivedBatches.get(0).size());
+        assertEquals(1, resolver.getRequests());
+        assertEquals(3, resolver.getBatchedNames());
+        assertEquals(599, budget.getRemaining());
+    }
+
+    @Test
+    void fullBatchIsSentImmediately() throws Exception {
+        List<Future<Optional<Profile>>> lookups = new ArrayList<>();
+        for (int i = 0; i < BatchingMojangResolver.MAX_BATCH_SIZE + 1; i++) {
+            lookups.add(lookup("Player" + i));
+        }
+
+        for (Future<Optional<Profile>> lookup : lookups) {
+            assertFalse(lookup.get().isPresent());
+        }
+
+        assertEquals(2, receivedBatches.size());
+        int names = receivedBatches.stream().mapToInt(List::size).sum();
+        assertEquals(BatchingMojangResolver.MAX_BATCH_SIZE + 1, names);
+        assertTrue(receivedBatches.stream().allMatch(batch -> batch.size() <= BatchingMojangResolver.MAX_BATCH_SIZE));
+    }
+
+    @Test
+    void exhaustedBudgetRejectsLookups() throws Exception {
+        createResolver(1);
+        assertTrue(lookup(PREMIUM_NAME).get().isPresent());
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> lookup("UnknownPlayer").get());
+        assertTrue(ex.getCause() instanceof RateLimitException);
+
+        assertEquals(1, receivedBatches.size());
+        assertEquals(0, budget.getRemaining());
+        assertEquals(1, budget.getRejectedRequests());
+        assertEquals(1, resolver.getRateLimitedNames());
+    }
+
+    @Test
+    void rateLimitResponseFailsBatch() {
+        responseCode = 429;
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> lookup(PREMIUM_NAME).get());
+        assertTrue(ex.getCause() instanceof RateLimitException);
+        assertEquals(1, resolver.getRequests());
+    }
+
+    @Test
+    void requestsRotateOverRoutes() throws Exception {
+        List<Integer> proxyHits = new CopyOnWriteArrayList<>();
+        List<HttpServer> proxies = new ArrayList<>();
+        List<SessionRoute> routes = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                // answers the forwarded request directly
+                int proxyId = i;
+                HttpServer proxy = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+                proxy.createContext("/profiles", exchange -> {
+                    proxyHits.add(proxyId);
+                    handleBulkRequest(exchange);
+                });
+                proxy.start();
+                proxies.add(proxy);
+                routes.add(SessionRoute.ofProxy(new Proxy(Proxy.Type.HTTP, proxy.getAddress())));
+            }
+
+            resolver.setRoutes(routes);
+            assertTrue(lookup(PREMIUM_NAME).get().isPresent());
+            assertTrue(lookup(PREMIUM_NAME).get().isPresent());
+
+            assertEquals(Arrays.asList(0, 1), proxyHits);
+            assertEquals(2, receivedBatches.size());
+        } finally {
+            proxies.forEach(proxy -> proxy.stop(0));
+        }
+    }
+}
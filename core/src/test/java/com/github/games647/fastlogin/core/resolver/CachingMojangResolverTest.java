@@ -0,0 +1,162 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingMojangResolverTest {
+
+    private static final UUID NOTCH_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final long MINUTE = 60_000;
+
+    private final ManualClock clock = new ManualClock();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean available = true;
+
+    private final MojangResolver mojang = new MojangResolver() {
+        @Override
+        public Optional<Profile> findProfile(String name) throws IOException {
+            requests.incrementAndGet();
+            if (!available) {
+                throw new IOException("Connection refused");
+            }
+
+            return "notch".equalsIgnoreCase(name) ? Optional.of(new Profile(NOTCH_ID, "Notch")) : Optional.empty();
+        }
+    };
+
+    // premium names expire after 60 minutes, unknown names after 10 minutes
+    private final CachingMojangResolver resolver = new CachingMojangResolver(mojang, clock, 100, 60, 10,
+            TimeUnit.MINUTES);
+
+    @Test
+    void premiumNamesExpireAfterPremiumTime() throws IOException, RateLimitException {
+        assertEquals(NOTCH_ID, resolver.findProfile("Notch").get().getId());
+        assertEquals(NOTCH_ID, resolver.findProfile("NOTCH").get().getId());
+        assertEquals(1, requests.get());
+        assertEquals(1, resolver.getHitCount());
+
+        clock.advance(60 * MINUTE - 1);
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertEquals(1, requests.get());
+
+        clock.advance(1);
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void unknownNamesExpireEarlier() throws IOException, RateLimitException {
+        assertFalse(resolver.findProfile("Cracked").isPresent());
+        assertTrue(resolver.findProfile("Notch").isPresent());
+
+        clock.advance(10 * MINUTE - 1);
+        assertFalse(resolver.findProfile("Cracked").isPresent());
+        assertEquals(2, requests.get());
+
+        // the name could have been bought in the meantime
+        clock.advance(1);
+        assertFalse(resolver.findProfile("Cracked").isPresent());
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void failuresAreNotCached() throws IOException, RateLimitException {
+        available = false;
+        assertThrows(IOException.class, () -> resolver.findProfile("Notch"));
+
+        available = true;
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertEquals(2, requests.get());
+        assertEquals(0, resolver.getHitCount());
+    }
+
+    @Test
+    void invalidationForcesNewLookup() throws IOException, RateLimitException {
+        resolver.findProfile("Notch");
+        resolver.findProfile("Cracked");
+
+        assertTrue(resolver.invalidate("NOTCH"));
+        assertFalse(resolver.invalidate("Dinnerbone"));
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertEquals(3, requests.get());
+
+        resolver.invalidateAll();
+        assertEquals(0, resolver.getPremiumSize());
+        assertEquals(0, resolver.getUnknownSize());
+        assertFalse(resolver.findProfile("Cracked").isPresent());
+        assertEquals(4, requests.get());
+    }
+
+    private static class ManualClock extends Clock {
+
+        private final AtomicLong millis = new AtomicLong(1_000_000);
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        void advance(long millis) {
+            this.millis.addAndGet(millis);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.CircuitBreaker.State;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_DURATION = 30_000;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    // opens if half of the last 4 requests failed or took 2 seconds or longer
+    private final CircuitBreaker breaker = new CircuitBreaker(LoggerFactory.getLogger(CircuitBreakerTest.class),
+            ticker, "test", 4, 4, 0.5, 2_000, OPEN_DURATION, TimeUnit.MILLISECONDS);
+
+    @Test
+    void opensAfterMinimumRequests() {
+        request(false);
+        request(false);
+        request(false);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        request(true);
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(0.75, breaker.getFailureRate());
+        assertEquals(1, breaker.getTrips());
+    }
+
+    @Test
+    void slowRequestsCountAsFailures() {
+        request(true);
+        request(true);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, SLOW);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, SLOW);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        request(false);
+        for (int i = 0; i < 8; i++) {
+            request(true);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+    }
+
+    @Test
+    void rejectsUntilProbe() {
+        trip();
+
+        ticker.advance(OPEN_DURATION - 1);
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedRequests());
+
+        ticker.advance(1);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // only a single probe at a time
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getRejectedRequests());
+
+        breaker.onResult(true, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeOpensAgain() {
+        trip();
+
+        ticker.advance(OPEN_DURATION);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(true, SLOW);
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTrips());
+
+        // the open duration starts again
+        ticker.advance(OPEN_DURATION - 1);
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void ignoresResultsStartedBeforeOpening() {
+        assertTrue(breaker.tryAcquire());
+        trip();
+
+        // the request from before the circuit opened finishes successfully
+        breaker.onResult(true, FAST);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedProbeKeepsCircuitHalfOpen() {
+        trip();
+
+        ticker.advance(OPEN_DURATION);
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+
+        // the next request probes the service instead
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(1, breaker.getTrips());
+    }
+
+    @Test
+    void locallyDeferredLookupsAreNotResponses() {
+        MojangResolver resolver = resolver(new DeferredLookupException(Priority.SPECULATIVE));
+        for (int i = 0; i < 8; i++) {
+            assertThrows(DeferredLookupException.class, () -> resolver.findProfile("Notch"));
+        }
+
+        assertEquals(0.0, breaker.getFailureRate());
+        trip();
+
+        // a deferred probe must not close the circuit without reaching Mojang
+        ticker.advance(OPEN_DURATION);
+        assertThrows(DeferredLookupException.class, () -> resolver.findProfile("Notch"));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void apiRateLimitIsResponse() {
+        trip();
+
+        ticker.advance(OPEN_DURATION);
+        MojangResolver resolver = resolver(new RateLimitException());
+        assertThrows(RateLimitException.class, () -> resolver.findProfile("Notch"));
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    private MojangResolver resolver(RateLimitException error) {
+        MojangResolver delegate = new MojangResolver() {
+            @Override
+            public Optional<Profile> findProfile(String name) throws RateLimitException {
+                throw error;
+            }
+        };
+
+        return new CircuitBreakerMojangResolver(delegate, breaker, breaker, 100, 1);
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) {
+            request(false);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    private void request(boolean success) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(success, FAST);
+    }
+
+    private static class ManualTicker extends Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
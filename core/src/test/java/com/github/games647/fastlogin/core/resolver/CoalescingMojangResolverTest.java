@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingMojangResolverTest {
+
+    private static final UUID NOTCH_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean available = true;
+
+    // the first request waits until it's released, so others can join it
+    private final MojangResolver mojang = new MojangResolver() {
+        @Override
+        public Optional<Profile> findProfile(String name) throws IOException, RateLimitException {
+            requests.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException interruptedEx) {
+                Thread.currentThread().interrupt();
+            }
+
+            // the budget only has quota left for critical lookups
+            Priority priority = RequestBudget.getLookupPriority();
+            if (priority != Priority.CRITICAL) {
+                throw new DeferredLookupException(priority);
+            }
+
+            if (!available) {
+                throw new IOException("Connection refused");
+            }
+
+            return Optional.of(new Profile(NOTCH_ID, "Notch"));
+        }
+    };
+
+    private final CoalescingMojangResolver resolver = new CoalescingMojangResolver(mojang);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentLookupsShareRequest() throws Exception {
+        Future<Optional<Profile>> first = lookup("Notch", Priority.CRITICAL);
+        Future<Optional<Profile>> second = joinRunning("NOTCH", Priority.CRITICAL);
+
+        release.countDown();
+        assertEquals(NOTCH_ID, first.get().get().getId());
+        assertEquals(NOTCH_ID, second.get().get().getId());
+        assertEquals(1, requests.get());
+        assertEquals(1, resolver.getCoalescedRequests());
+        assertEquals(0, resolver.getInFlight());
+    }
+
+    @Test
+    void failuresAreShared() throws Exception {
+        available = false;
+        Future<Optional<Profile>> first = lookup("Notch", Priority.CRITICAL);
+        Future<Optional<Profile>> second = joinRunning("Notch", Priority.CRITICAL);
+
+        release.countDown();
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, first::get).getCause());
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, second::get).getCause());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void finishedLookupsAreNotShared() throws IOException, RateLimitException {
+        release.countDown();
+        assertTrue(resolver.findProfile("Notch").isPresent());
+        assertTrue(resolver.findProfile("Notch").isPresent());
+
+        assertEquals(2, requests.get());
+        assertEquals(0, resolver.getCoalescedRequests());
+    }
+
+    @Test
+    void deferredLookupIsRetriedAtCallerPriority() throws Exception {
+        Future<Optional<Profile>> speculative = lookup("Notch", Priority.SPECULATIVE);
+        Future<Optional<Profile>> critical = joinRunning("Notch", Priority.CRITICAL);
+
+        release.countDown();
+        assertInstanceOf(DeferredLookupException.class,
+                assertThrows(ExecutionException.class, speculative::get).getCause());
+
+        // the more important lookup makes its own request
+        assertEquals(NOTCH_ID, critical.get().get().getId());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void deferredLookupIsSharedWithLessImportantLookups() throws Exception {
+        Future<Optional<Profile>> normal = lookup("Notch", Priority.NORMAL);
+        Future<Optional<Profile>> speculative = joinRunning("Notch", Priority.SPECULATIVE);
+
+        release.countDown();
+        assertInstanceOf(DeferredLookupException.class,
+                assertThrows(ExecutionException.class, normal::get).getCause());
+        assertInstanceOf(DeferredLookupException.class,
+                assertThrows(ExecutionException.class, speculative::get).getCause());
+        assertEquals(1, requests.get());
+    }
+
+    private Future<Optional<Profile>> lookup(String name, Priority priority) throws InterruptedException {
+        Future<Optional<Profile>> future = executor.submit(
+                () -> RequestBudget.withPriority(priority, () -> resolver.findProfile(name)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return future;
+    }
+
+    private Future<Optional<Profile>> joinRunning(String name, Priority priority) throws InterruptedException {
+        long coalesced = resolver.getCoalescedRequests();
+        Future<Optional<Profile>> future = executor.submit(
+                () -> RequestBudget.withPriority(priority, () -> resolver.findProfile(name)));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (resolver.getCoalescedRequests() == coalesced) {
+            assertFalse(System.nanoTime() > deadline, "Lookup didn't join the running request");
+            Thread.sleep(1);
+        }
+
+        return future;
+    }
+}
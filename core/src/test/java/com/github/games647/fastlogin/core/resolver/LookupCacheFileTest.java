@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.fastlogin.core.resolver.CachingMojangResolver.CachedLookup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LookupCacheFileTest {
+
+    private static final UUID NOTCH_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final long HOUR = 60 * 60 * 1_000;
+
+    private Path folder;
+    private Path file;
+    private LookupCacheFile cacheFile;
+    private final Map<String, CachedLookup> restored = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        folder = Files.createTempDirectory("fastlogin-test");
+        file = folder.resolve("lookup-cache.dat");
+        cacheFile = openFile(10);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        cacheFile.close();
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void entriesSurviveRestart() throws Exception {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        cacheFile.append("notch", new CachedLookup(new Profile(NOTCH_ID, "Notch"), expiresAt));
+        cacheFile.append("cracked", new CachedLookup(null, expiresAt));
+        cacheFile.append("removed", new CachedLookup(null, expiresAt));
+        cacheFile.remove("removed");
+        cacheFile.append("expired", new CachedLookup(null, System.currentTimeMillis() - 1));
+
+        restart(10);
+
+        assertEquals(2, restored.size());
+        CachedLookup notch = restored.get("notch");
+        assertEquals(NOTCH_ID, notch.getProfile().getId());
+        assertEquals("Notch", notch.getProfile().getName());
+        assertEquals(expiresAt, notch.getExpiresAt());
+
+        CachedLookup cracked = restored.get("cracked");
+        assertNull(cracked.getProfile());
+        assertEquals(expiresAt, cracked.getExpiresAt());
+    }
+
+    @Test
+    void truncatesDamagedRecord() throws Exception {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        cacheFile.append("notch", new CachedLookup(new Profile(NOTCH_ID, "Notch"), expiresAt));
+        cacheFile.close();
+        long validSize = Files.size(file);
+
+        cacheFile = openFile(10);
+        cacheFile.append("cracked", new CachedLookup(null, expiresAt));
+        cacheFile.close();
+
+        // crash while writing the second record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        restart(10);
+        assertEquals(1, restored.size());
+        assertTrue(restored.containsKey("notch"));
+        assertEquals(validSize, Files.size(file));
+
+        // new records are appended after the valid end
+        cacheFile.append("jeb_", new CachedLookup(null, expiresAt));
+        restart(10);
+        assertEquals(2, restored.size());
+        assertTrue(restored.containsKey("jeb_"));
+    }
+
+    @Test
+    void clearBeforeLoadRemovesFile() throws Exception {
+        cacheFile.append("cracked", new CachedLookup(null, System.currentTimeMillis() + HOUR));
+        cacheFile.close();
+
+        cacheFile = new LookupCacheFile(LoggerFactory.getLogger(LookupCacheFileTest.class), file,
+                Executors.defaultThreadFactory(), 10);
+        cacheFile.clear();
+        restored.clear();
+        cacheFile.loadAsync(restored::put).get();
+
+        assertTrue(restored.isEmpty());
+        assertEquals(0, cacheFile.getRecords());
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    void compactionKeepsCurrentEntries() throws Exception {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        for (int i = 0; i < 1_500; i++) {
+            cacheFile.append("cracked", new CachedLookup(null, expiresAt + i));
+        }
+
+        cacheFile.append("notch", new CachedLookup(new Profile(NOTCH_ID, "Notch"), expiresAt));
+        long size = Files.size(file);
+
+        cacheFile.compactIfNeeded();
+        assertEquals(1, cacheFile.getCompactions());
+        assertEquals(2, cacheFile.getRecords());
+        assertTrue(Files.size(file) < size);
+
+        restart(10);
+        assertEquals(2, restored.size());
+        assertEquals(expiresAt + 1_499, restored.get("cracked").getExpiresAt());
+        assertEquals("Notch", restored.get("notch").getProfile().getName());
+    }
+
+    @Test
+    void keepsOnlyMaxSizeEntriesOfEachType() throws Exception {
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        cacheFile.close();
+        cacheFile = openFile(2);
+
+        cacheFile.append("notch", new CachedLookup(new Profile(NOTCH_ID, "Notch"), expiresAt));
+        for (int i = 0; i < 5; i++) {
+            cacheFile.append("cracked" + i, new CachedLookup(null, expiresAt));
+        }
+
+        // many unknown names don't push out premium entries
+        assertEquals(3, cacheFile.getEntries());
+
+        restart(2);
+        assertEquals(3, restored.size());
+        assertTrue(restored.containsKey("notch"));
+        assertTrue(restored.containsKey("cracked3"));
+        assertTrue(restored.containsKey("cracked4"));
+        assertFalse(restored.containsKey("cracked0"));
+    }
+
+    private void restart(int maxSize) throws ExecutionException, InterruptedException {
+        cacheFile.close();
+        cacheFile = openFile(maxSize);
+    }
+
+    private LookupCacheFile openFile(int maxSize) throws ExecutionException, InterruptedException {
+        restored.clear();
+        LookupCacheFile newFile = new LookupCacheFile(LoggerFactory.getLogger(LookupCacheFileTest.class), file,
+                Executors.defaultThreadFactory(), maxSize);
+        newFile.loadAsync(restored::put).get();
+        return newFile;
+    }
+}
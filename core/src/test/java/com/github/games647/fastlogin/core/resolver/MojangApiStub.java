@@ -0,0 +1,418 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Mojang API and session servers. It answers name lookups, bulk lookups and session
+ * verifications with a configurable latency, injected errors, outages and a rate limit like the real one.
+ * <p>
+ * Names are premium based on a hash of the lower case name, so every run and every resolver sees the same accounts.
+ */
+public class MojangApiStub implements AutoCloseable {
+
+    public static final String NAME_PATH = "/users/profiles/minecraft/";
+    public static final String BULK_PATH = "/profiles/minecraft";
+    public static final String SERVICES_BULK_PATH = "/minecraft/profile/lookup/bulk/byname";
+    public static final String HAS_JOINED_PATH = "/session/minecraft/hasJoined";
+
+    private static final Set<String> MOJANG_HOSTS = new HashSet<>(Arrays.asList(
+            "api.mojang.com", "api.minecraftservices.com", "sessionserver.mojang.com"));
+
+    private static volatile MojangApiStub redirectTarget;
+
+    private final HttpServer server;
+    private final ExecutorService handlerPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Mojang API stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Latency latency = Latency.none();
+    private volatile double errorRate;
+    private volatile double hangRate;
+    private volatile long hangTime = TimeUnit.SECONDS.toMillis(30);
+    private volatile boolean outage;
+    private volatile int premiumPercent = 50;
+
+    // fixed window like the one of Mojang - guarded by this
+    private int rateLimit = Integer.MAX_VALUE;
+    private long rateLimitWindow = TimeUnit.MINUTES.toMillis(10);
+    private long windowStart = System.currentTimeMillis();
+    private int windowRequests;
+
+    private final AtomicLong nameRequests = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong sessionRequests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    public MojangApiStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(handlerPool);
+        server.createContext(NAME_PATH, exchange -> handle(exchange, this::handleName, true));
+        server.createContext(BULK_PATH, exchange -> handle(exchange, this::handleBulk, true));
+        server.createContext(SERVICES_BULK_PATH, exchange -> handle(exchange, this::handleBulk, true));
+        server.createContext(HAS_JOINED_PATH, exchange -> handle(exchange, this::handleHasJoined, false));
+        server.createContext("/", exchange -> handle(exchange, ex -> respond(ex, 200, null), false));
+        server.start();
+    }
+
+    /**
+     * Sends all HTTPS requests of this JVM to the Mojang hosts to the given stub instead. This is needed for
+     * resolvers with hard coded URLs like the ones of CraftAPI. The stream handler factory can only be set once per
+     * JVM, so later calls only change the target.
+     *
+     * @param stub stub that should receive the requests
+     */
+    public static synchronized void redirectMojangHosts(MojangApiStub stub) {
+        if (redirectTarget == null) {
+            URL.setURLStreamHandlerFactory(protocol -> "https".equals(protocol) ? new RedirectHandler() : null);
+        }
+
+        redirectTarget = stub;
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public boolean isPremium(String name) {
+        // spread the hash, because similar names like Player1 and Player2 have similar hash codes
+        int hash = name.toLowerCase(Locale.ROOT).hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), 100) < premiumPercent;
+    }
+
+    public UUID getPremiumId(String name) {
+        return UUID.nameUUIDFromBytes(("premium:" + name.toLowerCase(Locale.ROOT)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public MojangApiStub setLatency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param errorRate fraction of requests answered with HTTP 500
+     */
+    public MojangApiStub setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param hangRate fraction of requests that aren't answered until the hang time passed
+     * @param hangTime milliseconds before the hanging requests are answered
+     */
+    public MojangApiStub setHangRate(double hangRate, long hangTime) {
+        this.hangRate = hangRate;
+        this.hangTime = hangTime;
+        return this;
+    }
+
+    /**
+     * @param outage answer every request with HTTP 503
+     */
+    public MojangApiStub setOutage(boolean outage) {
+        this.outage = outage;
+        return this;
+    }
+
+    public MojangApiStub setPremiumPercent(int premiumPercent) {
+        this.premiumPercent = premiumPercent;
+        return this;
+    }
+
+    /**
+     * Answers name and bulk lookups with HTTP 429 after this number of requests in the window. Session requests are
+     * not limited.
+     *
+     * @param requests requests per window
+     * @param window length of the window
+     * @param unit unit of the window
+     */
+    public synchronized MojangApiStub setRateLimit(int requests, long window, TimeUnit unit) {
+        this.rateLimit = requests;
+        this.rateLimitWindow = unit.toMillis(window);
+        this.windowStart = System.currentTimeMillis();
+        this.windowRequests = 0;
+        return this;
+    }
+
+    public long getNameRequests() {
+        return nameRequests.get();
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long getSessionRequests() {
+        return sessionRequests.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlerPool.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler, boolean limited) throws IOException {
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            sleep(latency.nextDelay(random));
+            if (outage) {
+                injectedErrors.incrementAndGet();
+                respond(exchange, 503, null);
+                return;
+            }
+
+            if (limited && !tryAcquire()) {
+                rateLimited.incrementAndGet();
+                respond(exchange, 429, null);
+                return;
+            }
+
+            double roll = random.nextDouble();
+            if (roll < errorRate) {
+                injectedErrors.incrementAndGet();
+                respond(exchange, 500, null);
+                return;
+            }
+
+            if (roll < errorRate + hangRate) {
+                injectedErrors.incrementAndGet();
+                sleep(hangTime);
+            }
+
+            handler.handle(exchange);
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= rateLimitWindow) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+
+        return ++windowRequests <= rateLimit;
+    }
+
+    private void handleName(HttpExchange exchange) throws IOException {
+        nameRequests.incrementAndGet();
+        String name = exchange.getRequestURI().getPath().substring(NAME_PATH.length());
+        if (!isPremium(name)) {
+            respond(exchange, 204, null);
+            return;
+        }
+
+        respond(exchange, 200, toProfile(name));
+    }
+
+    private void handleBulk(HttpExchange exchange) throws IOException {
+        bulkRequests.incrementAndGet();
+        JsonArray profiles = new JsonArray();
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            for (JsonElement name : JsonParser.parseReader(reader).getAsJsonArray()) {
+                if (isPremium(name.getAsString())) {
+                    profiles.add(toProfile(name.getAsString()));
+                }
+            }
+        }
+
+        respond(exchange, 200, profiles);
+    }
+
+    private void handleHasJoined(HttpExchange exchange) throws IOException {
+        sessionRequests.incrementAndGet();
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String name = params.get("username");
+        if (name == null || params.get("serverId") == null || !isPremium(name)) {
+            // Mojang answers invalid sessions with no content
+            respond(exchange, 204, null);
+            return;
+        }
+
+        JsonObject verification = toProfile(name);
+        verification.add("properties", new JsonArray());
+        respond(exchange, 200, verification);
+    }
+
+    private JsonObject toProfile(String name) {
+        JsonObject profile = new JsonObject();
+        profile.addProperty("id", UUIDAdapter.toMojangId(getPremiumId(name)));
+        profile.addProperty("name", name);
+        return profile;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        if (query == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            int separator = param.indexOf('=');
+            if (separator > 0) {
+                params.put(param.substring(0, separator),
+                        URLDecoder.decode(param.substring(separator + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int code, JsonElement json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Distribution of the response delay.
+     */
+    @FunctionalInterface
+    public interface Latency {
+
+        /**
+         * @return delay in milliseconds
+         */
+        long nextDelay(ThreadLocalRandom random);
+
+        static Latency none() {
+            return random -> 0;
+        }
+
+        static Latency fixed(long millis) {
+            return random -> millis;
+        }
+
+        static Latency uniform(long min, long max) {
+            return random -> random.nextLong(min, max + 1);
+        }
+
+        /**
+         * Long tail distribution - most requests are close to the median, but a few take many times longer.
+         *
+         * @param median median delay in milliseconds
+         * @param sigma standard deviation of the logarithm, 0.5 is a moderate tail
+         */
+        static Latency logNormal(long median, double sigma) {
+            return random -> Math.round(median * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    /**
+     * Opens connections to the Mojang hosts against the stub. Other HTTPS hosts are not available while redirected.
+     */
+    private static class RedirectHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            return openConnection(url, Proxy.NO_PROXY);
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url, Proxy proxy) throws IOException {
+            MojangApiStub target = redirectTarget;
+            if (target == null || !MOJANG_HOSTS.contains(url.getHost())) {
+                throw new IOException("Only the Mojang hosts are available while they are redirected: " + url);
+            }
+
+            return target.getUrl(url.getFile()).openConnection();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.resolver;
+
+import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.resolver.RequestBudget.Priority;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestBudgetTest {
+
+    // 2 routes with 5 requests each, 20% reserved for critical and 50% not usable for speculative lookups
+    private final RequestBudget budget = new RequestBudget(2, 5, 0.2, 0.5);
+
+    @Test
+    void poolsAllRoutes() throws RateLimitException {
+        assertEquals(10, budget.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            budget.acquire(Priority.CRITICAL);
+        }
+
+        assertEquals(0, budget.getRemaining());
+        assertThrows(RateLimitException.class, () -> budget.acquire(Priority.CRITICAL));
+        assertEquals(1, budget.getRejectedRequests());
+    }
+
+    @Test
+    void defersLessImportantRequests() throws RateLimitException {
+        for (int i = 0; i < 5; i++) {
+            budget.acquire(Priority.SPECULATIVE);
+        }
+
+        DeferredLookupException deferredEx = assertThrows(DeferredLookupException.class,
+                () -> budget.acquire(Priority.SPECULATIVE));
+        assertEquals(Priority.SPECULATIVE, deferredEx.getPriority());
+        assertFalse(budget.hasQuotaFor(Priority.SPECULATIVE));
+
+        for (int i = 0; i < 3; i++) {
+            budget.acquire(Priority.NORMAL);
+        }
+
+        assertThrows(DeferredLookupException.class, () -> budget.acquire(Priority.NORMAL));
+        assertTrue(budget.hasQuotaFor(Priority.CRITICAL));
+        budget.acquire(Priority.CRITICAL);
+
+        // deferred requests don't use any quota
+        assertEquals(1, budget.getRemaining());
+        assertEquals(2, budget.getDeferredLookups());
+        assertEquals(0, budget.getRejectedRequests());
+    }
+
+    @Test
+    void priorityAppliesToNestedLookups() throws Exception {
+        assertEquals(Priority.CRITICAL, RequestBudget.getLookupPriority());
+
+        Priority inner = RequestBudget.withPriority(Priority.NORMAL, () -> {
+            assertEquals(Priority.NORMAL, RequestBudget.getLookupPriority());
+            return RequestBudget.withPriority(Priority.SPECULATIVE, RequestBudget::getLookupPriority);
+        });
+
+        assertEquals(Priority.SPECULATIVE, inner);
+        assertEquals(Priority.CRITICAL, RequestBudget.getLookupPriority());
+    }
+}
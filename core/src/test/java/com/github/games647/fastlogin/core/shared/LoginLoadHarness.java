@@ -0,0 +1,354 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.resolver.MojangResolver;
+import com.github.games647.fastlogin.core.AsyncScheduler;
+import com.github.games647.fastlogin.core.ProxyAgnosticMojangResolver;
+import com.github.games647.fastlogin.core.hooks.bedrock.BedrockService;
+import com.github.games647.fastlogin.core.resolver.MojangApiStub;
+import com.github.games647.fastlogin.core.resolver.MojangApiStub.Latency;
+import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
+import com.github.games647.fastlogin.core.storage.StoredProfile;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Load test of the resolvers and the login path against the {@link MojangApiStub}. Every scenario configures the
+ * stub (latency, errors, rate limit, outage) and runs these workloads:
+ * <ul>
+ *     <li>name lookups with the plain {@link MojangResolver}</li>
+ *     <li>session verifications with the {@link ProxyAgnosticMojangResolver}</li>
+ *     <li>logins through {@link JoinManagement} with the full resolver chain of {@link FastLoginCore}</li>
+ *     <li>session verifications through the resolver chain of {@link FastLoginCore}</li>
+ * </ul>
+ * The report contains the throughput, the latency percentiles and the outcomes of each workload. Run it using the main
+ * method. System properties: {@code harness.threads} (16), {@code harness.operations} (2000),
+ * {@code harness.players} (1000).
+ */
+public class LoginLoadHarness {
+
+    private static final int THREADS = Integer.getInteger("harness.threads", 16);
+    private static final int OPERATIONS = Integer.getInteger("harness.operations", 2_000);
+    private static final int PLAYERS = Integer.getInteger("harness.players", 1_000);
+
+    // 80 percent of the logins are from the 20 percent regulars
+    private static final double REGULAR_SHARE = 0.2;
+    private static final double REGULAR_LOGINS = 0.8;
+
+    private static final InetAddress PLAYER_ADDRESS = InetAddress.getLoopbackAddress();
+
+    private final MojangApiStub stub;
+
+    public LoginLoadHarness(MojangApiStub stub) {
+        this.stub = stub;
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (MojangApiStub stub = new MojangApiStub()) {
+            MojangApiStub.redirectMojangHosts(stub);
+
+            LoginLoadHarness harness = new LoginLoadHarness(stub);
+            harness.runScenario("healthy", api -> api.setLatency(Latency.logNormal(50, 0.5)));
+            harness.runScenario("slow", api -> api.setLatency(Latency.logNormal(400, 0.8)));
+            harness.runScenario("flaky", api -> api.setLatency(Latency.logNormal(50, 0.5))
+                    .setErrorRate(0.1)
+                    .setHangRate(0.02, 10_000));
+            harness.runScenario("rate-limited", api -> api.setLatency(Latency.logNormal(50, 0.5))
+                    .setRateLimit(200, 10, TimeUnit.MINUTES));
+            harness.runScenario("outage", api -> api.setLatency(Latency.fixed(20))
+                    .setOutage(true));
+        }
+    }
+
+    public void runScenario(String name, Consumer<MojangApiStub> configurer) throws Exception {
+        System.out.println();
+        System.out.println("=== Scenario " + name + " ===");
+
+        resetStub();
+        configurer.accept(stub);
+
+        MojangResolver plainResolver = new MojangResolver();
+        run("MojangResolver.findProfile", index -> lookupOutcome(plainResolver.findProfile(randomPlayer())));
+
+        MojangResolver agnosticResolver = new ProxyAgnosticMojangResolver();
+        run("ProxyAgnosticMojangResolver.hasJoined", index -> verificationOutcome(
+                agnosticResolver.hasJoined(randomPlayer(), "serverHash", PLAYER_ADDRESS)));
+
+        Path folder = Files.createTempDirectory("fastlogin-harness");
+        try {
+            FastLoginCore<Object, Object, HarnessPlugin> core = createCore(folder);
+            try {
+                HarnessJoinManagement joinManagement = new HarnessJoinManagement(core);
+                run("JoinManagement.onLogin", index -> {
+                    HarnessSource source = new HarnessSource();
+                    joinManagement.onLogin(randomPlayer(), source);
+                    return source.outcome;
+                });
+
+                MojangResolver chain = core.getResolver();
+                run("FastLoginCore resolver hasJoined", index -> verificationOutcome(
+                        chain.hasJoined(randomPlayer(), "serverHash", PLAYER_ADDRESS)));
+            } finally {
+                core.close();
+            }
+        } finally {
+            deleteFolder(folder);
+        }
+
+        System.out.printf(Locale.ROOT, "Stub: %d name, %d bulk, %d session requests, %d rate limited, %d errors%n",
+                stub.getNameRequests(), stub.getBulkRequests(), stub.getSessionRequests(), stub.getRateLimited(),
+                stub.getInjectedErrors());
+    }
+
+    private void resetStub() {
+        stub.setLatency(Latency.none())
+                .setErrorRate(0)
+                .setHangRate(0, 0)
+                .setOutage(false)
+                .setRateLimit(Integer.MAX_VALUE, 10, TimeUnit.MINUTES);
+    }
+
+    private FastLoginCore<Object, Object, HarnessPlugin> createCore(Path folder) throws IOException {
+        // only the differences to the default config - the file is merged with the defaults
+        List<String> config = Arrays.asList(
+                "autoRegister: true",
+                "nameChangeCheck: true",
+                "session-client:",
+                "  enabled: true",
+                "  url: '" + stub.getBaseUrl() + "'",
+                "lookup-cache:",
+                "  persist: false"
+        );
+        Files.write(folder.resolve("config.yml"), config, StandardCharsets.UTF_8);
+
+        FastLoginCore<Object, Object, HarnessPlugin> core = new FastLoginCore<>(new HarnessPlugin(folder));
+        core.load();
+        if (!core.setupDatabase()) {
+            throw new IllegalStateException("Failed to set up the database in " + folder);
+        }
+
+        return core;
+    }
+
+    private void run(String workload, Operation operation) throws InterruptedException {
+        long[] latencies = new long[OPERATIONS];
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        AtomicInteger nextIndex = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int thread = 0; thread < THREADS; thread++) {
+            pool.execute(() -> {
+                int index;
+                while ((index = nextIndex.getAndIncrement()) < OPERATIONS) {
+                    long operationStart = System.nanoTime();
+                    String outcome;
+                    try {
+                        outcome = operation.run(index);
+                    } catch (Exception ex) {
+                        outcome = ex.getClass().getSimpleName();
+                    }
+
+                    latencies[index] = System.nanoTime() - operationStart;
+                    outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+                }
+            });
+        }
+
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        long duration = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        double throughput = OPERATIONS / (duration / 1_000_000_000.0);
+        System.out.printf(Locale.ROOT, "%-40s %8.1f ops/s  p50 %6.1fms  p90 %6.1fms  p99 %6.1fms  max %7.1fms%n",
+                workload, throughput, percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[latencies.length - 1] / 1_000_000.0);
+
+        Map<String, Long> sortedOutcomes = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> sortedOutcomes.put(outcome, count.sum()));
+        System.out.println("    outcomes: " + sortedOutcomes);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static String randomPlayer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int regulars = Math.max(1, (int) (PLAYERS * REGULAR_SHARE));
+        int index = random.nextDouble() < REGULAR_LOGINS
+                ? random.nextInt(regulars)
+                : regulars + random.nextInt(Math.max(1, PLAYERS - regulars));
+        return "Player" + index;
+    }
+
+    private static String lookupOutcome(Optional<Profile> profile) {
+        return profile.isPresent() ? "premium" : "unknown";
+    }
+
+    private static String verificationOutcome(Optional<Verification> verification) {
+        return verification.isPresent() ? "verified" : "invalid";
+    }
+
+    private static void deleteFolder(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder())
+                    .forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+
+        /**
+         * @return outcome of the operation for the report
+         */
+        String run(int index) throws Exception;
+    }
+
+    private static class HarnessJoinManagement extends JoinManagement<Object, Object, HarnessSource> {
+
+        HarnessJoinManagement(FastLoginCore<Object, Object, ?> core) {
+            super(core, null, null);
+        }
+
+        @Override
+        public FastLoginPreLoginEvent callFastLoginPreLoginEvent(String username, HarnessSource source,
+                                                                 StoredProfile profile) {
+            return null;
+        }
+
+        @Override
+        public void requestPremiumLogin(HarnessSource source, StoredProfile profile, String username,
+                                        boolean registered) {
+            source.outcome = registered ? "premium (registered)" : "premium";
+            if (!registered) {
+                // like a successful verification - the next login of this player is answered by the database
+                profile.setPremium(true);
+                core.getStorage().save(profile);
+            }
+        }
+
+        @Override
+        public void startCrackedSession(HarnessSource source, StoredProfile profile, String username) {
+            source.outcome = "cracked";
+        }
+    }
+
+    private static class HarnessSource implements LoginSource {
+
+        // failures are only logged by the join management
+        private volatile String outcome = "failed";
+
+        @Override
+        public void enableOnlinemode() {
+            outcome = "premium";
+        }
+
+        @Override
+        public void kick(String message) {
+            outcome = "kicked";
+        }
+
+        @Override
+        public InetSocketAddress getAddress() {
+            return new InetSocketAddress(PLAYER_ADDRESS, 25565);
+        }
+    }
+
+    private static class HarnessPlugin implements PlatformPlugin<Object> {
+
+        private final Path folder;
+        private final Logger logger = NOPLogger.NOP_LOGGER;
+
+        HarnessPlugin(Path folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        public String getName() {
+            return "FastLogin";
+        }
+
+        @Override
+        public Path getPluginFolder() {
+            return folder;
+        }
+
+        @Override
+        public Logger getLog() {
+            return logger;
+        }
+
+        @Override
+        public void sendMessage(Object receiver, String message) {
+            // not used
+        }
+
+        @Override
+        public AsyncScheduler getScheduler() {
+            return new AsyncScheduler(logger, Runnable::run);
+        }
+
+        @Override
+        public boolean isPluginInstalled(String name) {
+            return false;
+        }
+
+        @Override
+        public BedrockService<?> getBedrockService() {
+            return null;
+        }
+    }
+}
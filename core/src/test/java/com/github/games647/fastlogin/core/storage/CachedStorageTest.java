@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachedStorageTest {
+
+    private static final UUID PREMIUM_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    private StorageTestPlugin plugin;
+    private UnreliableStorage database;
+    private CachedStorage cache;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        plugin = new StorageTestPlugin();
+        database = new UnreliableStorage(plugin);
+        database.createTables();
+        database.save(new StoredProfile(PREMIUM_ID, "Notch", false, FloodgateState.FALSE, "127.0.0.1"));
+
+        cache = new CachedStorage(database, 100, 1, TimeUnit.HOURS);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        database.setAvailable(true);
+        cache.close();
+        plugin.deleteFolder();
+    }
+
+    @Test
+    void hitsReturnCopies() {
+        StoredProfile first = cache.loadProfile("Notch");
+        // an aborted login changed its profile without saving it
+        first.setPremium(true);
+        first.setLastIp("127.0.0.2");
+
+        StoredProfile second = cache.loadProfile("Notch");
+        assertNotSame(first, second);
+        assertFalse(second.isPremium());
+        assertEquals("127.0.0.1", second.getLastIp());
+        assertEquals(1, cache.getHitCount());
+
+        StoredProfile byId = cache.loadProfile(PREMIUM_ID);
+        assertNotSame(second, byId);
+        assertFalse(byId.isPremium());
+    }
+
+    @Test
+    void successfulSaveReplacesEntry() throws ExecutionException, InterruptedException {
+        StoredProfile profile = cache.loadProfile("Notch");
+        profile.setPremium(true);
+        cache.saveAsync(profile).get();
+
+        // changes after the save are not visible to other callers
+        profile.setLastIp("127.0.0.2");
+
+        StoredProfile cached = cache.loadProfile("Notch");
+        assertTrue(cached.isPremium());
+        assertEquals("127.0.0.1", cached.getLastIp());
+        assertTrue(cache.isCached("Notch"));
+    }
+
+    @Test
+    void failedSaveIsNotCached() {
+        StoredProfile profile = cache.loadProfile("Notch");
+        profile.setPremium(true);
+
+        database.setAvailable(false);
+        CompletableFuture<Void> save = cache.saveAsync(profile);
+        assertThrows(ExecutionException.class, save::get);
+        assertFalse(cache.isCached("Notch"));
+
+        // the next lookup reads what is actually stored
+        database.setAvailable(true);
+        assertFalse(cache.loadProfile("Notch").isPremium());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactFormatMigrationTest {
+
+    private static final UUID NOTCH_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID JEB_ID = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+
+    private StorageTestPlugin plugin;
+    private SQLiteStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        plugin = new StorageTestPlugin();
+        storage = plugin.createSQLite();
+        storage.createTables();
+
+        storage.save(new StoredProfile(NOTCH_ID, "Notch", true, FloodgateState.FALSE, "127.0.0.1"));
+        storage.save(new StoredProfile(null, "Cracked", false, FloodgateState.FALSE, ""));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+        plugin.deleteFolder();
+    }
+
+    @Test
+    void unconvertedProfilesUseTextColumns() throws SQLException {
+        storage.loadCompactFormat();
+
+        assertFalse(storage.isCompactFormatMigrated());
+        assertTrue(storage.hasTextColumns());
+        assertEquals(NOTCH_ID, storage.loadProfile(NOTCH_ID).getId());
+    }
+
+    @Test
+    void conversionReplacesTextColumns() throws SQLException {
+        storage.loadCompactFormat();
+
+        // written in both formats during the conversion
+        storage.save(new StoredProfile(JEB_ID, "jeb_", true, FloodgateState.FALSE, "2001:db8::1"));
+
+        assertTrue(storage.migrateCompactFormat(1, 0));
+        assertTrue(storage.isCompactFormatMigrated());
+        assertEquals("Notch", storage.loadProfile(NOTCH_ID).getName());
+
+        // a restart alone never removes the text columns
+        restart();
+        assertTrue(storage.isCompactFormatMigrated());
+        assertTrue(storage.hasTextColumns());
+
+        assertTrue(storage.removeTextColumns());
+        assertFalse(storage.hasTextColumns());
+
+        restart();
+        assertFalse(storage.hasTextColumns());
+        assertTrue(storage.isCompactFormatMigrated());
+
+        StoredProfile notch = storage.loadProfile(NOTCH_ID);
+        assertEquals("Notch", notch.getName());
+        assertEquals("127.0.0.1", notch.getLastIp());
+        assertEquals("2001:db8::1", storage.loadProfile("jeb_").getLastIp());
+
+        StoredProfile cracked = storage.loadProfile("Cracked");
+        assertNull(cracked.getId());
+        assertEquals("", cracked.getLastIp());
+
+        notch.setLastIp("10.0.0.1");
+        storage.save(notch);
+        assertEquals("10.0.0.1", storage.loadProfile(NOTCH_ID).getLastIp());
+
+        StoredProfile newProfile = storage.loadProfile("Dinnerbone");
+        storage.save(newProfile);
+        assertTrue(newProfile.isSaved());
+        assertFalse(storage.loadProfile("Dinnerbone").isPremium());
+
+        assertThrows(IllegalStateException.class, storage::resetCompactFormat);
+    }
+
+    @Test
+    void removalRequiresConversion() throws SQLException {
+        storage.loadCompactFormat();
+
+        assertThrows(IllegalStateException.class, storage::removeTextColumns);
+        assertTrue(storage.hasTextColumns());
+    }
+
+    @Test
+    void resetConvertsAgain() throws SQLException {
+        storage.loadCompactFormat();
+        assertTrue(storage.migrateCompactFormat(10, 0));
+
+        storage.resetCompactFormat();
+        assertFalse(storage.isCompactFormatMigrated());
+
+        restart();
+        assertTrue(storage.hasTextColumns());
+        assertFalse(storage.isCompactFormatMigrated());
+        assertTrue(storage.migrateCompactFormat(10, 0));
+        assertEquals(NOTCH_ID, storage.loadProfile(NOTCH_ID).getId());
+    }
+
+    private void restart() throws SQLException {
+        storage.close();
+        storage = plugin.createSQLite();
+        storage.createTables();
+        storage.loadCompactFormat();
+    }
+}
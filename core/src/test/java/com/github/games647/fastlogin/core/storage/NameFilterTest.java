@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NameFilterTest {
+
+    private final NameFilter filter = new NameFilter(0.01);
+
+    @Test
+    void everyNameMightBeStoredBeforeReady() {
+        assertFalse(filter.isReady());
+        assertTrue(filter.mightContain("Notch"));
+
+        // without a filter nothing was skipped
+        filter.recordFalsePositive();
+        assertEquals(0, filter.getSkippedLookups());
+        assertEquals(0, filter.getFalsePositives());
+    }
+
+    @Test
+    void skipsUnknownNames() throws SQLException {
+        filter.rebuild(2, Arrays.asList("Notch", "jeb_")::forEach);
+
+        assertTrue(filter.isReady());
+        assertTrue(filter.mightContain("notch"));
+        assertTrue(filter.mightContain("JEB_"));
+        assertFalse(filter.mightContain("Dinnerbone"));
+        assertEquals(1, filter.getSkippedLookups());
+    }
+
+    @Test
+    void putDuringRebuildIsKept() throws SQLException {
+        filter.rebuild(1, action -> action.accept("Notch"));
+
+        filter.rebuild(1, action -> {
+            action.accept("Notch");
+            // saved while the names are read
+            filter.put("Dinnerbone");
+        });
+
+        assertTrue(filter.mightContain("Notch"));
+        assertTrue(filter.mightContain("Dinnerbone"));
+    }
+
+    @Test
+    void failedRebuildKeepsOldFilter() throws SQLException {
+        filter.rebuild(1, action -> action.accept("Notch"));
+
+        assertThrows(SQLException.class, () -> filter.rebuild(2, action -> {
+            action.accept("jeb_");
+            filter.put("Dinnerbone");
+            throw new SQLException("Connection lost");
+        }));
+
+        assertTrue(filter.isReady());
+        assertTrue(filter.mightContain("Notch"));
+        assertTrue(filter.mightContain("Dinnerbone"));
+        assertFalse(filter.mightContain("jeb_"));
+
+        // later saves still reach the old filter
+        filter.put("Grumm");
+        assertTrue(filter.mightContain("Grumm"));
+    }
+}
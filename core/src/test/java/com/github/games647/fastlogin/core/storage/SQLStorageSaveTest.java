@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLStorageSaveTest {
+
+    private static final UUID PREMIUM_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    private StorageTestPlugin plugin;
+    private SQLiteStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        plugin = new StorageTestPlugin();
+        storage = plugin.createSQLite();
+        storage.createTables();
+
+        StoredProfile premium = new StoredProfile(PREMIUM_ID, "Notch", true, FloodgateState.FALSE, "127.0.0.1");
+        storage.save(premium);
+        assertTrue(premium.isSaved());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+        plugin.deleteFolder();
+    }
+
+    @Test
+    void blankProfileDoesNotReplaceStoredPlayer() {
+        // like a profile from the name filter that missed a name stored by another server
+        StoredProfile blank = new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "127.0.0.2");
+        storage.save(blank);
+
+        assertFalse(blank.isSaved());
+        StoredProfile stored = storage.loadProfile("Notch");
+        assertTrue(stored.isPremium());
+        assertEquals(PREMIUM_ID, stored.getId());
+    }
+
+    @Test
+    void loadedUnknownNameIsUpserted() {
+        StoredProfile loaded = storage.loadProfile("Dinnerbone");
+        assertTrue(loaded.isConfirmedNew());
+
+        // another server inserted the same name in the meantime
+        storage.save(new StoredProfile(null, "Dinnerbone", false, FloodgateState.FALSE, "127.0.0.3"));
+
+        loaded.setPremium(true);
+        storage.save(loaded);
+        assertTrue(loaded.isSaved());
+        assertTrue(storage.loadProfile("Dinnerbone").isPremium());
+    }
+
+    @Test
+    void asyncSavesAreWrittenOnClose() throws SQLException {
+        Thread caller = Thread.currentThread();
+        Set<Thread> saveThreads = ConcurrentHashMap.newKeySet();
+        SQLiteStorage tracked = new SQLiteStorage(plugin, "{pluginDir}/FastLogin.db", new HikariConfig()) {
+            @Override
+            public void save(StoredProfile playerProfile) {
+                saveThreads.add(Thread.currentThread());
+                super.save(playerProfile);
+            }
+        };
+
+        // more saves than the lookup queue accepts
+        for (int i = 0; i < 2_000; i++) {
+            tracked.saveAsync(new StoredProfile(null, "Player" + i, false, FloodgateState.FALSE, "127.0.0.1"));
+        }
+
+        // queued saves are written instead of dropped
+        tracked.close();
+        assertFalse(saveThreads.contains(caller));
+        assertTrue(storage.loadProfile("Player1999").isSaved());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.AsyncScheduler;
+import com.github.games647.fastlogin.core.hooks.bedrock.BedrockService;
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import com.github.games647.fastlogin.core.shared.PlatformPlugin;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the name lookup throughput of the default SQLite mode (single connection behind a lock) with the WAL mode
+ * (read pool and a single writer). Run it using the main method or with the JMH runner of your IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SQLiteStorageBenchmark {
+
+    private static final int PROFILES = 10_000;
+
+    @Param({"false", "true"})
+    private boolean wal;
+
+    private Path folder;
+    private SQLiteStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        folder = Files.createTempDirectory("fastlogin-benchmark");
+
+        HikariConfig config = new HikariConfig();
+        storage = new SQLiteStorage(new BenchmarkPlugin(folder), "{pluginDir}/FastLogin.db", config, wal, 8);
+        storage.createTables();
+
+        List<StoredProfile> profiles = new ArrayList<>(PROFILES);
+        for (int i = 0; i < PROFILES; i++) {
+            profiles.add(new StoredProfile(UUID.randomUUID(), "Player" + i, i % 2 == 0, FloodgateState.FALSE,
+                    "127.0.0.1"));
+        }
+
+        storage.saveBatch(profiles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(folder);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public StoredProfile lookup() {
+        return storage.loadProfile(randomName());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public StoredProfile mixedLookup() {
+        return storage.loadProfile(randomName());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedSave() {
+        // simulates the last login update of joining players
+        StoredProfile profile = storage.loadProfile(randomName());
+        profile.setLastIp("127.0.0." + ThreadLocalRandom.current().nextInt(256));
+        storage.save(profile);
+    }
+
+    private static String randomName() {
+        return "Player" + ThreadLocalRandom.current().nextInt(PROFILES);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SQLiteStorageBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+    private static class BenchmarkPlugin implements PlatformPlugin<Object> {
+
+        private final Path folder;
+        private final Logger logger = LoggerFactory.getLogger(SQLiteStorageBenchmark.class);
+
+        BenchmarkPlugin(Path folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        public String getName() {
+            return "FastLogin";
+        }
+
+        @Override
+        public Path getPluginFolder() {
+            return folder;
+        }
+
+        @Override
+        public Logger getLog() {
+            return logger;
+        }
+
+        @Override
+        public void sendMessage(Object receiver, String message) {
+            // not used
+        }
+
+        @Override
+        public AsyncScheduler getScheduler() {
+            return new AsyncScheduler(logger, Runnable::run);
+        }
+
+        @Override
+        public boolean isPluginInstalled(String name) {
+            return false;
+        }
+
+        @Override
+        public BedrockService<?> getBedrockService() {
+            return null;
+        }
+    }
+}
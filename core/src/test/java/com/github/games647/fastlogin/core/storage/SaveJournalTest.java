@@ -0,0 +1,176 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SaveJournalTest {
+
+    private static final long MAX_SIZE = 64 * 1_024;
+
+    private StorageTestPlugin plugin;
+    private Path file;
+    private SaveJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        plugin = new StorageTestPlugin();
+        file = plugin.getPluginFolder().resolve("save-journal.dat");
+        journal = openJournal();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+        plugin.deleteFolder();
+    }
+
+    @Test
+    void recordsSurviveRestart() throws IOException {
+        assertTrue(journal.append(profile("Notch", true)));
+        assertTrue(journal.append(profile("Dinnerbone", false)));
+
+        journal.close();
+        journal = openJournal();
+
+        assertEquals(2, journal.getPendingRecords());
+        List<StoredProfile> profiles = journal.snapshot().getProfiles();
+        assertEquals("Notch", profiles.get(0).getName());
+        assertTrue(profiles.get(0).isPremium());
+        assertEquals("Dinnerbone", profiles.get(1).getName());
+    }
+
+    @Test
+    void truncatesDamagedRecord() throws IOException {
+        assertTrue(journal.append(profile("Notch", true)));
+        long validSize = journal.getSize();
+        assertTrue(journal.append(profile("Dinnerbone", false)));
+        journal.close();
+
+        // crash while writing the second record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        journal = openJournal();
+        assertEquals(1, journal.getPendingRecords());
+        assertEquals(validSize, Files.size(file));
+
+        // new records are appended after the valid end
+        assertTrue(journal.append(profile("Jeb_", false)));
+        assertEquals(2, journal.snapshot().getProfiles().size());
+    }
+
+    @Test
+    void rejectsRecordsAboveMaxSize() throws IOException {
+        journal.close();
+        journal = new SaveJournal(plugin.getLog(), file, 1, Executors.defaultThreadFactory(), 10);
+        journal.open();
+
+        assertFalse(journal.append(profile("Notch", true)));
+        assertTrue(journal.isEmpty());
+        assertEquals(1, journal.getDroppedSaves());
+    }
+
+    @Test
+    void commitKeepsNewerRecords() throws IOException {
+        assertTrue(journal.append(profile("Notch", true)));
+        SaveJournal.Snapshot snapshot = journal.snapshot();
+
+        // saved while the snapshot was replayed
+        assertTrue(journal.append(profile("Dinnerbone", false)));
+        journal.commit(snapshot);
+
+        assertEquals(1, journal.getPendingRecords());
+        assertEquals(1, journal.getReplayedSaves());
+        assertFalse(journal.appendIfPending(profile("Notch", false)));
+        assertTrue(journal.appendIfPending(profile("Dinnerbone", true)));
+
+        journal.close();
+        journal = openJournal();
+        List<StoredProfile> profiles = journal.snapshot().getProfiles();
+        assertEquals(2, profiles.size());
+        assertEquals("Dinnerbone", profiles.get(0).getName());
+    }
+
+    @Test
+    void replayWritesLatestChanges() throws IOException, SQLException {
+        SQLiteStorage storage = plugin.createSQLite();
+        try {
+            storage.createTables();
+            StoredProfile stored = profile("Notch", true);
+            storage.save(stored);
+            assertTrue(stored.isSaved());
+
+            storage.setSaveJournal(journal);
+            assertTrue(journal.append(profile("Dinnerbone", false)));
+            assertTrue(journal.append(profile("Dinnerbone", true)));
+            // a new profile for a name that is already stored violates the unique name
+            assertTrue(journal.append(new StoredProfile(null, "Notch", false, FloodgateState.FALSE, "127.0.0.2")));
+
+            storage.replayJournal();
+
+            assertTrue(journal.isEmpty());
+            assertEquals(0, journal.getFailedReplays());
+            assertTrue(storage.loadProfile("Dinnerbone").isPremium());
+
+            StoredProfile notch = storage.loadProfile("Notch");
+            assertTrue(notch.isPremium());
+            assertEquals(stored.getId(), notch.getId());
+        } finally {
+            storage.close();
+        }
+    }
+
+    private SaveJournal openJournal() throws IOException {
+        SaveJournal newJournal = new SaveJournal(plugin.getLog(), file, MAX_SIZE, Executors.defaultThreadFactory(), 10);
+        newJournal.open();
+        return newJournal;
+    }
+
+    private static StoredProfile profile(String name, boolean premium) {
+        UUID id = premium ? UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)) : null;
+        return new StoredProfile(id, name, premium, FloodgateState.FALSE, "127.0.0.1");
+    }
+}
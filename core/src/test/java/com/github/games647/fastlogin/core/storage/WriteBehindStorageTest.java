@@ -0,0 +1,164 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage;
+
+import com.github.games647.fastlogin.core.shared.FloodgateState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindStorageTest {
+
+    // flushes are triggered manually
+    private static final long FLUSH_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private StorageTestPlugin plugin;
+    private UnreliableStorage storage;
+    private WriteBehindStorage writeBehind;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        plugin = new StorageTestPlugin();
+        storage = new UnreliableStorage(plugin);
+        storage.createTables();
+        writeBehind = new WriteBehindStorage(plugin.getLog(), storage, Executors.defaultThreadFactory(),
+                FLUSH_INTERVAL, 100);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.setAvailable(true);
+        writeBehind.close();
+        plugin.deleteFolder();
+    }
+
+    @Test
+    void coalescesSavesOfTheSameProfile() {
+        StoredProfile profile = profile("Notch", false);
+        writeBehind.save(profile);
+        profile.setPremium(true);
+        writeBehind.save(profile);
+        writeBehind.save(profile);
+
+        // pending changes are visible before the flush
+        assertSame(profile, writeBehind.loadProfile("notch"));
+        assertEquals(2, writeBehind.getCoalescedSaves());
+
+        writeBehind.flush();
+        assertEquals(1, writeBehind.getFlushedProfiles());
+        assertEquals(0, writeBehind.getQueueDepth());
+        assertTrue(storage.loadProfile("Notch").isPremium());
+    }
+
+    @Test
+    void retriesAfterConnectionFailure() {
+        storage.setAvailable(false);
+        writeBehind.save(profile("Notch", true));
+        writeBehind.save(profile("Dinnerbone", false));
+
+        writeBehind.flush();
+        assertEquals(1, writeBehind.getFailedFlushes());
+        assertEquals(2, writeBehind.getQueueDepth());
+
+        storage.setAvailable(true);
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getQueueDepth());
+        assertEquals(2, writeBehind.getFlushedProfiles());
+        assertTrue(storage.loadProfile("Notch").isSaved());
+        assertTrue(storage.loadProfile("Dinnerbone").isSaved());
+    }
+
+    @Test
+    void conflictingProfileDoesNotBlockBatch() {
+        StoredProfile stored = profile("Notch", true);
+        storage.save(stored);
+        assertTrue(stored.isSaved());
+
+        // an unconfirmed new profile for a stored name violates the unique name
+        writeBehind.save(profile("Notch", false));
+        writeBehind.save(profile("Dinnerbone", false));
+        writeBehind.flush();
+
+        assertEquals(0, writeBehind.getQueueDepth());
+        assertTrue(storage.loadProfile("Dinnerbone").isSaved());
+        StoredProfile notch = storage.loadProfile("Notch");
+        assertTrue(notch.isPremium());
+        assertEquals(stored.getId(), notch.getId());
+    }
+
+    @Test
+    void closeWritesPendingProfiles() throws SQLException {
+        writeBehind.save(profile("Notch", true));
+        writeBehind.close();
+
+        SQLiteStorage reopened = plugin.createSQLite();
+        try {
+            reopened.createTables();
+            assertTrue(reopened.loadProfile("Notch").isPremium());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void closeJournalsProfilesIfUnavailable() throws IOException {
+        SaveJournal journal = new SaveJournal(plugin.getLog(), plugin.getPluginFolder().resolve("save-journal.dat"),
+                64 * 1_024, Executors.defaultThreadFactory(), 10);
+        journal.open();
+        storage.setSaveJournal(journal);
+
+        storage.setAvailable(false);
+        writeBehind.save(profile("Notch", true));
+        writeBehind.close();
+
+        SaveJournal reopened = new SaveJournal(plugin.getLog(), plugin.getPluginFolder().resolve("save-journal.dat"),
+                64 * 1_024, Executors.defaultThreadFactory(), 10);
+        try {
+            reopened.open();
+            assertFalse(reopened.isEmpty());
+            assertEquals("Notch", reopened.snapshot().getProfiles().get(0).getName());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static StoredProfile profile(String name, boolean premium) {
+        UUID id = premium ? UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)) : null;
+        return new StoredProfile(id, name, premium, FloodgateState.FALSE, "127.0.0.1");
+    }
+}
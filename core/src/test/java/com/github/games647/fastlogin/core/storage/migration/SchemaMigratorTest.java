@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2023 games647 and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.storage.migration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SchemaMigratorTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaMigratorTest.class);
+
+    private final List<Integer> applied = new ArrayList<>();
+
+    private Path databaseFile;
+    private Connection con;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        databaseFile = Files.createTempFile("fastlogin-migration", ".db");
+        con = DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, SQLException {
+        con.close();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Test
+    void appliesMigrationsInOrderOnlyOnce() throws SQLException {
+        // registration order doesn't matter
+        SchemaMigrator migrator = new SchemaMigrator(LOG, Arrays.asList(migration(2), migration(1)));
+        assertEquals(2, migrator.migrate(con));
+        assertEquals(Arrays.asList(1, 2), applied);
+        assertEquals(2, loadVersion());
+
+        assertEquals(0, migrator.migrate(con));
+        assertEquals(Arrays.asList(1, 2), applied);
+    }
+
+    @Test
+    void appliesOnlyNewMigrations() throws SQLException {
+        new SchemaMigrator(LOG, Collections.singletonList(migration(1))).migrate(con);
+
+        // plugin update with a new step
+        assertEquals(1, new SchemaMigrator(LOG, Arrays.asList(migration(1), migration(2))).migrate(con));
+        assertEquals(Arrays.asList(1, 2), applied);
+    }
+
+    @Test
+    void keepsAppliedVersionsOnFailure() throws SQLException {
+        Migration failing = new Migration(2, "Failing", con -> {
+            throw new SQLException("test failure");
+        });
+
+        SchemaMigrator migrator = new SchemaMigrator(LOG, Arrays.asList(migration(1), failing));
+        assertThrows(SQLException.class, () -> migrator.migrate(con));
+        assertEquals(1, loadVersion());
+
+        // the next start continues with the failed step
+        assertEquals(1, new SchemaMigrator(LOG, Arrays.asList(migration(1), migration(2))).migrate(con));
+        assertEquals(Arrays.asList(1, 2), applied);
+        assertEquals(2, loadVersion());
+    }
+
+    @Test
+    void skipsSchemaOfNewerPluginVersion() throws SQLException {
+        new SchemaMigrator(LOG, Arrays.asList(migration(1), migration(2), migration(3))).migrate(con);
+        applied.clear();
+
+        assertEquals(0, new SchemaMigrator(LOG, Arrays.asList(migration(1), migration(2))).migrate(con));
+        assertEquals(Collections.emptyList(), applied);
+        assertEquals(3, loadVersion());
+    }
+
+    private Migration migration(int version) {
+        return new Migration(version, "Step " + version, con -> {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS `step_" + version + "` (`Id` INTEGER)");
+            }
+
+            applied.add(version);
+        });
+    }
+
+    private int loadVersion() throws SQLException {
+        try (Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery("SELECT MAX(`Version`) FROM `"
+                     + SchemaMigrator.VERSION_TABLE + '`')) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -92,6 +92,22 @@ public class ConnectListener {
                 PreLoginComponentResult reason = PreLoginComponentResult.denied(messageParsed);
                 preLoginEvent.setResult(reason);
                 return null;
+            case Queue:
+                return EventTask.withContinuation(continuation -> {
+                    Runnable premiumCheck = new AsyncPremiumCheck(plugin, connection, username, preLoginEvent);
+                    Runnable queuedCheck = () -> {
+                        try {
+                            premiumCheck.run();
+                        } finally {
+                            continuation.resume();
+                        }
+                    };
+
+                    if (!antiBotService.getAdmissionQueue().offer(queuedCheck, continuation::resume)) {
+                        // queue is full - handle it like ignore
+                        continuation.resume();
+                    }
+                });
             case Continue:
             default:
                 return EventTask.async(